@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+
+package cusick.john.TTtoF.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import cusick.john.TTtoF.Converter;
+import cusick.john.TTtoF.TreeGenerator;
+import cusick.john.TTtoF.Fitch.FitchFileManager;
+import cusick.john.TTtoF.Fitch.FitchProof;
+import perl.aaron.TruthTrees.Branch;
+import perl.aaron.TruthTrees.ExpressionParser;
+import perl.aaron.TruthTrees.TreeVerifier;
+import perl.aaron.TruthTrees.TruthTreeFileManager;
+import perl.aaron.TruthTrees.VerificationEngine;
+
+/**
+ * Measures the stages of a conversion (parse, load, verify, convert, write and the whole
+ * truthTreeToFitch), plus the parallel verifyAll, on the example trees and on synthetic trees of
+ * increasing size.
+ * 
+ * Each benchmark is warmed up and then timed over several rounds; the median time per operation
+ * is reported. Results can be saved as a baseline and later runs compared against it, failing
+ * (exit status 1) if any benchmark got slower by more than the threshold.
+ * 
+ * Usage: BenchmarkRunner [--sizes 10,1000,100000,1000000] [--only parse,load,...] [--examples dir]
+ *        [--rounds n] [--round-millis ms] [--save-baseline file] [--baseline file] [--threshold percent]
+ */
+public class BenchmarkRunner {
+	
+	private static final String USAGE = "Usage: BenchmarkRunner [--sizes 10,1000,100000,1000000] [--only parse,load,verify,verifyAll,convert,write,truthTreeToFitch]"
+			+ " [--examples dir] [--rounds n] [--round-millis ms] [--save-baseline file] [--baseline file] [--threshold percent]";
+	
+	private static final String[] STAGES = {"parse", "load", "verify", "verifyAll", "convert", "write", "truthTreeToFitch"};
+	
+	//results are printed here, the converter's own output is discarded while measuring
+	private static final PrintStream out = System.out;
+	
+	/** keeps the JIT from discarding benchmark results */
+	static volatile int sink;
+	
+	private int rounds = 5;
+	private long roundMillis = 1000;
+	private List<String> stages = Arrays.asList(STAGES);
+	private File scratchDir;
+	
+	/**
+	 * One operation to be timed, with its untimed set up
+	 */
+	private abstract static class Benchmark {
+		final String name;
+		
+		Benchmark(String name){
+			this.name = name;
+		}
+		
+		void setUp() throws Exception {}
+		
+		abstract Object run() throws Exception;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		System.exit(new BenchmarkRunner().run(args));
+	}
+	
+	int run(String[] args) throws Exception {
+		int[] sizes = {10, 1000, 100000, 1000000};
+		File examplesDir = new File("examples");
+		File saveBaseline = null;
+		File baseline = null;
+		double threshold = 10;
+		
+		try {
+			for(int i = 0; i < args.length; i++){
+				String arg = args[i];
+				if(i + 1 >= args.length && !arg.equals("-h") && !arg.equals("--help")){
+					throw new IllegalArgumentException(arg);
+				}
+				if(arg.equals("--sizes")){
+					String[] sizeStrings = args[++i].split(",");
+					sizes = new int[sizeStrings.length];
+					for(int j = 0; j < sizeStrings.length; j++){
+						sizes[j] = Integer.parseInt(sizeStrings[j].trim());
+					}
+				} else if(arg.equals("--only")){
+					stages = Arrays.asList(args[++i].split(","));
+				} else if(arg.equals("--examples")){
+					examplesDir = new File(args[++i]);
+				} else if(arg.equals("--rounds")){
+					rounds = Integer.parseInt(args[++i]);
+				} else if(arg.equals("--round-millis")){
+					roundMillis = Long.parseLong(args[++i]);
+				} else if(arg.equals("--save-baseline")){
+					saveBaseline = new File(args[++i]);
+				} else if(arg.equals("--baseline")){
+					baseline = new File(args[++i]);
+				} else if(arg.equals("--threshold")){
+					threshold = Double.parseDouble(args[++i]);
+				} else{
+					out.println(USAGE);
+					return arg.equals("-h") || arg.equals("--help") ? 0 : 2;
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			out.println(USAGE);
+			return 2;
+		}
+		
+		ExpressionParser.setParseCache(null);
+		scratchDir = File.createTempFile("ttbench", "");
+		scratchDir.delete();
+		scratchDir.mkdirs();
+		
+		List<File> inputs = new ArrayList<File>();
+		File[] examples = examplesDir.listFiles();
+		if(examples != null){
+			Arrays.sort(examples);
+			for(File example : examples){
+				if(example.getName().endsWith("." + TruthTreeFileManager.EXTENSION)){
+					inputs.add(example);
+				}
+			}
+		}
+		for(int size : sizes){
+			File synthetic = new File(scratchDir, "synthetic-" + size + "." + TruthTreeFileManager.EXTENSION);
+			TreeGenerator generator = new TreeGenerator(0);
+			generator.setLines(size);
+			TruthTreeFileManager.saveToFile(generator.generate(), synthetic);
+			inputs.add(synthetic);
+		}
+		
+		Map<String, Double> results = new LinkedHashMap<String, Double>();
+		PrintStream quiet = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {}
+			@Override
+			public void write(byte[] b, int off, int len) {}
+		});
+		out.printf("%-45s %15s %15s%n", "benchmark", "median ns/op", "min ns/op");
+		try {
+			System.setOut(quiet);
+			for(File input : inputs){
+				for(Benchmark benchmark : benchmarksFor(input)){
+					if(stages.contains(benchmark.name.substring(0, benchmark.name.indexOf('/')))){
+						double[] nanosPerOp = measure(benchmark);
+						results.put(benchmark.name, nanosPerOp[0]);
+						out.printf("%-45s %15.0f %15.0f%n", benchmark.name, nanosPerOp[0], nanosPerOp[1]);
+					}
+				}
+			}
+		} finally {
+			System.setOut(out);
+			for(File scratch : scratchDir.listFiles()){
+				scratch.delete();
+			}
+			scratchDir.delete();
+		}
+		
+		if(saveBaseline != null){
+			saveResults(results, saveBaseline);
+			out.println("Saved baseline to " + saveBaseline);
+		}
+		if(baseline != null){
+			return compare(results, loadResults(baseline), threshold) ? 0 : 1;
+		}
+		return 0;
+	}
+	
+	private List<Benchmark> benchmarksFor(final File input){
+		final String inputName = input.getName();
+		final List<String> statements = new ArrayList<String>();
+		final Branch[] tree = new Branch[1];
+		final FitchProof[] proof = new FitchProof[1];
+		final File output = new File(scratchDir, inputName + "." + FitchFileManager.EXTENSION);
+		
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new Benchmark("parse/" + inputName) {
+			@Override
+			void setUp(){
+				collectStatements(TruthTreeFileManager.loadFromFile(input).getRoot(), statements);
+			}
+			@Override
+			Object run(){
+				int parsed = 0;
+				for(String statement : statements){
+					if(ExpressionParser.parseExpression(statement) != null){
+						parsed++;
+					}
+				}
+				return parsed;
+			}
+		});
+		benchmarks.add(new Benchmark("load/" + inputName) {
+			@Override
+			Object run(){
+				return TruthTreeFileManager.loadFromFile(input);
+			}
+		});
+		benchmarks.add(new Benchmark("verify/" + inputName) {
+			@Override
+			void setUp(){
+				tree[0] = TruthTreeFileManager.loadFromFile(input);
+			}
+			@Override
+			Object run(){
+				return TreeVerifier.check(tree[0].getRoot(), tree[0]);
+			}
+		});
+		benchmarks.add(new Benchmark("verifyAll/" + inputName) {
+			private final VerificationEngine engine = new VerificationEngine(Runtime.getRuntime().availableProcessors());
+			@Override
+			void setUp(){
+				tree[0] = TruthTreeFileManager.loadFromFile(input);
+			}
+			@Override
+			Object run() throws Exception{
+				return engine.checkAll(tree[0]);
+			}
+		});
+		benchmarks.add(new Benchmark("convert/" + inputName) {
+			@Override
+			void setUp(){
+				tree[0] = TruthTreeFileManager.loadFromFile(input);
+			}
+			@Override
+			Object run(){
+				return new Converter().convert(tree[0]);
+			}
+		});
+		benchmarks.add(new Benchmark("write/" + inputName) {
+			@Override
+			void setUp(){
+				proof[0] = new Converter().convert(TruthTreeFileManager.loadFromFile(input));
+			}
+			@Override
+			Object run(){
+				return new FitchFileManager().outputFitchFile(output, proof[0]);
+			}
+		});
+		benchmarks.add(new Benchmark("truthTreeToFitch/" + inputName) {
+			@Override
+			Object run(){
+				return new Converter().truthTreeToFitch(input, output);
+			}
+		});
+		return benchmarks;
+	}
+	
+	private static void collectStatements(Branch branch, List<String> statements){
+		for(int i = 0; i < branch.numLines(); i++){
+			if(branch.getStatement(i) != null){
+				statements.add(branch.getStatement(i).toString());
+			}
+		}
+		for(Branch child : branch.getBranches()){
+			collectStatements(child, statements);
+		}
+	}
+	
+	/**
+	 * Warms up for one round, then times the benchmark for the configured number of rounds
+	 * @return median and minimum nanoseconds per operation over the rounds
+	 */
+	private double[] measure(Benchmark benchmark) throws Exception {
+		benchmark.setUp();
+		timeRound(benchmark);
+		
+		double[] roundNanosPerOp = new double[rounds];
+		for(int round = 0; round < rounds; round++){
+			roundNanosPerOp[round] = timeRound(benchmark);
+		}
+		Arrays.sort(roundNanosPerOp);
+		return new double[] {roundNanosPerOp[rounds / 2], roundNanosPerOp[0]};
+	}
+	
+	/**
+	 * Runs the benchmark repeatedly for roughly roundMillis, at least once
+	 * @return nanoseconds per operation
+	 */
+	private double timeRound(Benchmark benchmark) throws Exception {
+		long roundNanos = roundMillis * 1000000;
+		long ops = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			Object result = benchmark.run();
+			sink += System.identityHashCode(result);
+			ops++;
+			elapsed = System.nanoTime() - start;
+		} while(elapsed < roundNanos);
+		return (double) elapsed / ops;
+	}
+	
+	/**
+	 * Prints each benchmark's change from the baseline
+	 * @return false if any benchmark regressed by more than threshold percent
+	 */
+	private static boolean compare(Map<String, Double> results, Map<String, Double> baseline, double threshold){
+		boolean passed = true;
+		out.println();
+		out.printf("%-45s %15s %15s %9s%n", "benchmark", "baseline ns/op", "ns/op", "change");
+		for(Map.Entry<String, Double> result : results.entrySet()){
+			Double base = baseline.get(result.getKey());
+			if(base == null){
+				continue;
+			}
+			double change = 100 * (result.getValue() - base) / base;
+			boolean regressed = change > threshold;
+			passed &= !regressed;
+			out.printf("%-45s %15.0f %15.0f %8.1f%%%s%n", result.getKey(), base, result.getValue(), change,
+					regressed ? "  REGRESSION" : "");
+		}
+		return passed;
+	}
+	
+	private static void saveResults(Map<String, Double> results, File file) throws IOException {
+		Properties properties = new Properties();
+		for(Map.Entry<String, Double> result : results.entrySet()){
+			properties.setProperty(result.getKey(), String.valueOf(result.getValue()));
+		}
+		OutputStream stream = new FileOutputStream(file);
+		try {
+			properties.store(stream, "TruthTreeFormalizer benchmark baseline, median ns/op");
+		} finally {
+			stream.close();
+		}
+	}
+	
+	private static Map<String, Double> loadResults(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream stream = new FileInputStream(file);
+		try {
+			properties.load(stream);
+		} finally {
+			stream.close();
+		}
+		Map<String, Double> results = new LinkedHashMap<String, Double>();
+		for(String name : properties.stringPropertyNames()){
+			results.put(name, Double.valueOf(properties.getProperty(name)));
+		}
+		return results;
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cusick.john.TTtoF.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cusick.john.TTtoF.Converter;
+import cusick.john.TTtoF.TreeGenerator;
+import cusick.john.TTtoF.Fitch.FitchFileManager;
+import cusick.john.TTtoF.Fitch.FitchProof;
+import perl.aaron.TruthTrees.Branch;
+import perl.aaron.TruthTrees.BranchLine;
+import perl.aaron.TruthTrees.ExpressionParser;
+import perl.aaron.TruthTrees.TreeVerifier;
+import perl.aaron.TruthTrees.TruthTreeFileManager;
+
+/**
+ * JMH benchmarks of each stage of a conversion: parse, load, verify, convert, write and the whole
+ * truthTreeToFitch. Every benchmark runs on each example tree and on generated trees of 10 to a
+ * million lines; -p tree=... picks others (a file in the examples directory, or synthetic-N for
+ * a generated tree of about N lines). The examples directory is the bench.examples system property,
+ * by default examples/ under the working directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xss64m", "-Xmx4g"})
+public class PipelineBenchmark {
+	
+	private static final String SYNTHETIC = "synthetic-";
+	
+	@Param({"Advanced Tree.tft", "Demorgan2 Tree.tft", "Intermediate Tree.tft", "Modus Ponens.tft",
+			"NegBicond Tree.tft", "NegCond Tree.tft",
+			"synthetic-10", "synthetic-1000", "synthetic-100000", "synthetic-1000000"})
+	public String tree;
+	
+	private File scratchDir;
+	private File input;
+	private File output;
+	private List<String> statements;
+	private List<BranchLine> lines;
+	private Branch root;
+	private FitchProof proof;
+	private final Converter converter = new Converter();
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException{
+		//parse the statements every time rather than measure the cache
+		ExpressionParser.setParseCache(null);
+		scratchDir = File.createTempFile("ttjmh", "");
+		if(!scratchDir.delete() || !scratchDir.mkdirs()){
+			throw new IOException("Could not create " + scratchDir);
+		}
+		
+		if(tree.startsWith(SYNTHETIC)){
+			TreeGenerator generator = new TreeGenerator(0);
+			generator.setLines(Integer.parseInt(tree.substring(SYNTHETIC.length())));
+			input = new File(scratchDir, tree + "." + TruthTreeFileManager.EXTENSION);
+			TruthTreeFileManager.saveToFile(generator.generate(), input);
+		} else{
+			input = new File(System.getProperty("bench.examples", "examples"), tree);
+		}
+		output = new File(scratchDir, "out." + FitchFileManager.EXTENSION);
+		
+		root = TruthTreeFileManager.loadFromFile(input);
+		if(root == null){
+			throw new IOException("Could not read truth tree " + input);
+		}
+		statements = new ArrayList<String>();
+		lines = new ArrayList<BranchLine>();
+		collect(root.getRoot(), statements, lines);
+		proof = new Converter().convert(TruthTreeFileManager.loadFromFile(input));
+		proof.setFitchIndices();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		File[] scratch = scratchDir.listFiles();
+		if(scratch != null){
+			for(File file : scratch){
+				file.delete();
+			}
+		}
+		scratchDir.delete();
+	}
+	
+	private static void collect(Branch branch, List<String> statements, List<BranchLine> lines){
+		for(int i = 0; i < branch.numLines(); i++){
+			lines.add(branch.getLine(i));
+			if(branch.getStatement(i) != null){
+				statements.add(branch.getStatement(i).toString());
+			}
+		}
+		for(Branch child : branch.getBranches()){
+			collect(child, statements, lines);
+		}
+	}
+	
+	/** ExpressionParser.parseExpression on every statement in the tree */
+	@Benchmark
+	public void parse(Blackhole blackhole){
+		for(String statement : statements){
+			blackhole.consume(ExpressionParser.parseExpression(statement));
+		}
+	}
+	
+	@Benchmark
+	public Branch load(){
+		return TruthTreeFileManager.loadFromFile(input);
+	}
+	
+	/** TreeVerifier.check on the whole tree */
+	@Benchmark
+	public String verify(){
+		return TreeVerifier.check(root.getRoot(), root);
+	}
+	
+	/** BranchLine.verifyDecomposition on every line, without TreeVerifier's branch walk */
+	@Benchmark
+	public void verifyDecomposition(Blackhole blackhole){
+		for(BranchLine line : lines){
+			blackhole.consume(line.verifyDecomposition());
+		}
+	}
+	
+	/** Converter.convert on a tree already in memory */
+	@Benchmark
+	public FitchProof convert(){
+		return converter.convert(root);
+	}
+	
+	/** FitchFileManager.outputFitchFile of a converted proof, formatted but not written to disk */
+	@Benchmark
+	public void write(Blackhole blackhole) throws IOException{
+		new FitchFileManager().outputFitchFile(new BlackholeStream(blackhole), proof);
+	}
+	
+	/** Converter.truthTreeToFitch, from the .tft file to the .prf file */
+	@Benchmark
+	public FitchProof truthTreeToFitch(){
+		return converter.truthTreeToFitch(input, output);
+	}
+	
+	/**
+	 * Discards what is written, handing it to the blackhole so that writing it can't be optimized away
+	 */
+	private static final class BlackholeStream extends OutputStream {
+		private final Blackhole blackhole;
+		
+		BlackholeStream(Blackhole blackhole){
+			this.blackhole = blackhole;
+		}
+		
+		@Override
+		public void write(int b){
+			blackhole.consume(b);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len){
+			blackhole.consume(b);
+			blackhole.consume(len);
+		}
+	}
+}
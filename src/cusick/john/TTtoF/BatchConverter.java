@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+
+package cusick.john.TTtoF;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import cusick.john.TTtoF.Fitch.LemmaLibrary;
+import cusick.john.TTtoF.Fitch.ProofChecker;
+import perl.aaron.TruthTrees.BinaryTreeFile;
+import perl.aaron.TruthTrees.Branch;
+import perl.aaron.TruthTrees.ExpressionParser;
+import perl.aaron.TruthTrees.ParseCache;
+import perl.aaron.TruthTrees.TruthTreeFileManager;
+import perl.aaron.TruthTrees.VerificationEngine;
+
+/**
+ * Command line entry point that converts truth tree files to Fitch proofs without a display.
+ * Nothing in this path loads AWT or Swing, so it can run on a headless grading server.
+ * 
+ * Usage: java -cp TruthTreeFormalizer.jar cusick.john.TTtoF.BatchConverter [-o outputDir] [-j threads]
+ *        [--timeout seconds] [--parse-cache size] [--cache dir [--cache-size megabytes]]
+ *        [--lemma lemma.prf]... [--check | --verify] input...
+ * 
+ * Each input may be a .tft or .tftb (binary) file, a directory (every such file beneath it is
+ * converted) or a glob such as "submissions/*.tft". Each X.tft is written as X.prf in the output
+ * directory, or next to the input if no output directory is given.
+ * Files are converted concurrently by a ConversionEngine, by default one per processor;
+ * --timeout gives up on any single file that takes longer than the given number of seconds.
+ * --parse-cache keeps up to size parsed statements so premises repeated across files
+ * are only parsed once. --cache keeps each converted file in a ResultCache directory, so files
+ * converted before are copied from it instead (--cache-size bounds it, 256 MB by default).
+ * --lemma registers an additional lemma with the LemmaLibrary, named
+ * after its file. --check only checks each tree, reporting every incorrectly decomposed line,
+ * instead of converting it; each tree is checked on as many threads as -j gives. --verify checks
+ * each converted proof with a ProofChecker before counting it as converted.
+ */
+public class BatchConverter {
+	
+	private static final String TRUTH_TREE_EXTENSION = ".tft";
+	private static final String BINARY_TREE_EXTENSION = "." + BinaryTreeFile.EXTENSION;
+	private static final String FITCH_EXTENSION = ".prf";
+	
+	private static final String USAGE =
+			"Usage: BatchConverter [-o outputDir] [-j threads] [--timeout seconds] [--parse-cache size]"
+			+ " [--cache dir [--cache-size megabytes]] [--lemma lemma.prf]... [--check | --verify] <file.tft | directory | glob>...";
+	
+	private static final int DEFAULT_CACHE_MEGABYTES = 256;
+
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+	
+	/**
+	 * Parses the command line and converts every input
+	 * @param args command line arguments
+	 * @return exit status, 0 if every file converted, 1 if any failed, 2 on bad usage
+	 */
+	public static int run(String[] args){
+		File outputDir = null;
+		ParseCache parseCache = null;
+		File cacheDir = null;
+		int cacheMegabytes = DEFAULT_CACHE_MEGABYTES;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int timeoutSeconds = 0;
+		boolean checkOnly = false;
+		boolean verify = false;
+		List<String> inputArgs = new ArrayList<String>();
+		
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-o") || args[i].equals("--output")){
+				if(i + 1 >= args.length){
+					System.err.println(USAGE);
+					return 2;
+				}
+				outputDir = new File(args[++i]);
+			} else if(args[i].equals("-j") || args[i].equals("--threads")){
+				threads = i + 1 < args.length ? parsePositiveInt(args[++i]) : -1;
+				if(threads < 1){
+					System.err.println(USAGE);
+					return 2;
+				}
+			} else if(args[i].equals("--timeout")){
+				timeoutSeconds = i + 1 < args.length ? parsePositiveInt(args[++i]) : -1;
+				if(timeoutSeconds < 0){
+					System.err.println(USAGE);
+					return 2;
+				}
+			} else if(args[i].equals("--parse-cache")){
+				int size = i + 1 < args.length ? parsePositiveInt(args[++i]) : -1;
+				if(size < 1){
+					System.err.println(USAGE);
+					return 2;
+				}
+				parseCache = new ParseCache(size);
+			} else if(args[i].equals("--cache")){
+				if(i + 1 >= args.length){
+					System.err.println(USAGE);
+					return 2;
+				}
+				cacheDir = new File(args[++i]);
+			} else if(args[i].equals("--cache-size")){
+				cacheMegabytes = i + 1 < args.length ? parsePositiveInt(args[++i]) : -1;
+				if(cacheMegabytes < 1){
+					System.err.println(USAGE);
+					return 2;
+				}
+			} else if(args[i].equals("--lemma")){
+				if(i + 1 >= args.length){
+					System.err.println(USAGE);
+					return 2;
+				}
+				File lemmaFile = new File(args[++i]);
+				try {
+					LemmaLibrary.register(lemmaFile);
+				} catch (IOException e) {
+					System.err.println("Could not load lemma " + lemmaFile + ": " + e.getMessage());
+					return 2;
+				}
+			} else if(args[i].equals("--check")){
+				checkOnly = true;
+			} else if(args[i].equals("--verify")){
+				verify = true;
+			} else if(args[i].equals("-h") || args[i].equals("--help")){
+				System.out.println(USAGE);
+				return 0;
+			} else{
+				inputArgs.add(args[i]);
+			}
+		}
+		
+		if(inputArgs.isEmpty()){
+			System.err.println(USAGE);
+			return 2;
+		}
+		
+		if(outputDir != null && !outputDir.isDirectory() && !outputDir.mkdirs()){
+			System.err.println("Could not create output directory " + outputDir);
+			return 2;
+		}
+		
+		Set<File> inputs = new LinkedHashSet<File>();
+		for(String inputArg : inputArgs){
+			try {
+				inputs.addAll(collectInputs(inputArg));
+			} catch (IOException e) {
+				System.err.println("Could not read " + inputArg + ": " + e.getMessage());
+			}
+		}
+		
+		if(inputs.isEmpty()){
+			System.err.println("No " + TRUTH_TREE_EXTENSION + " files found");
+			return 1;
+		}
+		
+		if(checkOnly){
+			return check(new ArrayList<File>(inputs), threads);
+		}
+		
+		ResultCache resultCache = null;
+		if(cacheDir != null){
+			try {
+				resultCache = new ResultCache(cacheDir, cacheMegabytes * (1L << 20));
+			} catch (IOException e) {
+				System.err.println("Could not open cache directory " + cacheDir + ": " + e.getMessage());
+				return 2;
+			}
+		}
+		
+		ParseCache previousCache = ExpressionParser.getParseCache();
+		if(parseCache != null){
+			ExpressionParser.setParseCache(parseCache);
+		}
+		
+		ProofChecker checker = verify ? new ProofChecker(threads) : null;
+		ConversionEngine.Summary summary;
+		try {
+			summary = new ConversionEngine(threads, timeoutSeconds * 1000L, resultCache, checker).convertAll(new ArrayList<File>(inputs), outputDir);
+		} catch (InterruptedException e) {
+			System.err.println("Interrupted");
+			return 1;
+		} finally {
+			if(parseCache != null){
+				ExpressionParser.setParseCache(previousCache);
+			}
+			if(checker != null){
+				checker.shutdown();
+			}
+		}
+		
+		for(ConversionEngine.Result result : summary.getResults()){
+			if(result.getStatus() == ConversionEngine.Status.CONVERTED){
+				System.out.println(result);
+			} else{
+				System.err.println(result);
+			}
+		}
+		if(parseCache != null){
+			System.out.println(parseCache);
+		}
+		if(resultCache != null){
+			System.out.println(resultCache);
+		}
+		System.out.println(summary);
+		return summary.getConverted() == summary.getResults().size() ? 0 : 1;
+	}
+	
+	/**
+	 * Checks each tree, printing every error found in it
+	 * @param inputs truth tree files
+	 * @param threads threads to check each tree on
+	 * @return exit status, 0 if every tree is correct, 1 otherwise
+	 */
+	private static int check(List<File> inputs, int threads){
+		VerificationEngine engine = new VerificationEngine(threads);
+		int correct = 0;
+		for(File input : inputs){
+			Branch root = TruthTreeFileManager.loadFromFile(input);
+			if(root == null){
+				System.err.println("Could not read " + input);
+				continue;
+			}
+			List<VerificationEngine.LineError> errors;
+			try {
+				errors = engine.checkAll(root);
+			} catch (InterruptedException e) {
+				System.err.println("Interrupted");
+				return 1;
+			} catch (IllegalStateException e) {
+				System.err.println("Could not check " + input + ": " + e.getCause());
+				continue;
+			}
+			if(errors.isEmpty()){
+				System.out.println("Correct " + input);
+				correct++;
+			} else{
+				for(VerificationEngine.LineError error : errors){
+					System.err.println(input + ": " + error);
+				}
+			}
+		}
+		System.out.println(correct + " of " + inputs.size() + " trees correct");
+		return correct == inputs.size() ? 0 : 1;
+	}
+	
+	static int parsePositiveInt(String arg){
+		try {
+			return Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Maps an input tree file to the Fitch file it is converted to
+	 * @param input truth tree file
+	 * @param outputDir output directory, or null to write next to the input
+	 * @return output Fitch file
+	 */
+	public static File getOutputFile(File input, File outputDir){
+		String name = input.getName();
+		if(name.endsWith(TRUTH_TREE_EXTENSION)){
+			name = name.substring(0, name.length() - TRUTH_TREE_EXTENSION.length());
+		} else if(name.endsWith(BINARY_TREE_EXTENSION)){
+			name = name.substring(0, name.length() - BINARY_TREE_EXTENSION.length());
+		}
+		File dir = outputDir != null ? outputDir : input.getAbsoluteFile().getParentFile();
+		return new File(dir, name + FITCH_EXTENSION);
+	}
+	
+	/**
+	 * Expands one command line input into the truth tree files it names
+	 * @param inputArg a file, a directory or a glob
+	 * @return the matching files, sorted by path
+	 * @throws IOException if a directory could not be read
+	 */
+	static List<File> collectInputs(String inputArg) throws IOException{
+		final List<File> files = new ArrayList<File>();
+		File file = new File(inputArg);
+		
+		if(file.isFile()){
+			files.add(file);
+		} else if(file.isDirectory()){
+			Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+					String name = path.getFileName().toString();
+					if(attrs.isRegularFile() && (name.endsWith(TRUTH_TREE_EXTENSION) || name.endsWith(BINARY_TREE_EXTENSION))){
+						files.add(path.toFile());
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} else{
+			//treat as a glob, matched against the files of the directory it starts in
+			String pattern = inputArg.replace(File.separatorChar, '/');
+			int lastSeparator = pattern.lastIndexOf('/');
+			Path dir = lastSeparator >= 0 ? Paths.get(pattern.substring(0, lastSeparator + 1)) : Paths.get(".");
+			PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(lastSeparator + 1));
+			if(Files.isDirectory(dir)){
+				try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+					for(Path path : stream){
+						if(Files.isRegularFile(path) && matcher.matches(path.getFileName())){
+							files.add(path.toFile());
+						}
+					}
+				}
+			}
+		}
+		
+		Collections.sort(files);
+		return files;
+	}
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+
+package cusick.john.TTtoF;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cusick.john.TTtoF.Fitch.LemmaLibrary;
+import perl.aaron.TruthTrees.BinaryTreeFile;
+import perl.aaron.TruthTrees.ExpressionParser;
+import perl.aaron.TruthTrees.ParseCache;
+import perl.aaron.TruthTrees.TruthTreeFileManager;
+
+/**
+ * Long-running converter that watches directories and converts each truth tree file written
+ * to them as soon as it has finished changing, so a grading server pays JVM startup, class
+ * loading and JIT warm-up once rather than for every submission. Each worker thread keeps its
+ * own Converter, and the parse cache and lemma library stay loaded between jobs.
+ * 
+ * Usage: java -cp TruthTreeFormalizer.jar cusick.john.TTtoF.ConversionDaemon -o outputDir
+ *        [-j threads] [--settle ms] [--parse-cache size] [--cache dir [--cache-size megabytes]]
+ *        [--lemma lemma.prf]... directory...
+ * 
+ * A file is converted once no change to it has been seen for the settle time (50 ms by default)
+ * and its size and modification time are the same as when it last changed, so a file that is
+ * still being written is not read half way. Writing a submission under another name and moving
+ * it into the directory avoids the wait on partial files altogether. A file that changes while
+ * it is being converted is converted again afterwards. Each X.tft (or X.tftb) is written as X.prf
+ * in the output directory, through a temporary file that is renamed into place, so readers of
+ * the output directory never see a partial proof. Files already in a watched directory whose
+ * proof is missing or older are converted at startup. Subdirectories are not watched.
+ */
+public class ConversionDaemon {
+	
+	private static final String USAGE =
+			"Usage: ConversionDaemon -o outputDir [-j threads] [--settle ms] [--parse-cache size]"
+			+ " [--cache dir [--cache-size megabytes]] [--lemma lemma.prf]... <directory>...";
+	
+	private static final long DEFAULT_SETTLE_MILLIS = 50;
+	private static final int DEFAULT_PARSE_CACHE_SIZE = 10000;
+	private static final int DEFAULT_CACHE_MEGABYTES = 256;
+	
+	private static final String TRUTH_TREE_EXTENSION = "." + TruthTreeFileManager.EXTENSION;
+	private static final String BINARY_TREE_EXTENSION = "." + BinaryTreeFile.EXTENSION;
+	
+	private final File outputDir;
+	private final long settleMillis;
+	private final ResultCache cache;
+	
+	private final WatchService watcher;
+	private final Map<WatchKey, Path> watched = new HashMap<WatchKey, Path>();
+	private final ScheduledExecutorService settler;
+	private final ThreadPoolExecutor workers;
+	
+	//files seen changing that are not converted yet, guarded by itself
+	private final Map<Path, Pending> pending = new HashMap<Path, Pending>();
+	
+	private final ThreadLocal<Converter> converters = new ThreadLocal<Converter>() {
+		@Override
+		protected Converter initialValue(){
+			return new Converter();
+		}
+	};
+	
+	/**
+	 * A file waiting to settle, queued or being converted
+	 */
+	private final class Pending {
+		final Path input;
+		long size;
+		long modified;
+		long changedNanos;
+		ScheduledFuture<?> timer;
+		boolean converting;
+		boolean changedAgain; //changed while converting
+		
+		Pending(Path input){
+			this.input = input;
+		}
+	}
+	
+	/**
+	 * @param outputDir directory the proofs are written to
+	 * @param threads number of files converted at once
+	 * @param settleMillis how long a file must go unchanged before it is converted
+	 * @param cache cache of earlier results to reuse and add to, or null
+	 * @throws IOException if the watch service could not be created
+	 */
+	public ConversionDaemon(File outputDir, int threads, long settleMillis, ResultCache cache) throws IOException{
+		if(threads < 1){
+			throw new IllegalArgumentException("threads must be at least 1: " + threads);
+		}
+		this.outputDir = outputDir;
+		this.settleMillis = settleMillis;
+		this.cache = cache;
+		watcher = outputDir.toPath().getFileSystem().newWatchService();
+		settler = Executors.newSingleThreadScheduledExecutor(threadFactory("conversion-settle"));
+		//a full queue makes the settling thread convert, which holds back new work
+		workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threads * 16), threadFactory("conversion-worker"),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+	
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+	
+	/**
+	 * Parses the command line and converts files until the process is stopped
+	 * @param args command line arguments
+	 * @return exit status, 1 if the directories could not be watched, 2 on bad usage
+	 */
+	public static int run(String[] args){
+		File outputDir = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long settleMillis = DEFAULT_SETTLE_MILLIS;
+		int parseCacheSize = DEFAULT_PARSE_CACHE_SIZE;
+		File cacheDir = null;
+		int cacheMegabytes = DEFAULT_CACHE_MEGABYTES;
+		List<File> dirs = new ArrayList<File>();
+		
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-o") || args[i].equals("--output")){
+				if(i + 1 >= args.length){
+					System.err.println(USAGE);
+					return 2;
+				}
+				outputDir = new File(args[++i]);
+			} else if(args[i].equals("-j") || args[i].equals("--threads")){
+				threads = i + 1 < args.length ? BatchConverter.parsePositiveInt(args[++i]) : -1;
+				if(threads < 1){
+					System.err.println(USAGE);
+					return 2;
+				}
+			} else if(args[i].equals("--settle")){
+				settleMillis = i + 1 < args.length ? BatchConverter.parsePositiveInt(args[++i]) : -1;
+				if(settleMillis < 0){
+					System.err.println(USAGE);
+					return 2;
+				}
+			} else if(args[i].equals("--parse-cache")){
+				parseCacheSize = i + 1 < args.length ? BatchConverter.parsePositiveInt(args[++i]) : -1;
+				if(parseCacheSize < 1){
+					System.err.println(USAGE);
+					return 2;
+				}
+			} else if(args[i].equals("--cache")){
+				if(i + 1 >= args.length){
+					System.err.println(USAGE);
+					return 2;
+				}
+				cacheDir = new File(args[++i]);
+			} else if(args[i].equals("--cache-size")){
+				cacheMegabytes = i + 1 < args.length ? BatchConverter.parsePositiveInt(args[++i]) : -1;
+				if(cacheMegabytes < 1){
+					System.err.println(USAGE);
+					return 2;
+				}
+			} else if(args[i].equals("--lemma")){
+				if(i + 1 >= args.length){
+					System.err.println(USAGE);
+					return 2;
+				}
+				File lemmaFile = new File(args[++i]);
+				try {
+					LemmaLibrary.register(lemmaFile);
+				} catch (IOException e) {
+					System.err.println("Could not load lemma " + lemmaFile + ": " + e.getMessage());
+					return 2;
+				}
+			} else if(args[i].equals("-h") || args[i].equals("--help")){
+				System.out.println(USAGE);
+				return 0;
+			} else{
+				dirs.add(new File(args[i]));
+			}
+		}
+		
+		if(outputDir == null || dirs.isEmpty()){
+			System.err.println(USAGE);
+			return 2;
+		}
+		if(!outputDir.isDirectory() && !outputDir.mkdirs()){
+			System.err.println("Could not create output directory " + outputDir);
+			return 2;
+		}
+		
+		ExpressionParser.setParseCache(new ParseCache(parseCacheSize));
+		
+		final ConversionDaemon daemon;
+		try {
+			ResultCache resultCache = cacheDir != null ? new ResultCache(cacheDir, cacheMegabytes * (1L << 20)) : null;
+			daemon = new ConversionDaemon(outputDir, threads, settleMillis, resultCache);
+			for(File dir : dirs){
+				daemon.watch(dir);
+			}
+		} catch (IOException e) {
+			System.err.println("Could not watch " + dirs + ": " + e.getMessage());
+			return 1;
+		}
+		
+		Runtime.getRuntime().addShutdownHook(new Thread("conversion-shutdown") {
+			@Override
+			public void run(){
+				daemon.close();
+			}
+		});
+		System.out.println("Watching " + dirs + ", writing proofs to " + outputDir);
+		daemon.run();
+		return 0;
+	}
+	
+	/**
+	 * Starts watching a directory, and queues every tree file in it whose proof is missing or
+	 * older than the file
+	 * @param dir directory to watch
+	 * @throws IOException if the directory could not be watched or listed
+	 */
+	public void watch(File dir) throws IOException{
+		Path path = dir.toPath();
+		WatchKey key = path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		synchronized(watched){
+			watched.put(key, path);
+		}
+		scan(path);
+	}
+	
+	private void scan(Path dir) throws IOException{
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for(Path input : stream){
+				if(!isTreeFile(input) || !Files.isRegularFile(input)){
+					continue;
+				}
+				File output = BatchConverter.getOutputFile(input.toFile(), outputDir);
+				if(output.lastModified() < input.toFile().lastModified()){
+					changed(input);
+				}
+			}
+		}
+	}
+	
+	private static boolean isTreeFile(Path path){
+		String name = path.getFileName().toString();
+		return name.endsWith(TRUTH_TREE_EXTENSION) || name.endsWith(BINARY_TREE_EXTENSION);
+	}
+	
+	/**
+	 * Handles watch events until the daemon is closed or no directory is left to watch
+	 */
+	public void run(){
+		while(true){
+			WatchKey key;
+			try {
+				key = watcher.take();
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+			Path dir;
+			synchronized(watched){
+				dir = watched.get(key);
+			}
+			for(WatchEvent<?> event : key.pollEvents()){
+				if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+					//events were lost, look at everything again
+					try {
+						scan(dir);
+					} catch (IOException e) {
+						System.err.println("Could not read " + dir + ": " + e.getMessage());
+					}
+				} else{
+					Path input = dir.resolve((Path) event.context());
+					if(isTreeFile(input)){
+						changed(input);
+					}
+				}
+			}
+			if(!key.reset()){
+				System.err.println("No longer watching " + dir);
+				synchronized(watched){
+					watched.remove(key);
+					if(watched.isEmpty()){
+						return;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Stops watching and converting. Conversions already running finish.
+	 */
+	public void close(){
+		try {
+			watcher.close();
+		} catch (IOException e) {
+			//already closing
+		}
+		settler.shutdownNow();
+		workers.shutdown();
+		try {
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Notes that a file changed, (re)starting its wait to settle
+	 */
+	private void changed(Path input){
+		synchronized(pending){
+			Pending p = pending.get(input);
+			if(p == null){
+				p = new Pending(input);
+				pending.put(input, p);
+			}
+			p.changedNanos = System.nanoTime();
+			if(p.converting){
+				p.changedAgain = true;
+			} else{
+				scheduleSettle(p);
+			}
+		}
+	}
+	
+	private void scheduleSettle(final Pending p){
+		if(p.timer != null){
+			p.timer.cancel(false);
+		}
+		try {
+			BasicFileAttributes attrs = Files.readAttributes(p.input, BasicFileAttributes.class);
+			p.size = attrs.size();
+			p.modified = attrs.lastModifiedTime().toMillis();
+		} catch (IOException e) {
+			p.size = -1; //gone, or not readable yet; checked again once settled
+		}
+		p.timer = settler.schedule(new Runnable() {
+			@Override
+			public void run(){
+				settled(p);
+			}
+		}, settleMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Called once a file has gone the settle time without an event. It is converted if it is
+	 * still unchanged, and waited on again otherwise.
+	 */
+	private void settled(final Pending p){
+		synchronized(pending){
+			if(pending.get(p.input) != p || p.converting){
+				return;
+			}
+			BasicFileAttributes attrs;
+			try {
+				attrs = Files.readAttributes(p.input, BasicFileAttributes.class);
+			} catch (IOException e) {
+				pending.remove(p.input); //deleted again before it could be converted
+				return;
+			}
+			if(attrs.size() != p.size || attrs.lastModifiedTime().toMillis() != p.modified){
+				scheduleSettle(p);
+				return;
+			}
+			p.timer = null;
+			p.converting = true;
+		}
+		workers.execute(new Runnable() {
+			@Override
+			public void run(){
+				convert(p);
+			}
+		});
+	}
+	
+	private void convert(Pending p){
+		long start = System.nanoTime();
+		long changedNanos;
+		synchronized(pending){
+			changedNanos = p.changedNanos;
+		}
+		File input = p.input.toFile();
+		File output = BatchConverter.getOutputFile(input, outputDir);
+		Path temp = null;
+		try {
+			//not Files.createTempFile, which makes the file (and so the proof) readable by its owner only
+			File part = new File(outputDir, "." + output.getName() + "." + UUID.randomUUID() + ".part");
+			if(!part.createNewFile()){
+				throw new IOException("Could not create " + part);
+			}
+			temp = part.toPath();
+			String key = cacheKey(input);
+			boolean cached = key != null && cache.fetch(key, temp.toFile());
+			if(!cached){
+				converters.get().truthTreeToFitch(input, temp.toFile());
+				if(key != null){
+					cache.store(key, temp.toFile());
+				}
+			}
+			try {
+				Files.move(temp, output.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			long end = System.nanoTime();
+			System.out.println("Converted " + input + " -> " + output + (cached ? " (cached)" : "")
+					+ " in " + (end - start) / 1000000 + " ms, " + (end - changedNanos) / 1000000 + " ms after it changed");
+		} catch (IOException | RuntimeException | StackOverflowError e) {
+			System.err.println("Failed to convert " + input + ": " + e);
+			if(temp != null){
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException deleteException) {
+					//already reporting the failure
+				}
+			}
+		}
+		
+		synchronized(pending){
+			p.converting = false;
+			if(p.changedAgain){
+				p.changedAgain = false;
+				scheduleSettle(p);
+			} else{
+				pending.remove(p.input);
+			}
+		}
+	}
+	
+	/**
+	 * @return the input's result cache key, or null if there is no cache or the input
+	 *         could not be read (converting it then reports why)
+	 */
+	private String cacheKey(File input){
+		if(cache == null){
+			return null;
+		}
+		try {
+			return cache.key(input);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	private static ThreadFactory threadFactory(final String name){
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+
+package cusick.john.TTtoF;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cusick.john.TTtoF.Fitch.FitchFileReader;
+import cusick.john.TTtoF.Fitch.FitchProof;
+import cusick.john.TTtoF.Fitch.ProofChecker;
+
+/**
+ * Converts many truth tree files concurrently on a work-stealing pool. Each file is its own job
+ * with its own Converter, so jobs share no conversion state. At most twice as many jobs as
+ * worker threads are queued at once, and a job that runs longer than the timeout is reported as
+ * timed out (and interrupted) so one pathological tree can't hold up the rest of the batch; its
+ * output is deleted once it stops, and the batch returns when every job has stopped. With a
+ * ResultCache, a file whose result is cached is copied from the cache instead of converted. With
+ * a ProofChecker, each proof is checked once converted or copied from the cache (which is read
+ * back to check it), and one that does not check is reported as failed and its file deleted.
+ */
+public class ConversionEngine {
+	
+	/**
+	 * Outcome of converting one file
+	 */
+	public enum Status { CONVERTED, FAILED, TIMED_OUT }
+	
+	/**
+	 * Result of converting one file
+	 */
+	public static final class Result {
+		private final File input;
+		private final File output;
+		private final Status status;
+		private final String error;
+		private final long millis;
+		private final boolean cached;
+		
+		Result(File input, File output, Status status, String error, long millis, boolean cached){
+			this.input = input;
+			this.output = output;
+			this.status = status;
+			this.error = error;
+			this.millis = millis;
+			this.cached = cached;
+		}
+		
+		public File getInput(){
+			return input;
+		}
+		
+		public File getOutput(){
+			return output;
+		}
+		
+		public Status getStatus(){
+			return status;
+		}
+		
+		/**
+		 * @return description of the failure, or null if the file converted
+		 */
+		public String getError(){
+			return error;
+		}
+		
+		/**
+		 * @return time from the start of the job until it finished or timed out
+		 */
+		public long getMillis(){
+			return millis;
+		}
+		
+		/**
+		 * @return true if the output was copied from the result cache
+		 */
+		public boolean isCached(){
+			return cached;
+		}
+		
+		public String toString(){
+			switch(status){
+			case CONVERTED:
+				return "Converted " + input + " -> " + output + (cached ? " (cached)" : "");
+			case TIMED_OUT:
+				return "Timed out converting " + input + " after " + millis + " ms";
+			default:
+				return "Failed to convert " + input + ": " + error;
+			}
+		}
+	}
+	
+	/**
+	 * Results of a batch, in input order
+	 */
+	public static final class Summary {
+		private final List<Result> results;
+		private final long elapsedMillis;
+		private final int converted;
+		private final int failed;
+		private final int timedOut;
+		
+		Summary(List<Result> results, long elapsedMillis){
+			this.results = Collections.unmodifiableList(results);
+			this.elapsedMillis = elapsedMillis;
+			int numConverted = 0, numFailed = 0, numTimedOut = 0;
+			for(Result result : results){
+				switch(result.getStatus()){
+				case CONVERTED:
+					numConverted++;
+					break;
+				case TIMED_OUT:
+					numTimedOut++;
+					break;
+				default:
+					numFailed++;
+				}
+			}
+			converted = numConverted;
+			failed = numFailed;
+			timedOut = numTimedOut;
+		}
+		
+		public List<Result> getResults(){
+			return results;
+		}
+		
+		public long getElapsedMillis(){
+			return elapsedMillis;
+		}
+		
+		public int getConverted(){
+			return converted;
+		}
+		
+		public int getFailed(){
+			return failed;
+		}
+		
+		public int getTimedOut(){
+			return timedOut;
+		}
+		
+		public String toString(){
+			String summary = converted + " of " + results.size() + " files converted in " + elapsedMillis + " ms";
+			if(failed > 0){
+				summary += ", " + failed + " failed";
+			}
+			if(timedOut > 0){
+				summary += ", " + timedOut + " timed out";
+			}
+			return summary;
+		}
+	}
+	
+	private final int parallelism;
+	private final long timeoutMillis;
+	private final ResultCache cache;
+	private final ProofChecker checker;
+	
+	/**
+	 * @param parallelism number of files converted at once
+	 * @param timeoutMillis longest a single file may take, or 0 for no limit
+	 */
+	public ConversionEngine(int parallelism, long timeoutMillis){
+		this(parallelism, timeoutMillis, null);
+	}
+	
+	/**
+	 * @param parallelism number of files converted at once
+	 * @param timeoutMillis longest a single file may take, or 0 for no limit
+	 * @param cache cache of earlier results to reuse and add to, or null
+	 */
+	public ConversionEngine(int parallelism, long timeoutMillis, ResultCache cache){
+		this(parallelism, timeoutMillis, cache, null);
+	}
+	
+	/**
+	 * @param parallelism number of files converted at once
+	 * @param timeoutMillis longest a single file may take, or 0 for no limit
+	 * @param cache cache of earlier results to reuse and add to, or null
+	 * @param checker checker every converted proof must pass, or null
+	 */
+	public ConversionEngine(int parallelism, long timeoutMillis, ResultCache cache, ProofChecker checker){
+		if(parallelism < 1){
+			throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+		}
+		if(timeoutMillis < 0){
+			throw new IllegalArgumentException("timeout must not be negative: " + timeoutMillis);
+		}
+		this.parallelism = parallelism;
+		this.timeoutMillis = timeoutMillis;
+		this.cache = cache;
+		this.checker = checker;
+	}
+	
+	/**
+	 * Converts each input to the Fitch file BatchConverter.getOutputFile names for it
+	 * @param inputs truth tree files
+	 * @param outputDir output directory, or null to write next to each input
+	 * @return results in input order
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	public Summary convertAll(List<File> inputs, File outputDir) throws InterruptedException{
+		Result[] results = new Result[inputs.size()];
+		CountDownLatch done = new CountDownLatch(inputs.size());
+		Semaphore queued = new Semaphore(parallelism * 2); //back-pressure on the submitting thread
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		ScheduledExecutorService watchdog = timeoutMillis > 0 ? Executors.newSingleThreadScheduledExecutor(DAEMON_THREADS) : null;
+		
+		long start = System.nanoTime();
+		try {
+			for(int i = 0; i < results.length; i++){
+				queued.acquire();
+				File input = inputs.get(i);
+				pool.execute(new Job(input, BatchConverter.getOutputFile(input, outputDir), i, results, queued, done, watchdog));
+			}
+			done.await();
+		} finally {
+			pool.shutdownNow();
+			if(watchdog != null){
+				watchdog.shutdownNow();
+			}
+		}
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+		//jobs that timed out may still be running; let them remove their output before returning
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		
+		return new Summary(new ArrayList<Result>(Arrays.asList(results)), elapsedMillis);
+	}
+	
+	/**
+	 * Converts one file. The job finishes exactly once, either when the conversion returns or
+	 * when the watchdog times it out, whichever comes first.
+	 */
+	private final class Job implements Runnable {
+		private final File input;
+		private final File output;
+		private final int index;
+		private final Result[] results;
+		private final Semaphore queued;
+		private final CountDownLatch done;
+		private final ScheduledExecutorService watchdog;
+		private final AtomicBoolean finished = new AtomicBoolean();
+		
+		private Thread worker;
+		private long startNanos;
+		
+		Job(File input, File output, int index, Result[] results, Semaphore queued,
+				CountDownLatch done, ScheduledExecutorService watchdog){
+			this.input = input;
+			this.output = output;
+			this.index = index;
+			this.results = results;
+			this.queued = queued;
+			this.done = done;
+			this.watchdog = watchdog;
+		}
+		
+		@Override
+		public void run(){
+			synchronized(this){
+				worker = Thread.currentThread();
+				startNanos = System.nanoTime();
+			}
+			ScheduledFuture<?> timer = null;
+			if(watchdog != null){
+				timer = watchdog.schedule(new Runnable() {
+					@Override
+					public void run(){
+						timeOut();
+					}
+				}, timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+			
+			Status status = Status.CONVERTED;
+			String error = null;
+			boolean cached = false;
+			String key = null;
+			try {
+				key = cacheKey();
+				cached = key != null && cache.fetch(key, output);
+				FitchProof proof;
+				if(cached){
+					//the cache doesn't record whether a result was checked, so check what it gave
+					proof = checker != null ? FitchFileReader.readFromFile(output) : null;
+				} else{
+					proof = new Converter().truthTreeToFitch(input, output);
+				}
+				error = check(proof);
+				if(error != null){
+					status = Status.FAILED;
+					output.delete();
+				}
+			} catch (IOException e) {
+				status = Status.FAILED;
+				error = "could not read cached result: " + e.getMessage();
+				output.delete();
+			} catch (RuntimeException | StackOverflowError e) {
+				status = Status.FAILED;
+				error = e.toString();
+			}
+			
+			if(timer != null){
+				timer.cancel(false);
+			}
+			synchronized(this){
+				worker = null;
+				Thread.interrupted(); //clear an interrupt from a timeout that raced with completion
+			}
+			if(!finish(status, error, cached)){
+				//reported as timed out, so don't leave or cache a result for it
+				output.delete();
+			} else if(status == Status.CONVERTED && !cached && key != null){
+				cache.store(key, output);
+			}
+		}
+		
+		/**
+		 * @return the first error in the proof, or null if it checks (or there is no checker)
+		 */
+		private String check(FitchProof proof){
+			if(checker == null){
+				return null;
+			}
+			List<ProofChecker.LineError> errors = checker.checkAll(proof);
+			if(errors.isEmpty()){
+				return null;
+			}
+			String error = "proof does not check: " + errors.get(0);
+			if(errors.size() > 1){
+				error += " (and " + (errors.size() - 1) + " more)";
+			}
+			return error;
+		}
+		
+		/**
+		 * @return the input's result cache key, or null if there is no cache or the input
+		 *         could not be read (converting it then reports why)
+		 */
+		private String cacheKey(){
+			if(cache == null){
+				return null;
+			}
+			try {
+				return cache.key(input);
+			} catch (IOException e) {
+				return null;
+			}
+		}
+		
+		private void timeOut(){
+			if(finish(Status.TIMED_OUT, null, false)){
+				synchronized(this){
+					if(worker != null){
+						worker.interrupt();
+					}
+				}
+			}
+		}
+		
+		private boolean finish(Status status, String error, boolean cached){
+			if(!finished.compareAndSet(false, true)){
+				return false;
+			}
+			long millis;
+			synchronized(this){
+				millis = (System.nanoTime() - startNanos) / 1000000;
+			}
+			results[index] = new Result(input, output, status, error, millis, cached);
+			queued.release();
+			done.countDown();
+			return true;
+		}
+	}
+	
+	private static final ThreadFactory DAEMON_THREADS = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r){
+			Thread thread = new Thread(r, "conversion-watchdog");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+}
@@ -0,0 +1,617 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+
+package cusick.john.TTtoF;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import cusick.john.TTtoF.Fitch.LemmaLibrary;
+import perl.aaron.TruthTrees.ExpressionParser;
+import perl.aaron.TruthTrees.ParseCache;
+
+/**
+ * Local HTTP service that converts truth trees to Fitch proofs in memory, so a grading front end
+ * can keep one warm converter running instead of starting the jar for every submission. Nothing
+ * is written to disk.
+ * 
+ * Usage: java -cp TruthTreeFormalizer.jar cusick.john.TTtoF.ConversionServer [--port n]
+ *        [--bind address] [-j threads] [--parse-cache size] [--max-request megabytes]
+ *        [--lemma lemma.prf]...
+ * 
+ * <ul>
+ * <li>POST /convert with a tft file as the body returns the Fitch file (200), or the reason it
+ * could not be converted (400, as text).</li>
+ * <li>POST /convert with a multipart/form-data body converts every part as a tft file, in
+ * parallel, and returns a multipart/mixed body with one part per input in the same order, named
+ * after it (X.tft becomes X.prf). Each part has an X-Conversion-Status header of converted or
+ * failed; a failed part holds the reason as text.</li>
+ * <li>GET /health returns 200 and "OK" while the server is running.</li>
+ * <li>GET /stats returns counters, one "name value" per line: requests, conversions, failures,
+ * and conversion latency (mean, maximum and approximate percentiles, in milliseconds).</li>
+ * </ul>
+ * The server listens on the loopback address by default (port 8642) and handles requests on a
+ * fixed pool of threads, which also converts the parts of batches. Each thread keeps its own
+ * Converter, and a parse cache is installed so premises repeated across submissions are parsed
+ * once. For example: curl --data-binary @tree.tft http://localhost:8642/convert -o tree.prf
+ */
+public class ConversionServer {
+	
+	private static final String USAGE =
+			"Usage: ConversionServer [--port n] [--bind address] [-j threads] [--parse-cache size]"
+			+ " [--max-request megabytes] [--lemma lemma.prf]...";
+	
+	public static final int DEFAULT_PORT = 8642;
+	private static final int DEFAULT_PARSE_CACHE_SIZE = 10000;
+	private static final int DEFAULT_MAX_REQUEST_MEGABYTES = 64;
+	
+	private static final String TRUTH_TREE_EXTENSION = ".tft";
+	private static final String FITCH_EXTENSION = ".prf";
+	private static final String FITCH_CONTENT_TYPE = "application/octet-stream";
+	private static final String TEXT_CONTENT_TYPE = "text/plain; charset=UTF-8";
+	private static final byte[] CRLF = {'\r', '\n'};
+	
+	private final HttpServer server;
+	private final ExecutorService handlers;
+	private final ExecutorService converters;
+	private final long maxRequestBytes;
+	
+	private final ThreadLocal<Converter> converter = new ThreadLocal<Converter>() {
+		@Override
+		protected Converter initialValue(){
+			return new Converter();
+		}
+	};
+	
+	private final AtomicLong requests = new AtomicLong();
+	private final LatencyStats latency = new LatencyStats();
+	
+	/**
+	 * Conversion counts and latencies. Latencies are also counted in buckets of powers of two
+	 * milliseconds, which the percentiles are estimated from.
+	 */
+	public static final class LatencyStats {
+		private static final int BUCKETS = 32;
+		
+		private final AtomicLong conversions = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong totalMicros = new AtomicLong();
+		private final AtomicLong maxMicros = new AtomicLong();
+		//bucket i counts latencies under 2^i ms (and at least 2^(i-1) ms)
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		
+		void record(long nanos, boolean failed){
+			long micros = nanos / 1000;
+			conversions.incrementAndGet();
+			if(failed){
+				failures.incrementAndGet();
+			}
+			totalMicros.addAndGet(micros);
+			long max;
+			while(micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)){
+				//retry
+			}
+			int bucket = 64 - Long.numberOfLeadingZeros(micros / 1000);
+			buckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+		}
+		
+		public long getConversions(){
+			return conversions.get();
+		}
+		
+		public long getFailures(){
+			return failures.get();
+		}
+		
+		public double getMeanMillis(){
+			long n = conversions.get();
+			return n == 0 ? 0 : totalMicros.get() / 1000.0 / n;
+		}
+		
+		public double getMaxMillis(){
+			return maxMicros.get() / 1000.0;
+		}
+		
+		/**
+		 * @param fraction between 0 and 1, e.g. 0.99
+		 * @return upper bound of the bucket holding that fraction of latencies, in milliseconds
+		 */
+		public long getPercentileMillis(double fraction){
+			long total = 0;
+			for(int i = 0; i < BUCKETS; i++){
+				total += buckets.get(i);
+			}
+			long seen = 0;
+			for(int i = 0; i < BUCKETS; i++){
+				seen += buckets.get(i);
+				if(total > 0 && seen >= fraction * total){
+					return 1L << i;
+				}
+			}
+			return 0;
+		}
+	}
+	
+	/**
+	 * @param address address to listen on
+	 * @param threads number of requests handled, and batch parts converted, at once
+	 * @param maxRequestBytes largest request body accepted
+	 * @throws IOException if the address could not be bound
+	 */
+	public ConversionServer(InetSocketAddress address, int threads, long maxRequestBytes) throws IOException{
+		if(threads < 1){
+			throw new IllegalArgumentException("threads must be at least 1: " + threads);
+		}
+		this.maxRequestBytes = maxRequestBytes;
+		handlers = Executors.newFixedThreadPool(threads, threadFactory("conversion-http"));
+		converters = Executors.newFixedThreadPool(threads, threadFactory("conversion-batch"));
+		server = HttpServer.create(address, 0);
+		server.setExecutor(handlers);
+		server.createContext("/convert", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException{
+				try {
+					handleConvert(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.createContext("/health", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException{
+				try {
+					requests.incrementAndGet();
+					send(exchange, 200, TEXT_CONTENT_TYPE, "OK\n".getBytes(StandardCharsets.UTF_8));
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.createContext("/stats", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException{
+				try {
+					requests.incrementAndGet();
+					send(exchange, 200, TEXT_CONTENT_TYPE, statsText().getBytes(StandardCharsets.UTF_8));
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+	}
+	
+	public static void main(String[] args) {
+		int status = run(args);
+		if(status != 0){
+			System.exit(status);
+		}
+	}
+	
+	/**
+	 * Parses the command line and serves requests until the process is stopped
+	 * @param args command line arguments
+	 * @return exit status, 1 if the server could not start, 2 on bad usage
+	 */
+	public static int run(String[] args){
+		int port = DEFAULT_PORT;
+		InetAddress bind = InetAddress.getLoopbackAddress();
+		int threads = Runtime.getRuntime().availableProcessors();
+		int parseCacheSize = DEFAULT_PARSE_CACHE_SIZE;
+		int maxRequestMegabytes = DEFAULT_MAX_REQUEST_MEGABYTES;
+		
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("--port")){
+				port = i + 1 < args.length ? BatchConverter.parsePositiveInt(args[++i]) : -1;
+				if(port < 0 || port > 65535){
+					System.err.println(USAGE);
+					return 2;
+				}
+			} else if(args[i].equals("--bind")){
+				if(i + 1 >= args.length){
+					System.err.println(USAGE);
+					return 2;
+				}
+				try {
+					bind = InetAddress.getByName(args[++i]);
+				} catch (IOException e) {
+					System.err.println("Unknown address " + args[i]);
+					return 2;
+				}
+			} else if(args[i].equals("-j") || args[i].equals("--threads")){
+				threads = i + 1 < args.length ? BatchConverter.parsePositiveInt(args[++i]) : -1;
+				if(threads < 1){
+					System.err.println(USAGE);
+					return 2;
+				}
+			} else if(args[i].equals("--parse-cache")){
+				parseCacheSize = i + 1 < args.length ? BatchConverter.parsePositiveInt(args[++i]) : -1;
+				if(parseCacheSize < 1){
+					System.err.println(USAGE);
+					return 2;
+				}
+			} else if(args[i].equals("--max-request")){
+				maxRequestMegabytes = i + 1 < args.length ? BatchConverter.parsePositiveInt(args[++i]) : -1;
+				if(maxRequestMegabytes < 1){
+					System.err.println(USAGE);
+					return 2;
+				}
+			} else if(args[i].equals("--lemma")){
+				if(i + 1 >= args.length){
+					System.err.println(USAGE);
+					return 2;
+				}
+				java.io.File lemmaFile = new java.io.File(args[++i]);
+				try {
+					LemmaLibrary.register(lemmaFile);
+				} catch (IOException e) {
+					System.err.println("Could not load lemma " + lemmaFile + ": " + e.getMessage());
+					return 2;
+				}
+			} else if(args[i].equals("-h") || args[i].equals("--help")){
+				System.out.println(USAGE);
+				return 0;
+			} else{
+				System.err.println(USAGE);
+				return 2;
+			}
+		}
+		
+		ExpressionParser.setParseCache(new ParseCache(parseCacheSize));
+		
+		final ConversionServer server;
+		try {
+			server = new ConversionServer(new InetSocketAddress(bind, port), threads, maxRequestMegabytes * (1L << 20));
+		} catch (IOException e) {
+			System.err.println("Could not listen on " + bind.getHostAddress() + ":" + port + ": " + e.getMessage());
+			return 1;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread("conversion-shutdown") {
+			@Override
+			public void run(){
+				server.stop();
+			}
+		});
+		server.start();
+		System.out.println("Listening on http://" + bind.getHostAddress() + ":" + server.getPort() + "/convert");
+		return 0; //the server's threads keep the process running
+	}
+	
+	public void start(){
+		server.start();
+	}
+	
+	/**
+	 * Stops accepting requests, waiting up to a second for those being handled
+	 */
+	public void stop(){
+		server.stop(1);
+		handlers.shutdown();
+		converters.shutdown();
+	}
+	
+	/**
+	 * @return the port listened on, which is chosen by the system if 0 was asked for
+	 */
+	public int getPort(){
+		return server.getAddress().getPort();
+	}
+	
+	public long getRequests(){
+		return requests.get();
+	}
+	
+	public LatencyStats getLatencyStats(){
+		return latency;
+	}
+	
+	private String statsText(){
+		StringBuilder sb = new StringBuilder();
+		sb.append("requests ").append(requests.get()).append('\n');
+		sb.append("conversions ").append(latency.getConversions()).append('\n');
+		sb.append("failures ").append(latency.getFailures()).append('\n');
+		sb.append(String.format(Locale.ROOT, "latency_mean_ms %.3f%n", latency.getMeanMillis()));
+		sb.append(String.format(Locale.ROOT, "latency_max_ms %.3f%n", latency.getMaxMillis()));
+		sb.append("latency_p50_ms ").append(latency.getPercentileMillis(0.5)).append('\n');
+		sb.append("latency_p90_ms ").append(latency.getPercentileMillis(0.9)).append('\n');
+		sb.append("latency_p99_ms ").append(latency.getPercentileMillis(0.99)).append('\n');
+		return sb.toString();
+	}
+	
+	private void handleConvert(HttpExchange exchange) throws IOException{
+		requests.incrementAndGet();
+		if(!exchange.getRequestMethod().equals("POST")){
+			exchange.getResponseHeaders().set("Allow", "POST");
+			send(exchange, 405, TEXT_CONTENT_TYPE, "Use POST\n".getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		byte[] body = readBody(exchange.getRequestBody());
+		if(body == null){
+			send(exchange, 413, TEXT_CONTENT_TYPE, ("Requests are limited to " + maxRequestBytes + " bytes\n").getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		
+		String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+		String boundary = contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("multipart/")
+				? parameter(contentType, "boundary") : null;
+		if(boundary == null){
+			Conversion conversion = convert(body, 0, body.length);
+			if(conversion.error == null){
+				send(exchange, 200, FITCH_CONTENT_TYPE, conversion.proof);
+			} else{
+				send(exchange, 400, TEXT_CONTENT_TYPE, (conversion.error + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+			return;
+		}
+		
+		List<Part> parts = parseMultipart(body, boundary);
+		if(parts == null){
+			send(exchange, 400, TEXT_CONTENT_TYPE, "Malformed multipart body\n".getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		List<Future<Conversion>> results = new ArrayList<Future<Conversion>>();
+		for(final Part part : parts){
+			results.add(converters.submit(new java.util.concurrent.Callable<Conversion>() {
+				@Override
+				public Conversion call(){
+					return convert(part.body, part.start, part.end);
+				}
+			}));
+		}
+		
+		String responseBoundary = UUID.randomUUID().toString();
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		for(int i = 0; i < parts.size(); i++){
+			Conversion conversion;
+			try {
+				conversion = results.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				conversion = new Conversion(null, e.getCause().toString());
+			}
+			StringBuilder headers = new StringBuilder();
+			headers.append("--").append(responseBoundary).append("\r\n");
+			headers.append("Content-Disposition: attachment; filename=\"").append(outputName(parts.get(i).fileName, i)).append("\"\r\n");
+			headers.append("X-Conversion-Status: ").append(conversion.error == null ? "converted" : "failed").append("\r\n");
+			headers.append("Content-Type: ").append(conversion.error == null ? FITCH_CONTENT_TYPE : TEXT_CONTENT_TYPE).append("\r\n\r\n");
+			response.write(headers.toString().getBytes(StandardCharsets.UTF_8));
+			response.write(conversion.error == null ? conversion.proof : conversion.error.getBytes(StandardCharsets.UTF_8));
+			response.write(CRLF);
+		}
+		response.write(("--" + responseBoundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+		send(exchange, 200, "multipart/mixed; boundary=" + responseBoundary, response.toByteArray());
+	}
+	
+	/**
+	 * The Fitch file converted from a tree, or why it could not be
+	 */
+	private static final class Conversion {
+		final byte[] proof;
+		final String error;
+		
+		Conversion(byte[] proof, String error){
+			this.proof = proof;
+			this.error = error;
+		}
+	}
+	
+	private Conversion convert(byte[] body, int start, int end){
+		long startNanos = System.nanoTime();
+		Conversion conversion;
+		try {
+			ByteArrayOutputStream proof = new ByteArrayOutputStream(Math.max(1024, (end - start) * 4));
+			converter.get().truthTreeToFitch(new ByteArrayInputStream(body, start, end - start), proof);
+			conversion = new Conversion(proof.toByteArray(), null);
+		} catch (IOException | RuntimeException | StackOverflowError e) {
+			conversion = new Conversion(null, e.toString());
+		}
+		latency.record(System.nanoTime() - startNanos, conversion.error != null);
+		return conversion;
+	}
+	
+	/**
+	 * @return the whole body, or null if it is longer than the limit
+	 */
+	private byte[] readBody(InputStream in) throws IOException{
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1 << 16];
+		int n;
+		while((n = in.read(buffer)) > 0){
+			if(body.size() + n > maxRequestBytes){
+				return null;
+			}
+			body.write(buffer, 0, n);
+		}
+		return body.toByteArray();
+	}
+	
+	private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException{
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+	
+	/**
+	 * One part of a multipart body, which is left in place in the body
+	 */
+	private static final class Part {
+		final byte[] body;
+		final int start;
+		final int end;
+		final String fileName;
+		
+		Part(byte[] body, int start, int end, String fileName){
+			this.body = body;
+			this.start = start;
+			this.end = end;
+			this.fileName = fileName;
+		}
+	}
+	
+	/**
+	 * Splits a multipart body (RFC 2046) into its parts
+	 * @return the parts, or null if the body is malformed
+	 */
+	static List<Part> parseMultipart(byte[] body, String boundary){
+		byte[] delimiter = ("--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+		byte[] headerEnd = {'\r', '\n', '\r', '\n'};
+		List<Part> parts = new ArrayList<Part>();
+		int at = indexOf(body, delimiter, 0);
+		while(at >= 0){
+			int after = at + delimiter.length;
+			if(after + 1 < body.length && body[after] == '-' && body[after + 1] == '-'){
+				return parts; //closing delimiter
+			}
+			int headersStart = indexOf(body, CRLF, after);
+			int contentStart = indexOf(body, headerEnd, after);
+			if(headersStart < 0 || contentStart < 0){
+				return null;
+			}
+			//an empty header block ends right after the delimiter line
+			String headers = contentStart > headersStart
+					? new String(body, headersStart + 2, contentStart - headersStart - 2, StandardCharsets.UTF_8) : "";
+			contentStart = contentStart > headersStart ? contentStart + 4 : headersStart + 4;
+			int next = indexOf(body, concat(CRLF, delimiter), contentStart);
+			if(next < 0){
+				return null;
+			}
+			String fileName = null;
+			for(String header : headers.split("\r\n")){
+				if(header.toLowerCase(Locale.ROOT).startsWith("content-disposition:")){
+					fileName = parameter(header, "filename");
+				}
+			}
+			parts.add(new Part(body, contentStart, next, fileName));
+			at = next + 2;
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the value of a parameter of a header value such as a Content-Type, or null
+	 */
+	static String parameter(String header, String name){
+		for(String param : header.split(";")){
+			int eq = param.indexOf('=');
+			if(eq > 0 && param.substring(0, eq).trim().equalsIgnoreCase(name)){
+				String value = param.substring(eq + 1).trim();
+				if(value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")){
+					value = value.substring(1, value.length() - 1);
+				}
+				return value;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the name of the Fitch file for an uploaded tree: X.tft becomes X.prf, and a name
+	 *         holding control characters (which could add headers to the part) becomes tree-index.prf
+	 */
+	private static String outputName(String fileName, int index){
+		String fallback = "tree-" + index + FITCH_EXTENSION;
+		if(fileName == null || fileName.isEmpty()){
+			return fallback;
+		}
+		try {
+			fileName = URLDecoder.decode(fileName.replace("+", "%2B"), "UTF-8");
+		} catch (IllegalArgumentException | IOException e) {
+			//keep it as sent
+		}
+		for(int i = 0; i < fileName.length(); i++){
+			char c = fileName.charAt(i);
+			if(Character.isISOControl(c) || c == '\u2028' || c == '\u2029'){
+				return fallback;
+			}
+		}
+		fileName = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+		if(fileName.endsWith(TRUTH_TREE_EXTENSION)){
+			fileName = fileName.substring(0, fileName.length() - TRUTH_TREE_EXTENSION.length());
+		}
+		fileName = fileName.replace("\"", "");
+		return fileName.isEmpty() ? fallback : fileName + FITCH_EXTENSION;
+	}
+	
+	private static int indexOf(byte[] data, byte[] pattern, int from){
+		outer:
+		for(int i = Math.max(from, 0); i <= data.length - pattern.length; i++){
+			for(int j = 0; j < pattern.length; j++){
+				if(data[i + j] != pattern[j]){
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+	
+	private static byte[] concat(byte[] a, byte[] b){
+		byte[] result = new byte[a.length + b.length];
+		System.arraycopy(a, 0, result, 0, a.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		return result;
+	}
+	
+	private static ThreadFactory threadFactory(final String name){
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+				thread.setDaemon(false);
+				return thread;
+			}
+		};
+	}
+}
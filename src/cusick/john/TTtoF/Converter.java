@@ -28,31 +28,60 @@
 package cusick.john.TTtoF;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CancellationException;
 
 import cusick.john.TTtoF.Fitch.FitchFileManager;
 import cusick.john.TTtoF.Fitch.FitchProof;
+import cusick.john.TTtoF.Fitch.ProofHoister;
 import cusick.john.TTtoF.Fitch.ProofLine;
 import perl.aaron.TruthTrees.Branch;
 import perl.aaron.TruthTrees.BranchLine;
 import perl.aaron.TruthTrees.BranchTerminator;
+import perl.aaron.TruthTrees.Log;
+import perl.aaron.TruthTrees.ModelTreeBuilder;
 import perl.aaron.TruthTrees.TruthTreeFileManager;
-import perl.aaron.TruthTrees.logic.AtomicStatement;
 import perl.aaron.TruthTrees.logic.Biconditional;
 import perl.aaron.TruthTrees.logic.Conditional;
 import perl.aaron.TruthTrees.logic.Conjunction;
 import perl.aaron.TruthTrees.logic.Disjunction;
 import perl.aaron.TruthTrees.logic.Negation;
 import perl.aaron.TruthTrees.logic.Statement;
+import perl.aaron.TruthTrees.logic.StatementFactory;
 
 /**
  * This class takes care of converting a truth tree in memory to a formal F proof in memory.
  */
 public class Converter {
 	//Notes on how rootBranch works: rootBranch is essentially the start of the proof AFTER the premises
+	
+	/**
+	 * Steps of converting a file, in the order they run
+	 */
+	public enum Phase { LOAD, CONVERT, INDEX, WRITE }
+	
+	/**
+	 * Told as each phase of truthTreeToFitch starts, on the converting thread
+	 */
+	public interface ProgressListener {
+		void phaseStarted(Phase phase);
+	}
+
+	private static final Log LOG = Log.get(Converter.class);
+	
+	/**
+	 * Version of the conversion, to be increased by any change that changes the proofs written,
+	 * so that results cached by an earlier version (see ResultCache) are not reused. Version 2
+	 * hoists lines shared by sibling subproofs (see ProofHoister), so a proof can be shorter than
+	 * version 1 wrote it: typically 5-25% for generated trees, none for the bundled examples.
+	 */
+	public static final int VERSION = 2;
 
 	/**
 	 * Set of branches that require lemmas, but have already been instantiated, used so that lemmas
@@ -102,21 +131,21 @@ public class Converter {
 	}
 	
 	/** 
-	 * Recursive helper print for debugging, prints trees.
+	 * Recursive helper print for debugging, writes trees to the debug log.
 	 * @param branch root branch to start print
 	 */
 	public void recursivePrint(Branch branch){
-		System.out.println("recursivePrintStart (branch counter)");
+		LOG.debug("recursivePrintStart (branch counter)");
 		//print BranchLine things
 		for(int i = 0; i < branch.numLines(); i++){
 			if(branch.getLine(i).getStatement()!=null){
-				System.out.println(branch.getLine(i).getStatement().toString());	
+				LOG.debug("{}", branch.getLine(i).getStatement());
 			}
 		}
 		
 		//print Branch things
 		if(branch.getDecomposedFrom() != null){ //non root
-			System.out.println("branch decomposed from: "+branch.getDecomposedFrom().getStatement().toString());
+			LOG.debug("branch decomposed from: {}", branch.getDecomposedFrom().getStatement());
 		}
 		//recurse
 		for(Branch branchChild : branch.getBranches()){
@@ -129,32 +158,125 @@ public class Converter {
 	 * @param ttFile Input Truth Tree file
 	 * @param fitchFile Output Fitch file
 	 * @return formal F proof
+	 * @throws IllegalArgumentException if the truth tree file could not be read
+	 * @throws IllegalStateException if the Fitch file could not be written
 	 */
 	public FitchProof truthTreeToFitch(File ttFile, File fitchFile){
-		FitchProof formalProof = new FitchProof();
-        
+		return truthTreeToFitch(ttFile, fitchFile, null);
+	}
+	
+	/**
+	 * Driver call to convert, telling a listener as each phase starts. The conversion stops with a
+	 * CancellationException between phases, or between branches while converting, once the
+	 * converting thread is interrupted.
+	 * @param ttFile Input Truth Tree file
+	 * @param fitchFile Output Fitch file
+	 * @param listener told as each phase starts, or null
+	 * @return formal F proof
+	 * @throws IllegalArgumentException if the truth tree file could not be read
+	 * @throws IllegalStateException if the Fitch file could not be written
+	 * @throws CancellationException if the thread was interrupted before the file was written
+	 */
+	public FitchProof truthTreeToFitch(File ttFile, File fitchFile, ProgressListener listener){
 		//(1) get the truth tree into memory
 		//Notes on how rootBranch works: rootBranch is essentially the start of the proof AFTER the premises
+		startPhase(Phase.LOAD, listener);
         Branch rootBranch = TruthTreeFileManager.loadFromFile(ttFile);
+        if(rootBranch == null){
+        	throw new IllegalArgumentException("Could not read truth tree " + ttFile);
+        }
         
+        startPhase(Phase.CONVERT, listener);
+        FitchProof formalProof = convert(rootBranch);
         
+        startPhase(Phase.INDEX, listener);
+        formalProof.setFitchIndices();
         
+        //output Fitch proof
+        startPhase(Phase.WRITE, listener);
+        FitchFileManager fFileManager = new FitchFileManager();
+        if(fFileManager.outputFitchFile(fitchFile, formalProof) != 0){
+        	throw new IllegalStateException("Could not write " + fitchFile);
+        }
+		
+		return formalProof;
+	}
+	
+	/**
+	 * Converts a truth tree read from a stream and writes the Fitch file to another, entirely in
+	 * memory
+	 * @param ttIn tft XML of the truth tree, not closed
+	 * @param fitchOut receives the Fitch file as UTF-8, flushed but not closed
+	 * @return formal F proof
+	 * @throws IllegalArgumentException if the stream does not hold a valid truth tree
+	 * @throws IOException if the Fitch file could not be written
+	 * @throws CancellationException if the thread was interrupted before the file was written
+	 */
+	public FitchProof truthTreeToFitch(InputStream ttIn, OutputStream fitchOut) throws IOException{
+		startPhase(Phase.LOAD, null);
+        Branch rootBranch = TruthTreeFileManager.loadFromStream(ttIn, new ModelTreeBuilder());
+        if(rootBranch == null){
+        	throw new IllegalArgumentException("Not a valid truth tree");
+        }
         
-        setBranchDecompositions(rootBranch.getRoot());
-        System.out.println("======= recursive print ======");
-        recursivePrint(rootBranch.getRoot());
-        System.out.println("branchDecompositionMap: "+branchDecompositionMap.toString());
-        
+        startPhase(Phase.CONVERT, null);
+        FitchProof formalProof = convert(rootBranch);
         
-        transformTreeToProof(rootBranch, formalProof);
+        startPhase(Phase.INDEX, null);
+        formalProof.setFitchIndices();
         
-        //output Fitch proof
-        FitchFileManager fFileManager = new FitchFileManager();
-        fFileManager.outputFitchFile(fitchFile, formalProof);
+        startPhase(Phase.WRITE, null);
+        new FitchFileManager().outputFitchFile(fitchOut, formalProof);
 		
 		return formalProof;
 	}
 	
+	private static void startPhase(Phase phase, ProgressListener listener){
+		checkInterrupted();
+		if(listener != null){
+			listener.phaseStarted(phase);
+		}
+	}
+	
+	private static void checkInterrupted(){
+		if(Thread.currentThread().isInterrupted()){
+			throw new CancellationException("Conversion interrupted");
+		}
+	}
+	
+	/**
+	 * Converts a truth tree in memory to a formal F proof in memory. Each conversion starts from
+	 * empty maps, so a Converter can be reused; calls on the same instance are serialized, use
+	 * one Converter per thread to convert in parallel.
+	 * @param rootBranch truth tree root branch (the branch after the premises), which is annotated
+	 *        with the lines it was decomposed from
+	 * @return formal F proof
+	 */
+	public synchronized FitchProof convert(Branch rootBranch){
+		FitchProof formalProof = new FitchProof();
+		
+		instantiatedLemmas.clear();
+		branchDecompositionMap.clear();
+		referenceMap.clear();
+		bicondMap.clear();
+        
+        setBranchDecompositions(rootBranch.getRoot());
+        if(LOG.isDebugEnabled()){
+        	LOG.debug("======= recursive print ======");
+        	recursivePrint(rootBranch.getRoot());
+        	LOG.debug("branchDecompositionMap: {}", branchDecompositionMap);
+        }
+        
+        transformTreeToProof(rootBranch, formalProof);
+        
+        //derive the lines shared by the subproofs of a split once, above them
+        if(ProofHoister.hoist(formalProof) > 0){
+        	LOG.debug("{}", formalProof);
+        }
+        
+        return formalProof;
+	}
+	
 	/** 
 	 * Transforms a Truth tree in memory to a formal F proof in memory
 	 * @param rootBranch input truth tree root branch
@@ -163,13 +285,15 @@ public class Converter {
 	private void transformTreeToProof(Branch rootBranch, FitchProof formalProof){
 		Branch premises = rootBranch.getRoot(); 		
 		
-		/* Note: premises always starts with an empty statement (guessing this is a bug)
+		/* Note: trees built through a TreePanel start with an empty premise (guessing this is a bug),
+		 * trees loaded by TruthTreeFileManager do not
 		 * Also Note: add all but the last premise, because this is the negated conclusion 
 		 */
 		
-		//TODO monitor the Truth Tree software, if this bug is ever patched, this lines need to be deleted
-		//handle the truth tree bug where first premise is always empty
-		premises.removeLine(0);
+		//handle the truth tree bug where first premise is empty
+		if(premises.numLines() > 0 && premises.getStatement(0) == null){
+			premises.removeLine(0);
+		}
 
 		int numPremises = premises.numLines();
 		
@@ -182,20 +306,20 @@ public class Converter {
         //negated conclusion
         ProofLine negConcl = formalProof.initializeProofByContradiction(premises.getLine(numPremises-1));
         referenceMap.put(premises.getLine(numPremises-1), negConcl);
-        formalProof.printProof();
+        LOG.debug("{}", formalProof);
         
 		
         //Next: recursively construct the rest of the proof
         //start recursion level and 1 because really it's the subproof level
         //recursive level 0: premises
         //recursive level 1: negated contradiction (same level as first set of statements)
-        System.out.println("============ recursive call ==========");
+        LOG.debug("============ recursive call ==========");
         recursiveTreeTraversal(rootBranch, formalProof);
         
         //finally, set the last statement to an end of subproof
         formalProof.getProof().get(formalProof.getLength()-1).setEndofSubproof(true);;
         //do a neg intro -- reference everything after premises 
-        ProofLine negIntro = new ProofLine(new Negation(negConcl.getStatement()), formalProof, 2, FitchProof.RULE_NEG_INTRO);
+        ProofLine negIntro = new ProofLine(StatementFactory.negation(negConcl.getStatement()), formalProof, 2, FitchProof.RULE_NEG_INTRO);
         for(int i = numPremises - 1; i < formalProof.getLength(); i++){
         	negIntro.addReferencedLine(formalProof.getProof().get(i));
         }
@@ -210,7 +334,7 @@ public class Converter {
         	formalProof.addLine(negElim);
         }
         
-        formalProof.printProof();
+        LOG.debug("{}", formalProof);
         
 	}
 	
@@ -258,7 +382,7 @@ public class Converter {
 			}
 		}
 		
-		Statement lemmaStatement = new Biconditional(parentStatement, equivalentStatement);
+		Statement lemmaStatement = StatementFactory.biconditional(parentStatement, equivalentStatement);
 		lemmaLine = new ProofLine(lemmaStatement, formalProof, 0, lemmaRule);
 		//no references to set
 		formalProof.addLine(lemmaLine);
@@ -287,17 +411,18 @@ public class Converter {
 	 * @return status
 	 */
 	private int recursiveTreeTraversal(Branch branch, FitchProof formalProof){
+		checkInterrupted();
 		//handle branch
-		System.out.println("*start recursiveTreeTraversal");
+		LOG.trace("*start recursiveTreeTraversal");
 
 		
 		for(int i = 0; i < branch.numLines(); i++){
-			System.out.println(branch.getLine(i).toString());
+			LOG.trace("{}", branch.getLine(i));
 			
 			if(branch.getLine(i) instanceof BranchTerminator){ //terminator branchLine
 				//handle terminator
 				BranchTerminator contradictionLine = (BranchTerminator) branch.getLine(i);
-				ProofLine pl = new ProofLine(new AtomicStatement("⊥"), formalProof, 0, FitchProof.RULE_CONTR_INTRO);
+				ProofLine pl = new ProofLine(StatementFactory.atomic("⊥"), formalProof, 0, FitchProof.RULE_CONTR_INTRO);
 				pl.setEndofSubproof(true);
 				for(BranchLine referenceLine : contradictionLine.getSelectedLines()){
 					pl.addReferencedLine(referenceMap.get(referenceLine));
@@ -316,7 +441,7 @@ public class Converter {
 		}
 		else{
 			//needs to occur before recursive call, but after this branch's lines have been handled
-			System.out.println("call insert branch lemma");
+			LOG.trace("call insert branch lemma");
 			insertBranchLemma(branch, formalProof);
 		}
 		
@@ -328,7 +453,7 @@ public class Converter {
 		//after all branches, use or elim
 		if(branch.getBranches().size() > 1){
 			//after recursive calls, contradiction. return line numbers to reference from above call?
-			ProofLine pl = new ProofLine(new AtomicStatement("⊥"), formalProof, 2, FitchProof.RULE_DISJ_ELIM);
+			ProofLine pl = new ProofLine(StatementFactory.atomic("⊥"), formalProof, 2, FitchProof.RULE_DISJ_ELIM);
 			for(Branch branchChild : branch.getBranches()){
 				for(int i = 0; i < branchChild.numLines(); i++){
 					//TODO reference the OR statement
@@ -372,8 +497,8 @@ public class Converter {
 		//this is the statement from which the current line was inferred
 		BranchLine parentBranchLine = bLine.getDecomposedFrom();
 		
-		System.out.println("BRANCHTOLINE-bLine:"+bLine.getStatement().toString());
-		System.out.println("BRANCHTOLINE-parent: "+parentBranchLine.getStatement().toString());
+		LOG.trace("BRANCHTOLINE-bLine:{}", bLine.getStatement());
+		LOG.trace("BRANCHTOLINE-parent: {}", parentBranchLine.getStatement());
 		
 		//MOST OF THESE LEMMAS HAVE ALREADY BEEN APPLIED (all those that causing a branch)
 		//ANY LEMMAS THAT HAVE NOT BEEN APPLIED ARE CONJUNCTION LEMMAS AND HANDLED INSIDE THESE IFS
@@ -406,7 +531,7 @@ public class Converter {
 				if(bicondMap.containsKey(parentBranchLine) && bicondMap.get(parentBranchLine).get(0) != null){ // conjunction has already been made
 					//references handled below
 				} else{ // make the conjunction
-					ProofLine bicondDecomp = new ProofLine(new Conjunction(bicondLHS, bicondRHS), formalProof, 1, "");
+					ProofLine bicondDecomp = new ProofLine(StatementFactory.conjunction(bicondLHS, bicondRHS), formalProof, 1, "");
 					bicondDecomp.setStartofSubproof(true);
 					
 					Vector<ProofLine> value = new Vector<ProofLine>();
@@ -420,11 +545,11 @@ public class Converter {
 				bicondReferenceIndex = 0;
 			}
 			//RHS
-			else if(bLine.getStatement().equals(new Negation(bicondLHS)) || bLine.getStatement().equals(new Negation(bicondRHS))){
+			else if(bLine.getStatement().equals(StatementFactory.negation(bicondLHS)) || bLine.getStatement().equals(StatementFactory.negation(bicondRHS))){
 				if(bicondMap.containsKey(parentBranchLine) && bicondMap.get(parentBranchLine).get(1) != null){ // conjunction has already been made
 					//references handled below
 				} else{ // make the conjunction
-					ProofLine bicondDecomp = new ProofLine(new Conjunction(new Negation(bicondLHS), new Negation(bicondRHS)), formalProof, 1, "");
+					ProofLine bicondDecomp = new ProofLine(StatementFactory.conjunction(StatementFactory.negation(bicondLHS), StatementFactory.negation(bicondRHS)), formalProof, 1, "");
 					bicondDecomp.setStartofSubproof(true);
 					
 					Vector<ProofLine> value = new Vector<ProofLine>();
@@ -463,7 +588,7 @@ public class Converter {
 					//insert DeMorgans2 lemma
 					Statement lemmaRHS =  getEquivalentDemorgan2((Disjunction) statementWithoutNegation);
 					ProofLine lemma = new ProofLine(
-							new Biconditional(parentBranchLine.getStatement(), lemmaRHS), 
+							StatementFactory.biconditional(parentBranchLine.getStatement(), lemmaRHS), 
 							formalProof, 0, FitchProof.LEMMA_DEMORGAN2);
 					
 					formalProof.addLine(lemma);
@@ -492,7 +617,7 @@ public class Converter {
 					//insert NegCond lemma
 					Statement lemmaRHS = getEquivalentNegatedConditional((Conditional) statementWithoutNegation);
 					ProofLine lemma = new ProofLine(
-							new Biconditional(parentBranchLine.getStatement(), lemmaRHS), 
+							StatementFactory.biconditional(parentBranchLine.getStatement(), lemmaRHS), 
 							formalProof, 0, FitchProof.LEMMA_NEG_COND);
 					
 					formalProof.addLine(lemma);
@@ -520,11 +645,11 @@ public class Converter {
 				
 				//identify if this branch is LHS(e.g., ~P & Q) or RHS (e.g. P & ~Q)
 				//LHS
-				if(bLine.getStatement().equals(bicondLHS) || bLine.getStatement().equals(new Negation(bicondRHS))){
+				if(bLine.getStatement().equals(bicondLHS) || bLine.getStatement().equals(StatementFactory.negation(bicondRHS))){
 					if(bicondMap.containsKey(parentBranchLine) && bicondMap.get(parentBranchLine).get(0) != null){ // conjunction has already been made
 						//references handled below
 					} else{ // make the conjunction
-						ProofLine bicondDecomp = new ProofLine(new Conjunction(bicondLHS, new Negation(bicondRHS)), formalProof, 1, "");
+						ProofLine bicondDecomp = new ProofLine(StatementFactory.conjunction(bicondLHS, StatementFactory.negation(bicondRHS)), formalProof, 1, "");
 						bicondDecomp.setStartofSubproof(true);
 						
 						Vector<ProofLine> value = new Vector<ProofLine>();
@@ -538,11 +663,11 @@ public class Converter {
 					bicondReferenceIndex = 0;
 				}
 				//RHS
-				else if(bLine.getStatement().equals(new Negation(bicondLHS)) || bLine.getStatement().equals(bicondRHS)){
+				else if(bLine.getStatement().equals(StatementFactory.negation(bicondLHS)) || bLine.getStatement().equals(bicondRHS)){
 					if(bicondMap.containsKey(parentBranchLine) && bicondMap.get(parentBranchLine).get(1) != null){ // conjunction has already been made
 						//references handled below
 					} else{ // make the conjunction
-						ProofLine bicondDecomp = new ProofLine(new Conjunction(new Negation(bicondLHS), bicondRHS), formalProof, 1, "");
+						ProofLine bicondDecomp = new ProofLine(StatementFactory.conjunction(StatementFactory.negation(bicondLHS), bicondRHS), formalProof, 1, "");
 						bicondDecomp.setStartofSubproof(true);
 						
 						Vector<ProofLine> value = new Vector<ProofLine>();
@@ -583,9 +708,9 @@ public class Converter {
 		//ㄱ(P ∧ Q) ↔ (ㄱP ∨ ㄱQ)
 		Statement operand1 = statement.getOperands().get(0);
 		Statement operand2 = statement.getOperands().get(1);
-		Disjunction equivalentStatement = new Disjunction(
-				new Negation(operand1),
-				new Negation(operand2));
+		Statement equivalentStatement = StatementFactory.disjunction(
+				StatementFactory.negation(operand1),
+				StatementFactory.negation(operand2));
 		return equivalentStatement;
 	}
 	
@@ -598,9 +723,9 @@ public class Converter {
 		//ㄱ(P ∨ Q) ↔ (ㄱP ∧ ㄱQ)
 		Statement operand1 = statement.getOperands().get(0);
 		Statement operand2 = statement.getOperands().get(1);
-		Conjunction equivalentStatement = new Conjunction(
-				new Negation(operand1),
-				new Negation(operand2));
+		Statement equivalentStatement = StatementFactory.conjunction(
+				StatementFactory.negation(operand1),
+				StatementFactory.negation(operand2));
 		return equivalentStatement;
 	}
 
@@ -613,8 +738,8 @@ public class Converter {
 		//(P ➝ Q) ↔ (ㄱP ∨ Q)
 		Statement operand1 = statement.getOperands().get(0);
 		Statement operand2 = statement.getOperands().get(1);
-		Disjunction equivalentStatement = new Disjunction(
-				new Negation(operand1),
+		Statement equivalentStatement = StatementFactory.disjunction(
+				StatementFactory.negation(operand1),
 				operand2);
 		return equivalentStatement;
 	}
@@ -628,9 +753,9 @@ public class Converter {
 		//ㄱ(P ➝ Q) ↔ (P ∧ ㄱQ)
 		Statement operand1 = statement.getOperands().get(0);
 		Statement operand2 = statement.getOperands().get(1);
-		Conjunction equivalentStatement = new Conjunction(
+		Statement equivalentStatement = StatementFactory.conjunction(
 				operand1,
-				new Negation(operand2));
+				StatementFactory.negation(operand2));
 		return equivalentStatement;
 	}
 	
@@ -643,9 +768,9 @@ public class Converter {
 		//(P ↔ Q) ↔ ((P ∧ Q) ∨ (ㄱP ∧ ㄱQ))
 		Statement operand1 = statement.getOperands().get(0);
 		Statement operand2 = statement.getOperands().get(1);
-		Disjunction equivalentStatement = new Disjunction(
-				new Conjunction(operand1, operand2),
-				new Conjunction(new Negation(operand1), new Negation(operand2)));
+		Statement equivalentStatement = StatementFactory.disjunction(
+				StatementFactory.conjunction(operand1, operand2),
+				StatementFactory.conjunction(StatementFactory.negation(operand1), StatementFactory.negation(operand2)));
 		return equivalentStatement;
 	}
 	
@@ -658,9 +783,9 @@ public class Converter {
 		//ㄱ(P ↔ Q) ↔ ((P ∧ ㄱQ) ∨ (ㄱP ∧ Q))
 		Statement operand1 = statement.getOperands().get(0);
 		Statement operand2 = statement.getOperands().get(1);
-		Disjunction equivalentStatement = new Disjunction(
-				new Conjunction(operand1, new Negation(operand2)),
-				new Conjunction(new Negation(operand1), operand2));
+		Statement equivalentStatement = StatementFactory.disjunction(
+				StatementFactory.conjunction(operand1, StatementFactory.negation(operand2)),
+				StatementFactory.conjunction(StatementFactory.negation(operand1), operand2));
 		return equivalentStatement;
 	}
 }
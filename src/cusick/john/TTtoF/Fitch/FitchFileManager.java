@@ -27,55 +27,41 @@
 
 package cusick.john.TTtoF.Fitch;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.util.Scanner;
-import java.util.Stack;
-import java.util.Vector;
-import java.util.regex.Pattern;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
-import javax.swing.JFileChooser;
 import javax.swing.JPanel;
-import javax.swing.filechooser.FileNameExtensionFilter;
+
+import cusick.john.TTtoF.graphics.FitchFileDialogs;
 
 /**
- * This class outputs a formal F proof in memory to a file
+ * This class outputs a formal F proof in memory to a file, or to any stream or writer
  */
 public class FitchFileManager {
-	private static final String EXTENSION = "prf";
+	public static final String EXTENSION = "prf";
 	
 	/** 
-	 * GUI call to save file
+	 * GUI call to save file (see FitchFileDialogs, which keeps Swing out of this class)
 	 * @param parent panel (GUI)
 	 * @param proof F proof in memory
 	 */
 	public void saveFile(JPanel parent, FitchProof proof)
 	{
-		final JFileChooser fileChooser = new JFileChooser();
-		FileNameExtensionFilter tftFilter = new FileNameExtensionFilter(
-		  EXTENSION + " files(*." + EXTENSION + ")",
-		  EXTENSION);
-		
-		fileChooser.addChoosableFileFilter(tftFilter);
-		fileChooser.setFileFilter(tftFilter);
-		
-		if (fileChooser.showSaveDialog(parent) == JFileChooser.APPROVE_OPTION)
-		{
-			File file = fileChooser.getSelectedFile();
-			if (fileChooser.getFileFilter() == tftFilter && !file.getName().endsWith("." + EXTENSION))
-				file = new File(file.getAbsolutePath() + "." + EXTENSION);
-			System.out.println(file.getName());
-			outputFitchFile(file, proof);
-		}
+		FitchFileDialogs.saveFile(parent, this, proof);
 	}
 	
 	/**
 	 * Assemble line 2 of Fith file
 	 * @return the Fitch OS string
 	 */
-	private String assembleFitchOSLine(){
+	private static String assembleFitchOSLine(){
 		String osType = "Unknown:";
 	    if (OS_NAME.toLowerCase().startsWith("mac os x")) {
 	      osType = FITCH_OS_CONSTANT_MAC;
@@ -86,40 +72,69 @@ public class FitchFileManager {
 	    }
 	    return osType+OS_NAME+OS_VERSION;
 	}
-		
+	
 	/**
-	 * Sum the ASCII values of a string, used for checksum
-	 * @param str
-	 * @return sum of ASCII values of each character in str
+	 * @return everything other than the proof that the bytes of a written Fitch file depend on
+	 *         (the Fitch version, the operating system line and the line separator)
 	 */
-	private long sumCharAsciiValues(String str){
-		//calculate the check sum for each line
-		long sum = 0;
-		for(int i = 0; i < str.length(); i++){
-			sum += (long)str.charAt(i);
-		}
-		return sum;
+	public static String getFormatSignature(){
+		return FITCH_VERSION + "|" + assembleFitchOSLine() + "|" + LINE_SEPARATOR;
 	}
 	
 	/** 
 	 * Ouptut an entire Fitch file, start to finish
 	 * @param file output Fitch file
 	 * @param proof F proof in memory
-	 * @return
+	 * @return 0 on success, 1 if the file could not be written
 	 */
 	public int outputFitchFile(File file, FitchProof proof){
 		
 		//open filename
-		PrintWriter writer;
+		Writer writer;
 		try {
-			writer = new PrintWriter(file.getAbsolutePath(), "UTF-8");
-		} catch (FileNotFoundException | UnsupportedEncodingException e) {
-			// TODO Auto-generated catch block
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 			System.err.println("Could no open output file!");
 			return 1;
 		}
 		
+		try {
+			outputFitchFile(writer, proof);
+			writer.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Could not write output file!");
+			try {
+				writer.close();
+			} catch (IOException closeException) {
+				//already reporting the write failure
+			}
+			return 1;
+		}
+		return 0;
+	}
+	
+	/**
+	 * Output an entire Fitch file, start to finish, as UTF-8
+	 * @param out output, flushed but not closed
+	 * @param proof F proof in memory
+	 * @throws IOException if the stream fails
+	 */
+	public void outputFitchFile(OutputStream out, FitchProof proof) throws IOException{
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+		outputFitchFile(writer, proof);
+		writer.flush();
+	}
+	
+	/**
+	 * Output an entire Fitch file, start to finish
+	 * @param writer output, not closed or flushed
+	 * @param proof F proof in memory
+	 * @throws IOException if the writer fails
+	 */
+	public void outputFitchFile(Writer writer, FitchProof proof) throws IOException{
+		
 		//Fitch version number
 		//TODO: is there a way to find Fitch's current version number?
 		String line1 = FITCH_VERSION;
@@ -132,22 +147,22 @@ public class FitchFileManager {
 		//Fitch file format
 		String line5 = FITCH_FILE_FORMAT;
 		
-		writer.println(line1);
-		writer.println(line2);
-		writer.println(line3);
-		writer.println(line4);
-		writer.println(line5);
+		writer.write(line1 + LINE_SEPARATOR);
+		writer.write(line2 + LINE_SEPARATOR);
+		writer.write(line3 + LINE_SEPARATOR);
+		writer.write(line4 + LINE_SEPARATOR);
+		writer.write(line5 + LINE_SEPARATOR);
 		
 		//this is the proof, too long to save in String so output incrementally
-		long line6CheckSum = printProof(writer,proof);
+		long line6CheckSum = new FitchProofWriter(writer).printProof(proof);
 		
 		//check sum is the sum of ascii values from the first 6 lines
 		long checkSum = 
-				sumCharAsciiValues(line1) +
-				sumCharAsciiValues(line2) +
-				sumCharAsciiValues(line3) +
-				sumCharAsciiValues(line4) +
-				sumCharAsciiValues(line5) +
+				FitchProofWriter.sumCharAsciiValues(line1) +
+				FitchProofWriter.sumCharAsciiValues(line2) +
+				FitchProofWriter.sumCharAsciiValues(line3) +
+				FitchProofWriter.sumCharAsciiValues(line4) +
+				FitchProofWriter.sumCharAsciiValues(line5) +
 				line6CheckSum;
 		
 		//append the check sum to the end of line 6
@@ -156,372 +171,8 @@ public class FitchFileManager {
 		//this is the s = ...; line, not sure what it does, doesn't seem to matter
 		String line7 = "s=123;"; //random number 123
 		
-		writer.println(checkSumStr);
-		writer.println(line7);
-		
-		
-		writer.close();
-		return 0;
-	}
-	
-	//TODO maybe use string builder
-	/**
-	 * Output a F proof in memory to a Fitch file
-	 * @param writer output file
-	 * @param proof formal F proof in memory
-	 * @return partial checksum
-	 */
-	private Long printProof(PrintWriter writer, FitchProof proof) {
-		
-		proof.setFitchIndices();
-		
-		Long runningCheckSum = (long) 0;
-		Stack<String> closingString = new Stack<String>();
-		
-		//opening lines of proof
-		runningCheckSum += OutputAndAdd(writer, PROOF_OPENING_LINE, true, closingString);
-		runningCheckSum += OutputAndAdd(writer, PROOF_DRIVER, true, closingString);
-		
-		//RECURSIVE PRINT CALL
-
-		System.out.println("checksum BEFORE RECURSE: "+runningCheckSum);
-		runningCheckSum += recursiveProofPrinter(writer, proof, closingString, 0);
-		System.out.println("checksum AFTER RECURSE: "+runningCheckSum);
-		
-		//TODO maybe program in goals
-		//closing lines of proof
-		runningCheckSum += OutputAndAdd(writer, PROOF_GOAL, false, closingString);
-		runningCheckSum += OutputAndAdd(writer, PROOF_A, false, closingString);
-
-		System.out.println("checksum AFTER LAST: "+runningCheckSum);
-		
-		//pop the rest off of closing branches, should just be the final two } from the opening lines
-		while(closingString.empty() == false){
-			System.out.println("pops at end (should be 2)");
-			runningCheckSum += CloseBranches(1, writer, closingString);
-		}
-		
-		return runningCheckSum;
-	}
-	
-	/**
-	 * Recursively output lines from a FitchProof file
-	 * @param writer output file
-	 * @param proof formal F proof in memory
-	 * @param closingString stack of closing strings
-	 * @param lineIndex proof line index
-	 * @return partial checksum
-	 */
-	private Long recursiveProofPrinter(PrintWriter writer, FitchProof proof, Stack<String> closingString, int lineIndex) {
-		Long runningCheckSum = (long) 0;
-		if(lineIndex >= proof.getLength()){
-			return (long) 0;
-		}
-		
-		if(lineIndex != 0){ //all but first call
-			//comma separating each line/subproof
-			runningCheckSum += OutputAndAdd(writer, ",", false, closingString); 
-		}
-		
-		if(lineIndex == 0 || proof.get(lineIndex).isStartofSubproof()){ //first call or start of subproof
-			if(lineIndex == 0){
-				runningCheckSum += OutputAndAdd(writer, PROOF_STARTER, true, closingString);
-			} else if(proof.get(lineIndex).isStartofSubproof()){
-				runningCheckSum += OutputAndAdd(writer, PROOF_SUB_STARTER, true, closingString);
-			}
-			
-			//S
-			runningCheckSum += OutputAndAdd(writer, PROOF_STEP_INFO, true, closingString);
-			runningCheckSum += OutputAndAdd(writer, PROOF_STEP_INFO_R_DEFAULT, false, closingString);
-			runningCheckSum += CloseBranches(1, writer, closingString); //closes PROOF_STEP_INFO
-			
-			//R
-//			OutputAndAdd(writer, PROOF_RULE, runningCheckSum, true, closingString);
-			runningCheckSum += OutputAndAdd(writer, PROOF_RULE_PROOF_START, false, closingString);
-//			CloseBranches(1, writer, runningCheckSum, closingString);
-			
-			//O
-			if(lineIndex == 0){
-				runningCheckSum += OutputAndAdd(writer, PROOF_OBJECT_PROOF_START, false, closingString);
-			} else if(proof.get(lineIndex).isStartofSubproof()){
-				runningCheckSum += OutputAndAdd(writer, PROOF_OBJECT_SUBPROOF_START, false, closingString);	
-			}
-			
-			//U -- Support, no supports for opening a new proof
-			//get rid of delim, just call OutputAndAdd with true and close branch
-			runningCheckSum += OutputAndAdd(writer, PROOF_SUPPORT, true, closingString);
-			runningCheckSum += CloseBranches(1, writer, closingString);
-			
-			//B -- idk what this is, always just b()
-			runningCheckSum += OutputAndAdd(writer, PROOF_B, false, closingString);
-			
-			//F -- recursive call
-			runningCheckSum += OutputAndAdd(writer, PROOF_F, true, closingString);
-			
-		}
-		
-		// proofLine	
-
-//		System.out.println("checksum before: "+runningCheckSum);
-		runningCheckSum += OutputAndAdd(writer, PROOF_SIMPLE_STEP, true, closingString);
-//		System.out.println("checksum after: "+runningCheckSum);
-		//S
-		runningCheckSum += OutputAndAdd(writer, PROOF_STEP_INFO, true, closingString);
-		runningCheckSum += OutputAndAdd(writer, PROOF_STEP_INFO_R_NORMAL, true, closingString);
-		runningCheckSum += OutputAndAdd(writer, proof.get(lineIndex).getStatementFitchString(), false, closingString); // print the statement text
-		runningCheckSum += CloseBranches(2, writer, closingString); //closes PROOF_STEP_INFO & PROOF_STEP_INFO_R_NORMAL
-
-		//R
-		if(proof.get(lineIndex).isLemma()){
-			//must import Lemma
-			runningCheckSum += OutputLemma(writer, proof.get(lineIndex).getRule(), closingString);
-		} else{
-			//normal F rule
-			String rule = getFitchRuleString(proof, lineIndex);
-			runningCheckSum += OutputAndAdd(writer, rule, false, closingString);
-		}
-
-		//O
-		runningCheckSum += OutputAndAdd(writer, PROOF_OBJECT_NORMAL_LINE, false, closingString);
-		
-		//U
-		runningCheckSum += OutputAndAdd(writer, PROOF_SUPPORT, true, closingString);
-		runningCheckSum += OutputSupportSteps(writer, proof, lineIndex, closingString);
-		runningCheckSum += CloseBranches(1, writer, closingString); //close the support branch
-		
-		//B -- idk what this is, always just b()
-		runningCheckSum += OutputAndAdd(writer, PROOF_B, false, closingString);
-		
-		//NO F for line, just recursive call (comma will be put at start of next line)
-		
-		//close Simple Step
-		runningCheckSum += CloseBranches(1, writer, closingString);
-		
-		//if this is the last step in a subproof (or end of proof)
-		if(proof.get(lineIndex).isEndofSubproof() || lineIndex == proof.getLength()-1){
-			//close F branch and subproof branch
-			runningCheckSum += CloseBranches(2, writer, closingString); 
-		}
-		
-		runningCheckSum += recursiveProofPrinter(writer, proof, closingString, lineIndex+1); //recursive call
-		return runningCheckSum;
-		
-	}
-	
-
-	/**
-	 * Output a Fitch lemma, this references the lemmas stored in cusick.john.TTtoF.FunamentalTruthTreeLemmas
-	 * @param writer output file
-	 * @param rule lemma to output
-	 * @param closingString stack of closing strings
-	 * @return partial checksum
-	 */
-	private Long OutputLemma(PrintWriter writer, String rule, Stack<String> closingString) {
-		System.out.println("starting lemma output");
-		//rule should correspond to the correct lemma file (without the .prf)
-		//open the proof, read in starting at the correct line/location (should all be the same)
-		//output to the new proof, close
-		Long runningCheckSum = (long) 0; //try to just use a constand runningCheckSum
-
-		//output lemma rule start
-		runningCheckSum += OutputAndAdd(writer, PROOF_STEP_INFO_R_LEMMA, true, closingString);
-		
-		//output lemma name (first part of lemma rule) 
-		runningCheckSum += OutputAndAdd(writer, rule, false, closingString);
-		runningCheckSum += CloseBranches(1, writer, closingString);
-		
-		System.out.println("test1");
-		
-		//output lemma proof (second part of lemma rule)
-		
-		File file = new File("src/cusick/john/TTtoF/FundamentalTruthTreeLemmas/"+rule+".prf");
-		try {
-			System.out.println("test2");
-			Scanner scan = new Scanner(file);
-
-			System.out.println("test3");
-			//skip first 5 lines
-			scan.nextLine();
-			scan.nextLine();
-			scan.nextLine();
-			scan.nextLine();
-			scan.nextLine();
-			
-			//skip first open lineProof
-			scan.findInLine("=openproof.zen.Openproof\\{");
-			
-			//copy the proof in, '}c=' should always signify the end and should never occur
-			//in the actual proof's data
-			String lemmaProof = scan.nextLine();
-			lemmaProof = lemmaProof.substring(0, lemmaProof.indexOf("}c="));
-			
-			System.out.println(lemmaProof);
-			
-			System.out.println("test4");
-			runningCheckSum += OutputAndAdd(writer, lemmaProof, false, closingString);
-			
-			scan.close();
-			
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		}
-		System.out.println("test4");
-		//close final branch of lemma rule
-		runningCheckSum += CloseBranches(1, writer, closingString);
-		
-		return runningCheckSum;
-	}
-
-	/**
-	 * 
-	 * @param writer output file
-	 * @param proof
-	 * @param lineIndex
-	 * @param closingString Stack containing all closing strings still needed to output (typically these are
-	 *        closing parenthesis and curly braces).
-	 * @return partial checksum
-	 */
-	private Long OutputSupportSteps(PrintWriter writer, FitchProof proof, int lineIndex, Stack<String> closingString) {
-		Long runningCheckSum = (long) 0;
-		Vector<Integer> currLineSS = proof.get(lineIndex).getFitchSS();
-		Vector<String> referencedSubProofs = new Vector<String>();
-		
-		String outputSI = "";
-		String outputSS = "";
-		
-		int numSupportsPrinted = 0;  //used for comma printing
-		
-		for(int i = 0; i< proof.get(lineIndex).getReferencedLines().size(); i++){
-			ProofLine lineRef = proof.get(lineIndex).getReferencedLines().get(i);
-			//if the reference line is a line in a deeper subproof (SS size is greater)
-			//then this line MUST reference the whole subproof
-			System.out.println("Line: "+proof.get(lineIndex).getLineNumber()+". "+proof.get(lineIndex).getStatementFitchString());
-			System.out.println("ref line: "+lineRef.getLineNumber()+". "+lineRef.getStatementFitchString());
-			System.out.println("currLineSS: "+currLineSS);
-			System.out.println("lineRef: "+lineRef);
-			System.out.println("lineRef.getFitchSS(): "+lineRef.getFitchSS());
-			if (lineRef.getFitchSS().size() > currLineSS.size()){
-				//reference the whole proof (if you haven't already)
-				outputSI = String.valueOf(lineRef.getFitchSI());
-				outputSS = lineRef.getFitchSSParentSubproofString(currLineSS.size());
-				if(referencedSubProofs.contains(outputSS)){  //if already contains, skip
-					outputSI = "";
-					outputSS = "";
-					continue;
-				} else{ //if not, add it
-					//add to referenced sub proofs (so it's not referenced a second time		
-					referencedSubProofs.add(outputSS);
-				}
-			}
-			else{ //just a normal line ref
-				outputSI = String.valueOf(lineRef.getFitchSI());
-				outputSS = lineRef.getFitchSS_String();
-			}
-			
-			//add comma if not the first support header
-			if(numSupportsPrinted != 0){
-				runningCheckSum += OutputAndAdd(writer, ",", false, closingString);
-			}
-			
-			//put support header
-			runningCheckSum += OutputAndAdd(writer, PROOF_SUPPORT_STEP, true, closingString);
-			
-			//add SI string
-			runningCheckSum += OutputAndAdd(writer, outputSI, false, closingString);
-			runningCheckSum += CloseBranches(1, writer, closingString); // close part of support header, to get the SS
-			
-			//add SS string
-			runningCheckSum += OutputAndAdd(writer, outputSS, false, closingString);
-			
-			//close support header
-			runningCheckSum += CloseBranches(1, writer, closingString); // close part of support header, to get the SS	
-			
-			//DEBUG OUTPUT
-			System.out.println("Added SI for "+proof.get(lineIndex).getLineNumber()+". "+proof.get(lineIndex).getStatementFitchString()+ " --> "+lineRef.getLineNumber()+". "+lineRef.getStatementFitchString()+": "+outputSI);
-			System.out.println("Added SS for "+proof.get(lineIndex).getLineNumber()+". "+proof.get(lineIndex).getStatementFitchString()+ " --> "+lineRef.getLineNumber()+". "+lineRef.getStatementFitchString()+": "+outputSS);
-			
-			outputSI = "";
-			outputSS = "";
-			
-			numSupportsPrinted++;
-		}
-		
-		return runningCheckSum;
-	}
-
-	/**
-	 *
-	 * @param proof
-	 * @param lineIndex proof line index to use
-	 * @return Fitch R line dependent on the proof line's rule
-	 */
-	private String getFitchRuleString(FitchProof proof, int lineIndex) {
-		//String rtn = "";
-		if(proof.get(lineIndex).isPremise()){
-			return PROOF_RULE_PREMISE;
-		} else if(proof.get(lineIndex).isStartofSubproof()){
-			return PROOF_RULE_PREMISE;
-		} else if(proof.get(lineIndex).getRule().equals(FitchProof.RULE_NEG_INTRO)){
-			return PROOF_RULE_NEG_INTRO;
-		} else if(proof.get(lineIndex).getRule().equals(FitchProof.RULE_NEG_ELIM)){
-			return PROOF_RULE_NEG_ELIM;
-		} else if(proof.get(lineIndex).getRule().equals(FitchProof.RULE_CONJ_ELIM)){
-			return PROOF_RULE_CONJ_ELIM;
-		} else if(proof.get(lineIndex).getRule().equals(FitchProof.RULE_DISJ_ELIM)){
-			return PROOF_RULE_DISJ_ELIM;
-		} else if(proof.get(lineIndex).getRule().equals(FitchProof.RULE_BICOND_ELIM)){
-			return PROOF_RULE_BICOND_ELIM;
-		} else if(proof.get(lineIndex).getRule().equals(FitchProof.RULE_CONTR_INTRO)){
-			return PROOF_RULE_CONTR_INTRO;
-		} else{
-			//don't know how to handle this case
-			System.err.println("Unrecognized rule!");
-			return "";
-		}
-	}
-
-	/** 
-	 * Pop, print and add numCloses number of strings from the closingString stack.
-	 * @param numCloses number of branches to close (pops to perform)
-	 * @param writer output file
-	 * @param closingString stack of closing strings
-	 * @return
-	 */
-	private Long CloseBranches(int numCloses, PrintWriter writer, Stack<String> closingString){
-		Long runningCheckSum = (long) 0;
-		for(int i = 0; i < numCloses; i++){
-			String partialClose = closingString.pop();
-//			System.out.println("partialClose: "+partialClose);
-			runningCheckSum += sumCharAsciiValues(partialClose);
-			writer.print(partialClose);
-		}
-		return runningCheckSum;
-	}
-
-	/**
-	 * Output a string to the Fitch file and return the partial checksum (ASCII sum of it's characters)
-	 * @param writer writer to output file
-	 * @param str what to write
-	 * @param split true for DELIM, false for no DELIM. If split is true, the string will be split up
-	 *        based on DELIM. The first section is printed and added, with the rest being pushed
-	 *        onto the closingString stack
-	 * @param closingString Stack containing all closing strings still needed to output (typically these are
-	 *        closing parenthesis and curly braces).
-	 * @return partial checksum (sum of str's characters' ASCII values)
-	 */
-	private Long OutputAndAdd(PrintWriter writer, String str, boolean split, Stack<String> closingString){
-		String outputString = str;
-		if(split == true){
-			String[] a = str.split(Pattern.quote(DELIM));
-			outputString = a[0];
-			//add to stack in reverse order so they are popped in the correct order
-			for(int i = a.length - 1; i > 0 ; i--){
-				closingString.push(a[i]);
-			}
-		}
-//		System.out.println("return: "+closingString);
-		writer.print(outputString);
-		return sumCharAsciiValues(outputString);
+		writer.write(checkSumStr + LINE_SEPARATOR);
+		writer.write(line7 + LINE_SEPARATOR);
 	}
 
 	//private variables
@@ -534,73 +185,7 @@ public class FitchFileManager {
 	private static final String OS_NAME = System.getProperty("os.name");
 	private static final String OS_VERSION = System.getProperty("os.version");
 	
-	//DELIMETER, Note: shouldn't matter because all DELIMS should be gone before entering any proof
-	//info and before a fitch program ever tries to open
-	private static final String DELIM = "$$$";
-	
-	//fitch output strings
-	/* Just used as the first part of line 6, init a proof */
-	private static final String PROOF_OPENING_LINE = "=openproof.zen.Openproof{"+DELIM+"}";
-	/* Just used as the second part of line 6, init a proof */
-	private static final String PROOF_DRIVER = "p=openproof.fitch.FitchProofDriver{"+DELIM+"}";
-	/* opens up a new proof, use at very beginning*/
-	private static final String PROOF_STARTER = "p=openproof.proofdriver.DRProof{"+DELIM+"}";
-	/* opens up a new subproof, plug multiple (comma separated) into PROOF_F*/
-	private static final String PROOF_SUB_STARTER = "openproof.proofdriver.DRProof=openproof.proofdriver.DRProof{"+DELIM+"}";
-	/* first term in either a new (sub)proof a step */
-	private static final String PROOF_STEP_INFO = "s(openproof.proofdriver.DRStepInfo=openproof.proofdriver.DRStepInfo{"+DELIM+"})";
-	/* r term for new proof (plug into PROOF_STEP_INFO */
-	private static final String PROOF_STEP_INFO_R_DEFAULT = "r&1;";
-	/* r term for new step, plug into PROOF_STEP_INFO */
-	private static final String PROOF_STEP_INFO_R_NORMAL = "r=openproof.foldriver.FOLDriver{t=\""+DELIM+"\";}";
-	/* r term for new lemma, plug into PROOF_STEP_INFO, lemma name goes into DELIM1, lemma text into DELIM2 */
-	private static final String PROOF_STEP_INFO_R_LEMMA = "r=openproof.fold.FOLLemmaRule{u="+DELIM+";s=fol;"+DELIM+"}";
-	
-	/* second term for new (sub)proof or step */
-//	private static final String PROOF_RULE = "r=openproof.proofdriver.DRProofRule{"+DELIM+"s=step;}";
-	
-	/* proof rule for proof starts */
-	private static final String PROOF_RULE_PROOF_START = "r=openproof.proofdriver.DRProofRule{u=uProof;s=step;}";
-	/* proof rule for premises */
-	private static final String PROOF_RULE_PREMISE = "r=openproof.stepdriver.SRPremiseRule{u=uPremise;s=step;}";
-	/* proof rule for subproof start */
-//	private static final String PROOF_RULE_SUBPROOF_START = "r&24;";
-	/* proof rule for negation introduction */
-	private static final String PROOF_RULE_NEG_INTRO = "r=openproof.fold.OPNegationIntroRule{u=\"u\\254 Intro\";s=fol;}";
-	/* proof rule for negation elimination */
-	private static final String PROOF_RULE_NEG_ELIM = "r=openproof.fold.OPNegationElimRule{u=\"u\\254 Elim\";s=fol;}";
-	/* proof rule for subproof start */
-	private static final String PROOF_RULE_CONJ_ELIM = "r=openproof.fold.OPConjunctionElimRule{u=\"u\\u2227 Elim\";s=fol;}";
-	/* proof rule for subproof start */
-	private static final String PROOF_RULE_DISJ_ELIM = "r=openproof.fold.OPDisjunctionElimRule{u=\"u\\u2228 Elim\";s=fol;}";
-	/* proof rule for subproof start */
-	private static final String PROOF_RULE_BICOND_ELIM = "r=openproof.fold.OPBiconditionalElimRule{u=\"u\\u2194 Elim\";s=fol;}";
-	/* proof rule for contradiction introduction */
-	private static final String PROOF_RULE_CONTR_INTRO = "r=openproof.fold.OPBottomIntroRule{u=\"u\\u22A5 Intro\";s=fol;}";
-
-	/* third term for new (sub)proof or step */
-	private static final String PROOF_OBJECT_PROOF_START = "o=openproof.zen.proofdriver.OPDStatusObject{c=1;s=\"\";l=\"\";d@k=\"\";t=false;}";
-	/* used in place of PROOF_OBJECT if line is empty or start of subproof */
-	private static final String PROOF_OBJECT_SUBPROOF_START = "o&6;";
-	/* used in place of PROOF_OBJECT if line is empty (shouldn't happen in truth tree conversions) 
-	 * Note: 'f=1;' portion seems like it's only placed on lines that can be verified (not premise/start of subproof, BUT also not on lemmas..),
-	 * But it also seems putting it on down doesnt hurt, so it will be left for now */
-	private static final String PROOF_OBJECT_NORMAL_LINE = "o=openproof.fold.FOLRuleStatus{c=1;s=\"\";l=\"\";d@k=\"\";t=false;f=1;}";
-	/* fourth term for new (sub)proof or step */
-	private static final String PROOF_SUPPORT = "u=openproof.proofdriver.DRSupport{t("+DELIM+")}";
-	/* references a supporting line, plug into PROOF_SUPOPRT */
-	//I believe sb always false, but si and ss change
-	private static final String PROOF_SUPPORT_STEP = "openproof.proofdriver.DRSupportPack=openproof.proofdriver.DRSupportPack{si&"+DELIM+";ss="+DELIM+";sb=false;}";
-	/* fifth term for new (sub)proof or step */ 
-	private static final String PROOF_B = "b()";
-	/* sixth term for new (sub)proof or step, contains reminaing stpes of proof */
-	private static final String PROOF_F = "f("+DELIM+")";
-	/* start of new step, plug multiple (comma separated) into PROOF_F */
-	private static final String PROOF_SIMPLE_STEP = "openproof.proofdriver.DRSimpleStep=openproof.proofdriver.DRSimpleStep{"+DELIM+"}";
-//	private static final String PROOF_ = "";
-//	private static final String PROOF_ = "";
-	
-	private static final String PROOF_GOAL = "g=openproof.proofdriver.DRGoalList{g()}";
-	private static final String PROOF_A = "a=true;";
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	private static final int BUFFER_SIZE = 1 << 16;
 	
 }
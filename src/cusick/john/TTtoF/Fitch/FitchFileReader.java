@@ -0,0 +1,623 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+
+package cusick.john.TTtoF.Fitch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+import perl.aaron.TruthTrees.ExpressionParser;
+import perl.aaron.TruthTrees.logic.Statement;
+import perl.aaron.TruthTrees.logic.StatementFactory;
+
+/**
+ * Reads a Fitch file back into a formal F proof in memory (see Fitch_File_Documentation.txt).
+ * Line 6 is tokenized in one pass as it streams in, so only the statement or rule being read
+ * is ever held in memory, and the stored checksum is compared with the sum of everything read
+ * before it. Lemma proofs copied into the file are skipped; their lines take the lemma's name
+ * as their rule, as the converter names them.
+ * 
+ * Every line gets its subproof level and its start or end of subproof flag, and its cited
+ * lines back from the SS of each support (a support naming a whole subproof cites the
+ * subproof's first line). The SI stored with a support is kept on the line it cites.
+ */
+public final class FitchFileReader {
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+	//longest key, value or string accepted, so a corrupt file can't exhaust memory
+	private static final int MAX_TOKEN_LENGTH = 1 << 20;
+	
+	private static final String FITCH_LINE3_CONSTANT = "FchF";
+	private static final String CONTRADICTION = "^";
+	
+	private static final String PROOF_CLASS = "openproof.proofdriver.DRProof";
+	private static final String STEP_CLASS = "openproof.proofdriver.DRSimpleStep";
+	private static final String STATEMENT_CLASS = "openproof.foldriver.FOLDriver";
+	private static final String SUPPORT_CLASS = "openproof.proofdriver.DRSupportPack";
+	private static final String PREMISE_RULE_CLASS = "openproof.stepdriver.SRPremiseRule";
+	private static final String LEMMA_RULE_CLASS = "openproof.fold.FOLLemmaRule";
+	
+	private final Reader in;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int bufferPos = 0;
+	private int bufferEnd = 0;
+	private long bufferOffset = 0; //characters read before the buffer
+	private long line6Start = -1;
+	private long checkSum;
+	private char[] token = new char[256]; //reused by every token read
+	private int tokenLength;
+	
+	//open objects (their class) and lists (null)
+	private final List<String> containers = new ArrayList<String>();
+	
+	private final FitchProof proof = new FitchProof();
+	//the (sub)proofs still open, outermost first; supports are resolved by walking down from the first
+	private final List<Subproof> openProofs = new ArrayList<Subproof>();
+	private Subproof mainProof;
+	private int proofDepth = 0;
+	private boolean subproofPending = false;
+	
+	//the step being read: its depth (-1 if none), statement, rule and supports
+	private int stepDepth = -1;
+	private String stepText;
+	private String stepRuleClass;
+	private String stepRule;
+	private Vector<ProofLine> stepReferences;
+	private int lemmaDepth = -1; //depth of the lemma rule being skipped, or -1
+	private String supportSI;
+	private String supportSS;
+	
+	private FitchFileReader(Reader in) throws IOException{
+		this.in = in;
+	}
+	
+	/**
+	 * @param file Fitch file
+	 * @return the proof in the file
+	 * @throws IOException if the file could not be read, is not a Fitch file or its checksum
+	 *         does not match
+	 */
+	public static FitchProof readFromFile(File file) throws IOException{
+		InputStream in = new FileInputStream(file);
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * @param in Fitch file contents, as UTF-8, not closed
+	 * @return the proof in the file
+	 * @throws IOException if the stream could not be read, is not a Fitch file or its checksum
+	 *         does not match
+	 */
+	public static FitchProof read(InputStream in) throws IOException{
+		return read(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * @param reader Fitch file contents, not closed (it is read in blocks, so needs no buffering)
+	 * @return the proof in the file
+	 * @throws IOException if the reader fails, or its contents are not a Fitch file or their
+	 *         checksum does not match
+	 */
+	public static FitchProof read(Reader reader) throws IOException{
+		return new FitchFileReader(reader).readFile();
+	}
+	
+	private FitchProof readFile() throws IOException{
+		//lines 1-5: version, operating system, FchF, time stamps, format
+		for(int i = 1; i <= 5; i++){
+			String line = readHeaderLine();
+			if(i == 3 && !line.equals(FITCH_LINE3_CONSTANT)){
+				throw new IOException("Not a Fitch file");
+			}
+		}
+		
+		//line 6: the proof, ending with c=checksum;
+		line6Start = bufferOffset + bufferPos;
+		while(true){
+			skipWhitespace();
+			int next = peek();
+			if(!containers.isEmpty()){
+				String container = containers.get(containers.size() - 1);
+				if(container != null && next == '}'){
+					take();
+					endObject(container);
+					continue;
+				} else if(container == null && next == ')'){
+					take();
+					containers.remove(containers.size() - 1);
+					continue;
+				} else if(container == null && next == ','){
+					take();
+					continue;
+				}
+			}
+			
+			long sumBefore = checkSum;
+			String key = readToken("=&(");
+			int separator = take();
+			if(separator == '('){
+				containers.add(null);
+			} else if(separator == '&'){
+				value(key, readToken(";"));
+				take();
+			} else if(peek() == '"'){
+				take();
+				value(key, readString());
+				expect(';');
+			} else{
+				String value = readToken("{;");
+				if(take() == '{'){
+					startObject(key, value);
+					containers.add(value);
+				} else if(containers.isEmpty() && key.equals("c")){
+					checkChecksum(value, sumBefore);
+					return finish();
+				} else{
+					value(key, value);
+				}
+			}
+			if(lemmaDepth >= 0 && stepRule != null){
+				skipLemmaProof();
+			}
+		}
+	}
+	
+	private String readHeaderLine() throws IOException{
+		StringBuilder line = new StringBuilder();
+		int c;
+		while((c = peek()) != '\n'){
+			if(c < 0){
+				throw new IOException("Not a Fitch file");
+			}
+			line.append((char) c);
+			bufferPos++;
+		}
+		bufferPos++;
+		if(line.length() > 0 && line.charAt(line.length() - 1) == '\r'){
+			line.setLength(line.length() - 1);
+		}
+		checkSum += FitchProofWriter.sumCharAsciiValues(line.toString());
+		return line.toString();
+	}
+	
+	private void checkChecksum(String stored, long computed) throws IOException{
+		long storedSum;
+		try {
+			storedSum = Long.parseLong(stored);
+		} catch (NumberFormatException e) {
+			throw error("checksum " + stored + " is not a number");
+		}
+		if(storedSum != computed){
+			throw new IOException("Checksum mismatch: the file stores " + storedSum + " but its contents sum to " + computed);
+		}
+	}
+	
+	private FitchProof finish() throws IOException{
+		if(proofDepth != 0 || proof.getLength() == 0){
+			throw error("the proof is incomplete");
+		}
+		//setFitchIndices resets the first line's SI, which may have been read
+		int firstSI = proof.get(0).getFitchSI();
+		proof.setFitchIndices();
+		proof.get(0).setFitchSI(firstSI);
+		return proof;
+	}
+	
+	private void startObject(String key, String className) throws IOException{
+		int depth = containers.size();
+		if(lemmaDepth >= 0){
+			return;
+		}
+		if(className.equals(PROOF_CLASS)){
+			Subproof subproof = new Subproof();
+			if(proofDepth > 0){
+				openProofs.get(openProofs.size() - 1).items.add(subproof);
+				subproofPending = true;
+			} else if(mainProof == null){
+				mainProof = subproof;
+			} else{
+				throw error("more than one proof");
+			}
+			openProofs.add(subproof);
+			proofDepth++;
+		} else if(className.equals(STEP_CLASS)){
+			if(proofDepth == 0){
+				throw error("step outside of a proof");
+			}
+			stepDepth = depth;
+			stepText = null;
+			stepRuleClass = null;
+			stepRule = null;
+			stepReferences = new Vector<ProofLine>();
+		} else if(className.equals(SUPPORT_CLASS)){
+			supportSI = null;
+			supportSS = null;
+		} else if(stepDepth >= 0 && depth == stepDepth + 1 && key.equals("r")){
+			stepRuleClass = className;
+			if(className.equals(LEMMA_RULE_CLASS)){
+				lemmaDepth = depth;
+			}
+		}
+	}
+	
+	private void value(String key, String value) throws IOException{
+		int depth = containers.size();
+		String container = containers.isEmpty() ? null : containers.get(containers.size() - 1);
+		if(lemmaDepth >= 0){
+			if(depth == lemmaDepth + 1 && key.equals("u")){
+				stepRule = value;
+			}
+		} else if(STATEMENT_CLASS.equals(container) && key.equals("t")){
+			stepText = value;
+		} else if(stepDepth >= 0 && depth == stepDepth + 2 && key.equals("u") && stepRuleClass != null){
+			stepRule = unescape(value);
+		} else if(SUPPORT_CLASS.equals(container)){
+			if(key.equals("si")){
+				supportSI = value;
+			} else if(key.equals("ss")){
+				supportSS = value;
+			}
+		}
+	}
+	
+	private void endObject(String className) throws IOException{
+		containers.remove(containers.size() - 1);
+		int depth = containers.size();
+		if(lemmaDepth >= 0){
+			if(depth == lemmaDepth){
+				lemmaDepth = -1;
+			}
+			return;
+		}
+		if(className.equals(SUPPORT_CLASS)){
+			endSupport();
+		} else if(className.equals(STEP_CLASS)){
+			endStep();
+		} else if(className.equals(PROOF_CLASS)){
+			if(subproofPending){
+				throw error("empty subproof");
+			}
+			openProofs.remove(openProofs.size() - 1);
+			proofDepth--;
+			if(proofDepth > 0){
+				proof.get(proof.getLength() - 1).setEndofSubproof(true);
+			}
+		}
+	}
+	
+	private void endSupport() throws IOException{
+		if(stepReferences == null || supportSS == null){
+			throw error("support outside of a step");
+		}
+		ProofLine cited = resolve(supportSS);
+		if(cited == null){
+			throw error("line " + (proof.getLength() + 1) + " cites ss=" + supportSS + ", which is not an earlier line");
+		}
+		if(supportSI != null){
+			try {
+				cited.setFitchSI(Integer.parseInt(supportSI));
+			} catch (NumberFormatException e) {
+				throw error("si " + supportSI + " is not a number");
+			}
+		}
+		stepReferences.add(cited);
+	}
+	
+	private void endStep() throws IOException{
+		if(stepText == null){
+			throw error("line " + (proof.getLength() + 1) + " has no statement");
+		}
+		String text = unescape(stepText);
+		Statement statement = text.equals(CONTRADICTION) ? StatementFactory.atomic("⊥") : ExpressionParser.parseExpression(text);
+		if(statement == null){
+			throw error("line " + (proof.getLength() + 1) + " has an invalid statement: " + text);
+		}
+		
+		boolean premise = PREMISE_RULE_CLASS.equals(stepRuleClass);
+		String rule = "";
+		if(!premise && stepRule != null){
+			//rule names are stored with a leading u, lemma names as they are
+			rule = LEMMA_RULE_CLASS.equals(stepRuleClass) || !stepRule.startsWith("u") ? stepRule : stepRule.substring(1);
+		}
+		
+		ProofLine line = new ProofLine(statement, proof, 0, rule);
+		line.setSubproofLevel(proofDepth - 1);
+		line.setReferencedLines(stepReferences);
+		if(subproofPending){
+			line.setStartofSubproof(true);
+			subproofPending = false;
+		}
+		if(premise && proofDepth == 1 && (proof.getLength() == 0 || proof.get(proof.getLength() - 1).isPremise())){
+			proof.addPremise(line);
+		} else{
+			proof.addLine(line);
+		}
+		
+		openProofs.get(openProofs.size() - 1).items.add(line);
+		
+		stepDepth = -1;
+		stepReferences = null;
+	}
+	
+	/**
+	 * A (sub)proof read so far: its lines and subproofs in order, so that an SS is the index of
+	 * an item in the main proof, followed by the index of an item in that subproof and so on
+	 */
+	private static final class Subproof {
+		final List<Object> items = new ArrayList<Object>();
+	}
+	
+	/**
+	 * @param ss SS of a line (e.g. 2.1), or of a whole subproof followed by a dot (e.g. 2.)
+	 * @return the line, or the first line of the subproof; null if there is none
+	 */
+	private ProofLine resolve(String ss){
+		Object item = mainProof;
+		int i = 0;
+		while(i < ss.length()){
+			int end = ss.indexOf('.', i);
+			if(end < 0){
+				end = ss.length();
+			}
+			if(!(item instanceof Subproof)){
+				return null;
+			}
+			List<Object> items = ((Subproof) item).items;
+			int index;
+			try {
+				index = Integer.parseInt(ss.substring(i, end));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if(index < 0 || index >= items.size()){
+				return null;
+			}
+			item = items.get(index);
+			i = end + 1;
+		}
+		if(ss.endsWith(".") && item instanceof Subproof && !((Subproof) item).items.isEmpty()){
+			item = ((Subproof) item).items.get(0);
+		}
+		return item instanceof ProofLine ? (ProofLine) item : null;
+	}
+	
+	/**
+	 * Skip the rest of the lemma rule being read, up to its closing brace, adding it to the
+	 * checksum. The copied lemma proof is most of a typical file, so it is only scanned for
+	 * brackets outside of strings.
+	 */
+	private void skipLemmaProof() throws IOException{
+		int depth = 0;
+		boolean inString = false;
+		boolean escaped = false;
+		while(true){
+			if(bufferPos == bufferEnd && !fill()){
+				throw error("unexpected end of file");
+			}
+			long sum = 0;
+			while(bufferPos < bufferEnd){
+				char c = buffer[bufferPos];
+				if(inString){
+					if(escaped){
+						escaped = false;
+					} else if(c == '\\'){
+						escaped = true;
+					} else if(c == '"'){
+						inString = false;
+					}
+				} else if(c == '"'){
+					inString = true;
+				} else if(c == '{' || c == '('){
+					depth++;
+				} else if(c == '}' || c == ')'){
+					if(depth == 0){
+						checkSum += sum;
+						return;
+					}
+					depth--;
+				}
+				sum += c;
+				bufferPos++;
+			}
+			checkSum += sum;
+		}
+	}
+	
+	/**
+	 * Read up to (not including) one of the stop characters
+	 */
+	private String readToken(String stops) throws IOException{
+		tokenLength = 0;
+		while(true){
+			if(bufferPos == bufferEnd && !fill()){
+				throw error("unexpected end of file");
+			}
+			//scan the buffer directly, this is where nearly all of line 6 is read
+			int start = bufferPos;
+			long sum = 0;
+			char c = 0;
+			while(bufferPos < bufferEnd && ((c = buffer[bufferPos]) >= DELIMITERS.length || !DELIMITERS[c])){
+				sum += c;
+				bufferPos++;
+			}
+			append(start, bufferPos);
+			checkSum += sum;
+			if(bufferPos < bufferEnd){
+				if(stops.indexOf(c) < 0){
+					throw error("unexpected '" + c + "'");
+				}
+				return new String(token, 0, tokenLength);
+			}
+		}
+	}
+	
+	/**
+	 * Read a quoted string after its opening quote, up to and including its closing quote.
+	 * Escapes are kept as they are.
+	 */
+	private String readString() throws IOException{
+		tokenLength = 0;
+		int c;
+		while((c = take()) != '"'){
+			append(c);
+			if(c == '\\'){
+				append(take());
+			}
+		}
+		return new String(token, 0, tokenLength);
+	}
+	
+	private void append(int start, int end) throws IOException{
+		for(int i = start; i < end; i++){
+			append(buffer[i]);
+		}
+	}
+	
+	private void append(int c) throws IOException{
+		if(tokenLength == token.length){
+			if(tokenLength == MAX_TOKEN_LENGTH){
+				throw error("token longer than " + MAX_TOKEN_LENGTH + " characters");
+			}
+			token = Arrays.copyOf(token, Math.min(tokenLength * 2, MAX_TOKEN_LENGTH));
+		}
+		token[tokenLength++] = (char) c;
+	}
+	
+	/**
+	 * Decode the escapes Fitch writes in strings: \\uXXXX, octal \\ooo and \\ followed by a
+	 * character standing for itself
+	 */
+	static String unescape(String str){
+		if(str.indexOf('\\') < 0){
+			return str;
+		}
+		StringBuilder sb = new StringBuilder(str.length());
+		for(int i = 0; i < str.length(); i++){
+			char c = str.charAt(i);
+			if(c != '\\' || i + 1 == str.length()){
+				sb.append(c);
+				continue;
+			}
+			c = str.charAt(++i);
+			if(c == 'u' && i + 4 < str.length()){
+				try {
+					sb.append((char) Integer.parseInt(str.substring(i + 1, i + 5), 16));
+					i += 4;
+					continue;
+				} catch (NumberFormatException e) {
+					//not a unicode escape
+				}
+			}
+			if(c >= '0' && c <= '7'){
+				int value = 0;
+				int end = Math.min(i + 3, str.length());
+				while(i < end && str.charAt(i) >= '0' && str.charAt(i) <= '7'){
+					value = value * 8 + (str.charAt(i++) - '0');
+				}
+				sb.append((char) value);
+				i--;
+				continue;
+			}
+			sb.append(c == 'n' ? '\n' : c == 't' ? '\t' : c);
+		}
+		return sb.toString();
+	}
+	
+	private void skipWhitespace() throws IOException{
+		int c;
+		while((c = peek()) >= 0 && Character.isWhitespace(c)){
+			take();
+		}
+	}
+	
+	private void expect(char c) throws IOException{
+		int next = peek();
+		if(next != c){
+			throw error(next < 0 ? "unexpected end of file" : "expected '" + c + "' but found '" + (char) next + "'");
+		}
+		take();
+	}
+	
+	/**
+	 * @return the next character, or -1 at the end
+	 */
+	private int peek() throws IOException{
+		if(bufferPos == bufferEnd && !fill()){
+			return -1;
+		}
+		return buffer[bufferPos];
+	}
+	
+	/**
+	 * Consume the next character, adding it to the checksum
+	 */
+	private int take() throws IOException{
+		int c = peek();
+		if(c < 0){
+			throw error("unexpected end of file");
+		}
+		bufferPos++;
+		checkSum += c;
+		return c;
+	}
+	
+	/**
+	 * @return false at the end of the input
+	 */
+	private boolean fill() throws IOException{
+		bufferOffset += bufferEnd;
+		bufferPos = 0;
+		bufferEnd = Math.max(in.read(buffer, 0, buffer.length), 0);
+		return bufferEnd > 0;
+	}
+	
+	private IOException error(String message){
+		long offset = line6Start < 0 ? 0 : bufferOffset + bufferPos - line6Start;
+		return new IOException("Invalid Fitch file at character " + offset + " of line 6: " + message);
+	}
+	
+	//characters that end keys and values
+	private static final boolean[] DELIMITERS = new boolean[128];
+	static {
+		for(char c : "{}(),;=&\"".toCharArray()){
+			DELIMITERS[c] = true;
+		}
+	}
+}
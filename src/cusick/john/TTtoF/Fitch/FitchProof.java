@@ -29,18 +29,23 @@ package cusick.john.TTtoF.Fitch;
 import java.util.Vector;
 
 import perl.aaron.TruthTrees.BranchLine;
+import perl.aaron.TruthTrees.Log;
 import perl.aaron.TruthTrees.logic.Negation;
 import perl.aaron.TruthTrees.logic.Statement;
+import perl.aaron.TruthTrees.logic.StatementFactory;
 
 /** 
  * Memory representation of a formal F proof.
  */
 public class FitchProof {
 	
+	private static final Log LOG = Log.get(FitchProof.class);
+	
 	//member variables
 	private Vector<ProofLine> proof;
 	Statement goal; //vector?
 	private Vector<ProofLine> premises;
+	private boolean fitchIndicesSet; //cleared whenever a line is added
 
 	//6 rules and 6 lemmas needed (these strings use unicode characters)
 	public static final String RULE_NEG_INTRO = "¬ Intro";
@@ -70,14 +75,24 @@ public class FitchProof {
 
 	public void setProof(Vector<ProofLine> proof) {
 		this.proof = proof;
+		fitchIndicesSet = false;
 	}
 
 	public ProofLine addPremise(BranchLine bLine) {
 		ProofLine pl = new ProofLine(bLine.getStatement(), this, 0,"");
+		addPremise(pl);
+		return pl;
+	}
+	
+	/**
+	 * Add a line as a premise
+	 * @param pl proof line, which is marked as a premise
+	 */
+	public void addPremise(ProofLine pl) {
 		pl.setPremise(true);
 		proof.add(pl);
 		premises.add(pl);
-		return pl;
+		fitchIndicesSet = false;
 	}
 	
 	/**
@@ -93,15 +108,17 @@ public class FitchProof {
 			goal = ((Negation) bLine.getStatement()).getNegand();
 		}
 		else{
-			goal = new Negation(bLine.getStatement());
+			goal = StatementFactory.negation(bLine.getStatement());
 		}
 		proof.add(pl);
+		fitchIndicesSet = false;
 		return pl;
 	}
 
 	
 	public void addLine(ProofLine pl){
 		proof.add(pl);
+		fitchIndicesSet = false;
 	}
 	
 	public ProofLine get(int i){
@@ -129,9 +146,19 @@ public class FitchProof {
 	 * A nice organized print of a formal F proof in memory.
 	 */
 	public void printProof(){
-		System.out.println("=========================");
-		System.out.println("=======FITCH PRINT=======");
-		System.out.println("=========================");
+		System.out.print(toString());
+	}
+
+	/**
+	 * @return the proof as printProof prints it, one line per proof line with subproofs indented
+	 */
+	@Override
+	public String toString(){
+		String newLine = System.getProperty("line.separator");
+		StringBuilder sb = new StringBuilder();
+		sb.append("=========================").append(newLine);
+		sb.append("=======FITCH PRINT=======").append(newLine);
+		sb.append("=========================").append(newLine);
 		String appendStr = "|";
 		boolean printBreakLine = false;
 		for(int i = 0; i < proof.size(); i++){
@@ -148,7 +175,7 @@ public class FitchProof {
 				}
 				
 				if(printBreakLine == true){
-					System.out.println(appendStr.substring(0,appendStr.length()-1) + "+" + "--");
+					sb.append(appendStr.substring(0,appendStr.length()-1) + "+" + "--").append(newLine);
 				}
 				
 				//start of subproof
@@ -162,30 +189,40 @@ public class FitchProof {
 				
 				//add a little space if ending and starting a subproof
 				if(proof.get(i-1).isEndofSubproof() && proof.get(i).isStartofSubproof()){
-					System.out.println(appendStr);
+					sb.append(appendStr).append(newLine);
 				}
 			}
 			
-			System.out.print(appendStr + proof.get(i).getLineNumber() + ". "+proof.get(i).getStatement().toString());
-			System.out.print("\t"+proof.get(i).getRule());
+			sb.append(appendStr + proof.get(i).getLineNumber() + ". "+proof.get(i).getStatement().toString());
+			sb.append("\t"+proof.get(i).getRule());
 			for(int j = 0; j < proof.get(i).getReferencedLines().size(); j++){
 				try{
-					System.out.print(" "+proof.get(i).getReferencedLines().get(j).getLineNumber());
+					sb.append(" "+proof.get(i).getReferencedLines().get(j).getLineNumber());
 				} catch(NullPointerException e){
 //					System.err.println("NULL IN PRINT");
 //					e.printStackTrace();
 				}
 			}
-			System.out.println();
+			sb.append(newLine);
 			
 			
 			
 			printBreakLine = false;
 		}
 
-		System.out.println("=========================");
-		System.out.println("=====END FITCH PRINT=====");
-		System.out.println("=========================");
+		sb.append("=========================").append(newLine);
+		sb.append("=====END FITCH PRINT=====").append(newLine);
+		sb.append("=========================").append(newLine);
+		return sb.toString();
+	}
+
+	/**
+	 * Whether setFitchIndices has run since the last line was added through this proof. Changing
+	 * existing lines (or the vector from getProof) requires calling setFitchIndices again.
+	 * @return true if the Fitch SI and SS of every line are set
+	 */
+	public boolean hasFitchIndices() {
+		return fitchIndicesSet;
 	}
 
 	/**
@@ -207,8 +244,11 @@ public class FitchProof {
 		int currentSubProofLevel = 0;
 //		int currSubProofLineNumber = 0;
 		
-		System.out.println("FITCH INDICES: ");
-		System.out.println(proof.get(0).getLineNumber()+". "+proof.get(0).getStatement().toString() +" SI: "+proof.get(0).getFitchSI() + "\tSS: "+proof.get(0).getFitchSS_String());
+		boolean trace = LOG.isTraceEnabled();
+		if(trace){
+			LOG.trace("FITCH INDICES: ");
+			LOG.trace(proof.get(0).getLineNumber()+". "+proof.get(0).getStatement().toString() +" SI: "+proof.get(0).getFitchSI() + "\tSS: "+proof.get(0).getFitchSS_String());
+		}
 		
 		for(int i = 1; i < proof.size(); i++){
 //			currSI += 8; //constant increment of 8
@@ -231,10 +271,12 @@ public class FitchProof {
 			proof.get(i).setFitchSS(currSS);
 
 			
-			System.out.println(proof.get(i).getLineNumber()+". "+proof.get(i).getStatement().toString() +" SI: "+proof.get(i).getFitchSI() + "\tSS: "+proof.get(i).getFitchSS_String());
+			if(trace){
+				LOG.trace(proof.get(i).getLineNumber()+". "+proof.get(i).getStatement().toString() +" SI: "+proof.get(i).getFitchSI() + "\tSS: "+proof.get(i).getFitchSS_String());
+			}
 		}
 		
-		
+		fitchIndicesSet = true;
 	}
 
 	
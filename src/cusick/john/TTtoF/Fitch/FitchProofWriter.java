@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+
+package cusick.john.TTtoF.Fitch;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Vector;
+import java.util.regex.Pattern;
+
+import perl.aaron.TruthTrees.Log;
+
+/**
+ * Writes line 6 of a Fitch file (the proof itself) one proof line at a time, keeping a running
+ * checksum of everything written. Templates containing DELIM are split once when this class is
+ * loaded; the piece before the first DELIM is written when the template is opened and the rest
+ * are held on a closing stack until the matching branches are closed.
+ */
+final class FitchProofWriter {
+	
+	private static final Log LOG = Log.get(FitchProofWriter.class);
+	
+	private final Writer writer;
+	
+	//closing strings still needed to output (typically closing parenthesis and curly braces),
+	//with their ASCII sums
+	private String[] closingStrings = new String[32];
+	private long[] closingSums = new long[32];
+	private int closingSize = 0;
+	
+	private long checkSum = 0;
+	
+	FitchProofWriter(Writer writer){
+		this.writer = writer;
+	}
+	
+	/**
+	 * Sum the ASCII values of a string, used for checksum
+	 * @param str
+	 * @return sum of ASCII values of each character in str
+	 */
+	static long sumCharAsciiValues(String str){
+		long sum = 0;
+		for(int i = 0; i < str.length(); i++){
+			sum += str.charAt(i);
+		}
+		return sum;
+	}
+	
+	/**
+	 * Output a F proof in memory
+	 * @param proof formal F proof in memory
+	 * @return partial checksum (sum of the ASCII values of everything written)
+	 * @throws IOException if the writer fails
+	 */
+	long printProof(FitchProof proof) throws IOException{
+		
+		if(!proof.hasFitchIndices()){
+			proof.setFitchIndices();
+		}
+		
+		//opening lines of proof
+		open(PROOF_OPENING_LINE);
+		open(PROOF_DRIVER);
+		
+		LOG.debug("checksum BEFORE PROOF LINES: {}", checkSum);
+		for(int lineIndex = 0; lineIndex < proof.getLength(); lineIndex++){
+			printProofLine(proof, lineIndex);
+		}
+		LOG.debug("checksum AFTER PROOF LINES: {}", checkSum);
+		
+		//TODO maybe program in goals
+		//closing lines of proof
+		write(PROOF_GOAL);
+		write(PROOF_A);
+
+		LOG.debug("checksum AFTER LAST: {}", checkSum);
+		
+		//pop the rest off of closing branches, should just be the final two } from the opening lines
+		while(closingSize > 0){
+			LOG.trace("pops at end (should be 2)");
+			close(1);
+		}
+		
+		return checkSum;
+	}
+	
+	/**
+	 * Output one proof line, opening a new (sub)proof first if the line starts one
+	 * @param proof formal F proof in memory
+	 * @param lineIndex proof line index
+	 * @throws IOException if the writer fails
+	 */
+	private void printProofLine(FitchProof proof, int lineIndex) throws IOException{
+		ProofLine line = proof.get(lineIndex);
+		
+		if(lineIndex != 0){
+			//comma separating each line/subproof
+			write(",");
+		}
+		
+		if(lineIndex == 0 || line.isStartofSubproof()){ //first line or start of subproof
+			open(lineIndex == 0 ? PROOF_STARTER : PROOF_SUB_STARTER);
+			
+			//S
+			open(PROOF_STEP_INFO);
+			write(PROOF_STEP_INFO_R_DEFAULT);
+			close(1); //closes PROOF_STEP_INFO
+			
+			//R
+			write(PROOF_RULE_PROOF_START);
+			
+			//O
+			write(lineIndex == 0 ? PROOF_OBJECT_PROOF_START : PROOF_OBJECT_SUBPROOF_START);
+			
+			//U -- Support, no supports for opening a new proof
+			open(PROOF_SUPPORT);
+			close(1);
+			
+			//B -- idk what this is, always just b()
+			write(PROOF_B);
+			
+			//F -- the lines of the (sub)proof follow, comma separated
+			open(PROOF_F);
+		}
+		
+		// proofLine
+		open(PROOF_SIMPLE_STEP);
+		//S
+		open(PROOF_STEP_INFO);
+		open(PROOF_STEP_INFO_R_NORMAL);
+		write(line.getStatementFitchString()); // print the statement text
+		close(2); //closes PROOF_STEP_INFO & PROOF_STEP_INFO_R_NORMAL
+
+		//R
+		if(line.isLemma()){
+			//must import Lemma
+			printLemma(line.getRule());
+		} else{
+			//normal F rule
+			write(getFitchRuleString(line));
+		}
+
+		//O
+		write(PROOF_OBJECT_NORMAL_LINE);
+		
+		//U
+		open(PROOF_SUPPORT);
+		printSupportSteps(line);
+		close(1); //close the support branch
+		
+		//B -- idk what this is, always just b()
+		write(PROOF_B);
+		
+		//close Simple Step
+		close(1);
+		
+		//if this is the last step in a subproof (or end of proof)
+		if(line.isEndofSubproof() || lineIndex == proof.getLength()-1){
+			//close F branch and subproof branch
+			close(2);
+		}
+	}
+
+	/**
+	 * Output a Fitch lemma, the lemma proofs come from the LemmaLibrary
+	 * @param rule lemma to output
+	 * @throws IOException if the writer fails
+	 */
+	private void printLemma(String rule) throws IOException{
+		//output lemma rule start
+		open(PROOF_STEP_INFO_R_LEMMA);
+		
+		//output lemma name (first part of lemma rule) 
+		write(rule);
+		close(1);
+		
+		//output lemma proof (second part of lemma rule)
+		LemmaLibrary.Lemma lemma = LemmaLibrary.get(rule);
+		if(lemma != null){
+			writer.write(lemma.getProof());
+			checkSum += lemma.getCheckSum();
+		} else{
+			System.err.println("Unknown lemma " + rule);
+		}
+		
+		//close final branch of lemma rule
+		close(1);
+	}
+
+	/**
+	 * Output the support steps (referenced lines and subproofs) of a proof line
+	 * @param line proof line
+	 * @throws IOException if the writer fails
+	 */
+	private void printSupportSteps(ProofLine line) throws IOException{
+		Vector<Integer> currLineSS = line.getFitchSS();
+		Set<String> referencedSubProofs = new HashSet<String>();
+		
+		String outputSI = "";
+		String outputSS = "";
+		
+		int numSupportsPrinted = 0;  //used for comma printing
+		
+		for(ProofLine lineRef : line.getReferencedLines()){
+			//if the reference line is a line in a deeper subproof (SS size is greater)
+			//then this line MUST reference the whole subproof
+			if(LOG.isTraceEnabled()){
+				LOG.trace("Line: "+line.getLineNumber()+". "+line.getStatementFitchString());
+				LOG.trace("ref line: "+lineRef.getLineNumber()+". "+lineRef.getStatementFitchString());
+				LOG.trace("currLineSS: {}", currLineSS);
+				LOG.trace("lineRef: {}", lineRef);
+				LOG.trace("lineRef.getFitchSS(): {}", lineRef.getFitchSS());
+			}
+			if (lineRef.getFitchSS().size() > currLineSS.size()){
+				//reference the whole proof (if you haven't already)
+				outputSI = String.valueOf(lineRef.getFitchSI());
+				outputSS = lineRef.getFitchSSParentSubproofString(currLineSS.size());
+				if(!referencedSubProofs.add(outputSS)){  //if already referenced, skip
+					continue;
+				}
+			}
+			else{ //just a normal line ref
+				outputSI = String.valueOf(lineRef.getFitchSI());
+				outputSS = lineRef.getFitchSS_String();
+			}
+			
+			//add comma if not the first support header
+			if(numSupportsPrinted != 0){
+				write(",");
+			}
+			
+			//put support header
+			open(PROOF_SUPPORT_STEP);
+			
+			//add SI string
+			write(outputSI);
+			close(1); // close part of support header, to get the SS
+			
+			//add SS string
+			write(outputSS);
+			
+			//close support header
+			close(1);
+			
+			//DEBUG OUTPUT
+			if(LOG.isTraceEnabled()){
+				LOG.trace("Added SI for "+line.getLineNumber()+". "+line.getStatementFitchString()+ " --> "+lineRef.getLineNumber()+". "+lineRef.getStatementFitchString()+": "+outputSI);
+				LOG.trace("Added SS for "+line.getLineNumber()+". "+line.getStatementFitchString()+ " --> "+lineRef.getLineNumber()+". "+lineRef.getStatementFitchString()+": "+outputSS);
+			}
+			
+			numSupportsPrinted++;
+		}
+	}
+
+	/**
+	 * @param line proof line
+	 * @return Fitch R line dependent on the proof line's rule
+	 */
+	private static String getFitchRuleString(ProofLine line){
+		if(line.isPremise()){
+			return PROOF_RULE_PREMISE;
+		} else if(line.isStartofSubproof()){
+			return PROOF_RULE_PREMISE;
+		} else if(line.getRule().equals(FitchProof.RULE_NEG_INTRO)){
+			return PROOF_RULE_NEG_INTRO;
+		} else if(line.getRule().equals(FitchProof.RULE_NEG_ELIM)){
+			return PROOF_RULE_NEG_ELIM;
+		} else if(line.getRule().equals(FitchProof.RULE_CONJ_ELIM)){
+			return PROOF_RULE_CONJ_ELIM;
+		} else if(line.getRule().equals(FitchProof.RULE_DISJ_ELIM)){
+			return PROOF_RULE_DISJ_ELIM;
+		} else if(line.getRule().equals(FitchProof.RULE_BICOND_ELIM)){
+			return PROOF_RULE_BICOND_ELIM;
+		} else if(line.getRule().equals(FitchProof.RULE_CONTR_INTRO)){
+			return PROOF_RULE_CONTR_INTRO;
+		} else{
+			//don't know how to handle this case
+			System.err.println("Unrecognized rule!");
+			return "";
+		}
+	}
+
+	/**
+	 * Output a string and add it to the checksum
+	 * @param str what to write
+	 * @throws IOException if the writer fails
+	 */
+	private void write(String str) throws IOException{
+		writer.write(str);
+		checkSum += sumCharAsciiValues(str);
+	}
+	
+	/**
+	 * Output the opening piece of a template and push its remaining pieces onto the closing stack,
+	 * in reverse order so they are popped in the correct order
+	 * @param template pre-split template
+	 * @throws IOException if the writer fails
+	 */
+	private void open(Template template) throws IOException{
+		writer.write(template.opening);
+		checkSum += template.openingSum;
+		for(int i = template.closings.length - 1; i >= 0; i--){
+			if(closingSize == closingStrings.length){
+				closingStrings = Arrays.copyOf(closingStrings, closingSize * 2);
+				closingSums = Arrays.copyOf(closingSums, closingSize * 2);
+			}
+			closingStrings[closingSize] = template.closings[i];
+			closingSums[closingSize] = template.closingSums[i];
+			closingSize++;
+		}
+	}
+	
+	/** 
+	 * Pop and print numCloses closing strings, adding them to the checksum
+	 * @param numCloses number of branches to close (pops to perform)
+	 * @throws IOException if the writer fails
+	 */
+	private void close(int numCloses) throws IOException{
+		for(int i = 0; i < numCloses; i++){
+			closingSize--;
+			writer.write(closingStrings[closingSize]);
+			checkSum += closingSums[closingSize];
+			closingStrings[closingSize] = null;
+		}
+	}
+	
+	/**
+	 * A fitch output string split on DELIM, with the ASCII sum of each piece
+	 */
+	private static final class Template {
+		final String opening;
+		final long openingSum;
+		final String[] closings;
+		final long[] closingSums;
+		
+		Template(String str){
+			String[] pieces = str.split(Pattern.quote(DELIM));
+			opening = pieces[0];
+			openingSum = sumCharAsciiValues(opening);
+			closings = Arrays.copyOfRange(pieces, 1, pieces.length);
+			closingSums = new long[closings.length];
+			for(int i = 0; i < closings.length; i++){
+				closingSums[i] = sumCharAsciiValues(closings[i]);
+			}
+		}
+	}
+	
+	//DELIMETER, Note: shouldn't matter because all DELIMS should be gone before entering any proof
+	//info and before a fitch program ever tries to open
+	private static final String DELIM = "$$$";
+	
+	//fitch output strings
+	/* Just used as the first part of line 6, init a proof */
+	private static final Template PROOF_OPENING_LINE = new Template("=openproof.zen.Openproof{"+DELIM+"}");
+	/* Just used as the second part of line 6, init a proof */
+	private static final Template PROOF_DRIVER = new Template("p=openproof.fitch.FitchProofDriver{"+DELIM+"}");
+	/* opens up a new proof, use at very beginning*/
+	private static final Template PROOF_STARTER = new Template("p=openproof.proofdriver.DRProof{"+DELIM+"}");
+	/* opens up a new subproof, plug multiple (comma separated) into PROOF_F*/
+	private static final Template PROOF_SUB_STARTER = new Template("openproof.proofdriver.DRProof=openproof.proofdriver.DRProof{"+DELIM+"}");
+	/* first term in either a new (sub)proof a step */
+	private static final Template PROOF_STEP_INFO = new Template("s(openproof.proofdriver.DRStepInfo=openproof.proofdriver.DRStepInfo{"+DELIM+"})");
+	/* r term for new proof (plug into PROOF_STEP_INFO */
+	private static final String PROOF_STEP_INFO_R_DEFAULT = "r&1;";
+	/* r term for new step, plug into PROOF_STEP_INFO */
+	private static final Template PROOF_STEP_INFO_R_NORMAL = new Template("r=openproof.foldriver.FOLDriver{t=\""+DELIM+"\";}");
+	/* r term for new lemma, plug into PROOF_STEP_INFO, lemma name goes into DELIM1, lemma text into DELIM2 */
+	private static final Template PROOF_STEP_INFO_R_LEMMA = new Template("r=openproof.fold.FOLLemmaRule{u="+DELIM+";s=fol;"+DELIM+"}");
+	
+	/* proof rule for proof starts */
+	private static final String PROOF_RULE_PROOF_START = "r=openproof.proofdriver.DRProofRule{u=uProof;s=step;}";
+	/* proof rule for premises */
+	private static final String PROOF_RULE_PREMISE = "r=openproof.stepdriver.SRPremiseRule{u=uPremise;s=step;}";
+	/* proof rule for negation introduction */
+	private static final String PROOF_RULE_NEG_INTRO = "r=openproof.fold.OPNegationIntroRule{u=\"u\\254 Intro\";s=fol;}";
+	/* proof rule for negation elimination */
+	private static final String PROOF_RULE_NEG_ELIM = "r=openproof.fold.OPNegationElimRule{u=\"u\\254 Elim\";s=fol;}";
+	/* proof rule for conjunction elimination */
+	private static final String PROOF_RULE_CONJ_ELIM = "r=openproof.fold.OPConjunctionElimRule{u=\"u\\u2227 Elim\";s=fol;}";
+	/* proof rule for disjunction elimination */
+	private static final String PROOF_RULE_DISJ_ELIM = "r=openproof.fold.OPDisjunctionElimRule{u=\"u\\u2228 Elim\";s=fol;}";
+	/* proof rule for biconditional elimination */
+	private static final String PROOF_RULE_BICOND_ELIM = "r=openproof.fold.OPBiconditionalElimRule{u=\"u\\u2194 Elim\";s=fol;}";
+	/* proof rule for contradiction introduction */
+	private static final String PROOF_RULE_CONTR_INTRO = "r=openproof.fold.OPBottomIntroRule{u=\"u\\u22A5 Intro\";s=fol;}";
+
+	/* third term for new (sub)proof or step */
+	private static final String PROOF_OBJECT_PROOF_START = "o=openproof.zen.proofdriver.OPDStatusObject{c=1;s=\"\";l=\"\";d@k=\"\";t=false;}";
+	/* used in place of PROOF_OBJECT if line is empty or start of subproof */
+	private static final String PROOF_OBJECT_SUBPROOF_START = "o&6;";
+	/* used in place of PROOF_OBJECT if line is empty (shouldn't happen in truth tree conversions) 
+	 * Note: 'f=1;' portion seems like it's only placed on lines that can be verified (not premise/start of subproof, BUT also not on lemmas..),
+	 * But it also seems putting it on down doesnt hurt, so it will be left for now */
+	private static final String PROOF_OBJECT_NORMAL_LINE = "o=openproof.fold.FOLRuleStatus{c=1;s=\"\";l=\"\";d@k=\"\";t=false;f=1;}";
+	/* fourth term for new (sub)proof or step */
+	private static final Template PROOF_SUPPORT = new Template("u=openproof.proofdriver.DRSupport{t("+DELIM+")}");
+	/* references a supporting line, plug into PROOF_SUPOPRT */
+	//I believe sb always false, but si and ss change
+	private static final Template PROOF_SUPPORT_STEP = new Template("openproof.proofdriver.DRSupportPack=openproof.proofdriver.DRSupportPack{si&"+DELIM+";ss="+DELIM+";sb=false;}");
+	/* fifth term for new (sub)proof or step */ 
+	private static final String PROOF_B = "b()";
+	/* sixth term for new (sub)proof or step, contains reminaing stpes of proof */
+	private static final Template PROOF_F = new Template("f("+DELIM+")");
+	/* start of new step, plug multiple (comma separated) into PROOF_F */
+	private static final Template PROOF_SIMPLE_STEP = new Template("openproof.proofdriver.DRSimpleStep=openproof.proofdriver.DRSimpleStep{"+DELIM+"}");
+	
+	private static final String PROOF_GOAL = "g=openproof.proofdriver.DRGoalList{g()}";
+	private static final String PROOF_A = "a=true;";
+	
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+
+package cusick.john.TTtoF.Fitch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The lemma proofs that are copied into a Fitch file whenever a proof line is justified by a lemma.
+ * The six fundamental truth tree lemmas are read once from the classpath (they live in
+ * cusick.john.TTtoF.FundamentalTruthTreeLemmas, so this works from the jar as well) and the
+ * extracted proof bodies are kept in memory together with their checksums, so writing a proof
+ * does no file I/O for lemmas. Additional lemmas can be registered from Fitch files at startup.
+ */
+public final class LemmaLibrary {
+	
+	private static final String LEMMA_RESOURCE_DIR = "/cusick/john/TTtoF/FundamentalTruthTreeLemmas/";
+	
+	//the proof in a Fitch file starts after this on line 6, and ends at the checksum
+	private static final String PROOF_START = "=openproof.zen.Openproof{";
+	private static final String PROOF_END = "}c=";
+	
+	private static final ConcurrentHashMap<String, Lemma> lemmas = new ConcurrentHashMap<String, Lemma>();
+	
+	//digest of every lemma, cleared whenever one is registered
+	private static volatile String fingerprint;
+	
+	static {
+		String[] fundamentalLemmas = {FitchProof.LEMMA_DEMORGAN1, FitchProof.LEMMA_DEMORGAN2,
+				FitchProof.LEMMA_COND, FitchProof.LEMMA_NEG_COND,
+				FitchProof.LEMMA_BICOND, FitchProof.LEMMA_NEG_BICOND};
+		for(String rule : fundamentalLemmas){
+			InputStream in = LemmaLibrary.class.getResourceAsStream(LEMMA_RESOURCE_DIR + rule + "." + FitchFileManager.EXTENSION);
+			if(in == null){
+				System.err.println("Missing lemma " + rule);
+				continue;
+			}
+			try {
+				lemmas.put(rule, readLemma(rule, in));
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.err.println("Could not read lemma " + rule);
+			}
+		}
+	}
+	
+	/**
+	 * A lemma's proof, as copied into the rule of each line it justifies
+	 */
+	public static final class Lemma {
+		private final String rule;
+		private final String proof;
+		private final long checkSum;
+		
+		private Lemma(String rule, String proof){
+			this.rule = rule;
+			this.proof = proof;
+			this.checkSum = FitchProofWriter.sumCharAsciiValues(proof);
+		}
+		
+		public String getRule(){
+			return rule;
+		}
+		
+		/**
+		 * @return the lemma's proof, without the enclosing Openproof object or checksum
+		 */
+		public String getProof(){
+			return proof;
+		}
+		
+		/**
+		 * @return sum of the ASCII values of the proof
+		 */
+		public long getCheckSum(){
+			return checkSum;
+		}
+	}
+	
+	private LemmaLibrary(){}
+	
+	/**
+	 * @param rule lemma name, e.g. FitchProof.LEMMA_DEMORGAN1
+	 * @return the lemma, or null if no lemma has that name
+	 */
+	public static Lemma get(String rule){
+		return lemmas.get(rule);
+	}
+	
+	/**
+	 * @param rule proof line rule
+	 * @return true if the rule names a lemma
+	 */
+	public static boolean contains(String rule){
+		return lemmas.containsKey(rule);
+	}
+	
+	/**
+	 * Register a lemma from a Fitch file, named after the file (without .prf). A lemma with
+	 * the same name as an existing one replaces it.
+	 * @param file Fitch file containing the lemma's proof
+	 * @return the registered lemma
+	 * @throws IOException if the file could not be read or does not contain a proof
+	 */
+	public static Lemma register(File file) throws IOException{
+		String rule = file.getName();
+		if(rule.endsWith("." + FitchFileManager.EXTENSION)){
+			rule = rule.substring(0, rule.length() - FitchFileManager.EXTENSION.length() - 1);
+		}
+		return register(rule, new FileInputStream(file));
+	}
+	
+	/**
+	 * Register a lemma from a Fitch file. A lemma with the same name as an existing one replaces it.
+	 * @param rule lemma name, used as the rule of the proof lines it justifies
+	 * @param in Fitch file contents, closed when done
+	 * @return the registered lemma
+	 * @throws IOException if the stream could not be read or does not contain a proof
+	 */
+	public static Lemma register(String rule, InputStream in) throws IOException{
+		Lemma lemma = readLemma(rule, in);
+		synchronized(LemmaLibrary.class){ //so that getFingerprint can't store a digest of the old lemmas
+			lemmas.put(rule, lemma);
+			fingerprint = null;
+		}
+		return lemma;
+	}
+	
+	/**
+	 * @return a SHA-256 digest (in hex) of the name and proof of every lemma, which changes
+	 *         whenever a lemma is added or replaced
+	 */
+	public static String getFingerprint(){
+		String current = fingerprint;
+		if(current != null){
+			return current;
+		}
+		synchronized(LemmaLibrary.class){ //no lemma can be registered while the digest is computed
+			current = fingerprint;
+			if(current == null){
+				try {
+					MessageDigest digest = MessageDigest.getInstance("SHA-256");
+					for(Lemma lemma : new TreeMap<String, Lemma>(lemmas).values()){
+						digest.update(lemma.getRule().getBytes(StandardCharsets.UTF_8));
+						digest.update((byte) 0);
+						digest.update(lemma.getProof().getBytes(StandardCharsets.UTF_8));
+						digest.update((byte) 0);
+					}
+					current = String.format("%064x", new BigInteger(1, digest.digest()));
+				} catch (NoSuchAlgorithmException e) {
+					throw new IllegalStateException(e); //every Java platform has SHA-256
+				}
+				fingerprint = current;
+			}
+			return current;
+		}
+	}
+	
+	/**
+	 * Extract the proof from line 6 of a Fitch file
+	 * @param rule lemma name
+	 * @param in Fitch file contents, closed when done
+	 * @return the lemma
+	 * @throws IOException if the stream could not be read or does not contain a proof
+	 */
+	private static Lemma readLemma(String rule, InputStream in) throws IOException{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		try {
+			//skip first 5 lines
+			String line = null;
+			for(int i = 0; i < 6; i++){
+				line = reader.readLine();
+				if(line == null){
+					throw new IOException("Lemma " + rule + " is not a Fitch file");
+				}
+			}
+			
+			//skip first open lineProof, '}c=' should always signify the end and should never occur
+			//in the actual proof's data
+			int start = line.indexOf(PROOF_START);
+			start = start < 0 ? 0 : start + PROOF_START.length();
+			int end = line.indexOf(PROOF_END, start);
+			if(end < 0){
+				throw new IOException("Lemma " + rule + " has no checksum");
+			}
+			return new Lemma(rule, line.substring(start, end));
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+
+package cusick.john.TTtoF.Fitch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import perl.aaron.TruthTrees.logic.Biconditional;
+import perl.aaron.TruthTrees.logic.Conditional;
+import perl.aaron.TruthTrees.logic.Conjunction;
+import perl.aaron.TruthTrees.logic.Disjunction;
+import perl.aaron.TruthTrees.logic.LogicalOperator;
+import perl.aaron.TruthTrees.logic.Negation;
+import perl.aaron.TruthTrees.logic.Statement;
+import perl.aaron.TruthTrees.logic.StatementFactory;
+
+/**
+ * Checks a formal F proof in memory the way Fitch would, without writing it out: every line
+ * must cite only lines and subproofs in scope at that line, and its rule must license its
+ * statement from what it cites. The subproof structure is worked out first, from the start and
+ * end of subproof flags as setFitchIndices reads them; after that each line is checked
+ * independently, so long proofs are split across a ForkJoinPool by runs of lines.
+ * 
+ * The six fundamental lemmas are checked against their schemas (e.g. a DeMorgan1 line must read
+ * ¬(P ∧ Q) ↔ (¬P ∨ ¬Q)). Lemmas registered with the LemmaLibrary are taken as given, since only
+ * their proofs are known, but they too must cite nothing.
+ */
+public class ProofChecker {
+	
+	/** lines checked by one task; proofs up to twice this long are checked on the calling thread */
+	private static final int LINES_PER_TASK = 256;
+	
+	private static final Statement CONTRADICTION = StatementFactory.atomic("⊥");
+	
+	/**
+	 * A line whose rule does not license it
+	 */
+	public static final class LineError {
+		private final ProofLine line;
+		private final int index;
+		private final String message;
+		
+		LineError(ProofLine line, int index, String message){
+			this.line = line;
+			this.index = index;
+			this.message = message;
+		}
+		
+		public ProofLine getLine(){
+			return line;
+		}
+		
+		/**
+		 * @return the line's number in the proof, starting at 1 as Fitch shows it
+		 */
+		public int getLineNumber(){
+			return index + 1;
+		}
+		
+		public String getMessage(){
+			return message;
+		}
+		
+		public String toString(){
+			return "Line " + getLineNumber() + " (" + line.getStatement() + "): " + message;
+		}
+	}
+	
+	private final ForkJoinPool pool;
+	
+	/**
+	 * @param parallelism number of threads each long proof is checked on, at least 1
+	 */
+	public ProofChecker(int parallelism){
+		if(parallelism < 1){
+			throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+		}
+		pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+	}
+	
+	/**
+	 * Stops the checker's threads once the checks under way are done
+	 */
+	public void shutdown(){
+		if(pool != null){
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Checks every line of a proof. Can be called from several threads at once.
+	 * @param proof formal F proof
+	 * @return every error, in line order; empty if the proof is correct
+	 */
+	public List<LineError> checkAll(FitchProof proof){
+		Structure structure = new Structure(proof.getProof());
+		String[] messages = new String[structure.lines.size()];
+		Task task = new Task(structure, messages, 0, messages.length);
+		if(pool == null || messages.length <= 2 * LINES_PER_TASK){
+			task.compute();
+		} else{
+			pool.invoke(task);
+		}
+		
+		List<LineError> errors = new ArrayList<LineError>(structure.errors);
+		for(int i = 0; i < messages.length; i++){
+			if(messages[i] != null){
+				errors.add(new LineError(structure.lines.get(i), i, messages[i]));
+			}
+		}
+		if(!structure.errors.isEmpty()){
+			Collections.sort(errors, new Comparator<LineError>() {
+				@Override
+				public int compare(LineError a, LineError b){
+					return Integer.compare(a.index, b.index);
+				}
+			});
+		}
+		return errors;
+	}
+	
+	/**
+	 * Checks the lines in a range, splitting it in half until it is short enough
+	 */
+	private static final class Task extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final Structure structure;
+		private final String[] messages;
+		private final int from;
+		private final int to;
+		
+		Task(Structure structure, String[] messages, int from, int to){
+			this.structure = structure;
+			this.messages = messages;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute(){
+			if(to - from > LINES_PER_TASK && inForkJoinPool()){
+				int middle = (from + to) >>> 1;
+				invokeAll(new Task(structure, messages, from, middle), new Task(structure, messages, middle, to));
+				return;
+			}
+			for(int i = from; i < to; i++){
+				messages[i] = structure.check(i);
+			}
+		}
+	}
+	
+	/**
+	 * The subproofs of a proof. Subproof 0 is the whole proof; subproofs nest in line order, so
+	 * a subproof contains a line exactly when the line falls between its first and last lines.
+	 */
+	private static final class Structure {
+		private final List<ProofLine> lines;
+		private final Map<ProofLine, Integer> indices;
+		private final int[] subproofOf; //innermost subproof of each line
+		private final List<Integer> starts = new ArrayList<Integer>();
+		private final List<Integer> ends = new ArrayList<Integer>();
+		private final List<Integer> parents = new ArrayList<Integer>();
+		//subproofs that are ended but never started, or started but never ended
+		private final List<LineError> errors = new ArrayList<LineError>();
+		
+		Structure(List<ProofLine> proof){
+			lines = new ArrayList<ProofLine>(proof);
+			indices = new IdentityHashMap<ProofLine, Integer>(lines.size() * 2);
+			subproofOf = new int[lines.size()];
+			
+			starts.add(0);
+			ends.add(lines.size() - 1);
+			parents.add(-1);
+			List<Integer> open = new ArrayList<Integer>();
+			open.add(0);
+			for(int i = 0; i < lines.size(); i++){
+				ProofLine line = lines.get(i);
+				indices.put(line, i);
+				if(i > 0 && lines.get(i - 1).isEndofSubproof()){
+					if(open.size() > 1){
+						ends.set(open.remove(open.size() - 1), i - 1);
+					} else{
+						errors.add(new LineError(lines.get(i - 1), i - 1, "ends a subproof, but none is open"));
+					}
+				}
+				if(line.isStartofSubproof()){
+					starts.add(i);
+					ends.add(lines.size() - 1);
+					parents.add(open.get(open.size() - 1));
+					open.add(starts.size() - 1);
+				}
+				subproofOf[i] = open.get(open.size() - 1);
+			}
+			for(int i = 1; i < open.size(); i++){
+				int start = starts.get(open.get(i));
+				errors.add(new LineError(lines.get(start), start, "starts a subproof that is never ended"));
+			}
+		}
+		
+		boolean contains(int subproof, int index){
+			return starts.get(subproof) <= index && index <= ends.get(subproof);
+		}
+		
+		/**
+		 * @return why the line is wrong, or null if it is licensed
+		 */
+		String check(int index){
+			ProofLine line = lines.get(index);
+			String rule = line.getRule();
+			Statement statement = line.getStatement();
+			if(statement == null){
+				return "has no statement";
+			}
+			
+			//sort what the line cites into single lines in scope and whole closed subproofs
+			List<Statement> cited = new ArrayList<Statement>();
+			List<Integer> subproofs = new ArrayList<Integer>();
+			Map<Integer, Integer> subproofCache = new HashMap<Integer, Integer>();
+			int outOfScope = -1; //first line cited from a closed subproof
+			for(ProofLine ref : line.getReferencedLines()){
+				Integer refIndex = ref == null ? null : indices.get(ref);
+				if(refIndex == null){
+					return "cites a line that is not in the proof";
+				}
+				if(refIndex >= index){
+					return "cites line " + (refIndex + 1) + ", which does not come before it";
+				}
+				int refSubproof = subproofOf[refIndex];
+				if(contains(refSubproof, index)){
+					if(!cited.contains(ref.getStatement())){
+						cited.add(ref.getStatement());
+					}
+					continue;
+				}
+				Integer subproof = subproofCache.get(refSubproof);
+				if(subproof == null){
+					//the closed subproof holding the cited line that sits directly in a subproof still open here
+					subproof = refSubproof;
+					while(parents.get(subproof) >= 0 && !contains(parents.get(subproof), index)){
+						subproof = parents.get(subproof);
+					}
+					if(parents.get(subproof) < 0){
+						return "cites line " + (refIndex + 1) + ", which is out of scope";
+					}
+					subproofCache.put(refSubproof, subproof);
+				}
+				if(!subproofs.contains(subproof)){
+					subproofs.add(subproof);
+				}
+				if(outOfScope < 0){
+					outOfScope = refIndex;
+				}
+			}
+			
+			boolean citesSubproofs = rule.equals(FitchProof.RULE_NEG_INTRO) || rule.equals(FitchProof.RULE_DISJ_ELIM);
+			if(!citesSubproofs && outOfScope >= 0){
+				return "cites line " + (outOfScope + 1) + ", which is inside a closed subproof";
+			}
+			
+			if(line.isPremise()){
+				if(subproofOf[index] != 0 || (index > 0 && !lines.get(index - 1).isPremise())){
+					return "is a premise, but does not come before every other line";
+				}
+				return citesNothing(cited);
+			}
+			if(line.isStartofSubproof()){
+				return rule.isEmpty() ? citesNothing(cited) : "starts a subproof, so must be an assumption";
+			}
+			if(rule.isEmpty()){
+				return "has no rule";
+			}
+			
+			if(rule.equals(FitchProof.RULE_CONJ_ELIM)){
+				if(cited.size() != 1){
+					return rule + " must cite one line";
+				}
+				Statement conjunction = cited.get(0);
+				if(!(conjunction instanceof Conjunction) || !((Conjunction) conjunction).getOperands().contains(statement)){
+					return "is not a conjunct of " + conjunction;
+				}
+				return null;
+			}
+			if(rule.equals(FitchProof.RULE_NEG_ELIM)){
+				if(cited.size() != 1){
+					return rule + " must cite one line";
+				}
+				if(!cited.get(0).equals(StatementFactory.negation(StatementFactory.negation(statement)))){
+					return "does not follow from " + cited.get(0) + " by removing a double negation";
+				}
+				return null;
+			}
+			if(rule.equals(FitchProof.RULE_BICOND_ELIM)){
+				if(cited.size() != 2){
+					return rule + " must cite two lines";
+				}
+				for(int i = 0; i < 2; i++){
+					Statement bicond = cited.get(i);
+					Statement side = cited.get(1 - i);
+					if(bicond instanceof Biconditional){
+						List<Statement> operands = ((Biconditional) bicond).getOperands();
+						if(operands.get(0).equals(side) && operands.get(1).equals(statement)
+								|| operands.get(1).equals(side) && operands.get(0).equals(statement)){
+							return null;
+						}
+					}
+				}
+				return "does not follow from " + cited.get(0) + " and " + cited.get(1);
+			}
+			if(rule.equals(FitchProof.RULE_CONTR_INTRO)){
+				if(cited.size() != 2){
+					return rule + " must cite two lines";
+				}
+				if(!statement.equals(CONTRADICTION)){
+					return rule + " must conclude ⊥";
+				}
+				if(!cited.get(0).equals(StatementFactory.negation(cited.get(1)))
+						&& !cited.get(1).equals(StatementFactory.negation(cited.get(0)))){
+					return cited.get(0) + " and " + cited.get(1) + " do not contradict";
+				}
+				return null;
+			}
+			if(rule.equals(FitchProof.RULE_NEG_INTRO)){
+				if(!cited.isEmpty() || subproofs.size() != 1){
+					return rule + " must cite one subproof";
+				}
+				int subproof = subproofs.get(0);
+				Statement assumption = lines.get(starts.get(subproof)).getStatement();
+				if(!statement.equals(StatementFactory.negation(assumption))){
+					return "is not the negation of " + assumption + ", assumed at line " + (starts.get(subproof) + 1);
+				}
+				if(!CONTRADICTION.equals(lines.get(ends.get(subproof)).getStatement())){
+					return "cites the subproof at line " + (starts.get(subproof) + 1) + ", which does not end in ⊥";
+				}
+				return null;
+			}
+			if(rule.equals(FitchProof.RULE_DISJ_ELIM)){
+				if(cited.size() != 1 || !(cited.get(0) instanceof Disjunction)){
+					return rule + " must cite one disjunction in scope";
+				}
+				List<Statement> disjuncts = new ArrayList<Statement>(((Disjunction) cited.get(0)).getOperands());
+				for(int subproof : subproofs){
+					Statement assumption = lines.get(starts.get(subproof)).getStatement();
+					if(!disjuncts.remove(assumption)){
+						return "cites the subproof at line " + (starts.get(subproof) + 1) + ", which does not assume a disjunct of " + cited.get(0);
+					}
+					if(!statement.equals(lines.get(ends.get(subproof)).getStatement())){
+						return "cites the subproof at line " + (starts.get(subproof) + 1) + ", which does not end in " + statement;
+					}
+				}
+				if(!disjuncts.isEmpty()){
+					return "has no subproof for " + disjuncts.get(0);
+				}
+				return null;
+			}
+			if(line.isLemma()){
+				String error = citesNothing(cited);
+				if(error == null && !LemmaLibrary.contains(rule)){
+					error = "lemma " + rule + " could not be loaded";
+				}
+				if(error == null && !matchesLemma(rule, statement)){
+					error = "is not an instance of " + rule;
+				}
+				return error;
+			}
+			return "uses unknown rule " + rule;
+		}
+		
+		private static String citesNothing(List<Statement> cited){
+			return cited.isEmpty() ? null : "must not cite other lines";
+		}
+	}
+	
+	/**
+	 * @return true if the statement is an instance of the lemma; lemmas other than the
+	 *         fundamental six always match
+	 */
+	static boolean matchesLemma(String rule, Statement statement){
+		boolean fundamental = rule.equals(FitchProof.LEMMA_DEMORGAN1) || rule.equals(FitchProof.LEMMA_DEMORGAN2)
+				|| rule.equals(FitchProof.LEMMA_COND) || rule.equals(FitchProof.LEMMA_NEG_COND)
+				|| rule.equals(FitchProof.LEMMA_BICOND) || rule.equals(FitchProof.LEMMA_NEG_BICOND);
+		if(!fundamental){
+			return true;
+		}
+		if(!(statement instanceof Biconditional)){
+			return false;
+		}
+		Statement lhs = ((Biconditional) statement).getOperands().get(0);
+		Statement rhs = ((Biconditional) statement).getOperands().get(1);
+		boolean negated = lhs instanceof Negation;
+		Statement inner = negated ? ((Negation) lhs).getNegand() : lhs;
+		if(!(inner instanceof Conjunction || inner instanceof Disjunction || inner instanceof Conditional
+				|| inner instanceof Biconditional) || ((LogicalOperator) inner).getOperands().size() != 2){
+			return false;
+		}
+		Statement p = ((LogicalOperator) inner).getOperands().get(0);
+		Statement q = ((LogicalOperator) inner).getOperands().get(1);
+		Statement notP = StatementFactory.negation(p);
+		Statement notQ = StatementFactory.negation(q);
+		Statement expected = null;
+		if(rule.equals(FitchProof.LEMMA_DEMORGAN1) && negated && inner instanceof Conjunction){
+			//¬(P ∧ Q) ↔ (¬P ∨ ¬Q)
+			expected = StatementFactory.disjunction(notP, notQ);
+		} else if(rule.equals(FitchProof.LEMMA_DEMORGAN2) && negated && inner instanceof Disjunction){
+			//¬(P ∨ Q) ↔ (¬P ∧ ¬Q)
+			expected = StatementFactory.conjunction(notP, notQ);
+		} else if(rule.equals(FitchProof.LEMMA_COND) && !negated && inner instanceof Conditional){
+			//(P → Q) ↔ (¬P ∨ Q)
+			expected = StatementFactory.disjunction(notP, q);
+		} else if(rule.equals(FitchProof.LEMMA_NEG_COND) && negated && inner instanceof Conditional){
+			//¬(P → Q) ↔ (P ∧ ¬Q)
+			expected = StatementFactory.conjunction(p, notQ);
+		} else if(rule.equals(FitchProof.LEMMA_BICOND) && !negated && inner instanceof Biconditional){
+			//(P ↔ Q) ↔ ((P ∧ Q) ∨ (¬P ∧ ¬Q))
+			expected = StatementFactory.disjunction(StatementFactory.conjunction(p, q), StatementFactory.conjunction(notP, notQ));
+		} else if(rule.equals(FitchProof.LEMMA_NEG_BICOND) && negated && inner instanceof Biconditional){
+			//¬(P ↔ Q) ↔ ((P ∧ ¬Q) ∨ (¬P ∧ Q))
+			expected = StatementFactory.disjunction(StatementFactory.conjunction(p, notQ), StatementFactory.conjunction(notP, q));
+		}
+		return rhs.equals(expected);
+	}
+}
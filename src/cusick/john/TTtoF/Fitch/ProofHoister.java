@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cusick.john.TTtoF.Fitch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+import perl.aaron.TruthTrees.Log;
+import perl.aaron.TruthTrees.logic.Statement;
+
+/**
+ * Shortens a formal F proof by hoisting the lines that every subproof of a split derives alike.
+ * The converter writes each truth tree branch as its own subproof, so a statement decomposed
+ * below a split (a lemma, or an ∧ Elim or ↔ Elim of a line above the split) is derived again in
+ * each subproof. When every sibling subproof holds the same line citing the same lines from
+ * above the split, one copy is moved in front of the subproofs and the others are removed.
+ *
+ * Lines that cited a removed copy cite the one kept, except that ∨ Elim and ¬ Intro lines
+ * citing it as part of a closed subproof cite that subproof's assumption instead. Splits are
+ * hoisted innermost first, so a line can move up through several of them.
+ */
+public final class ProofHoister {
+	
+	private static final Log LOG = Log.get(ProofHoister.class);
+	
+	/**
+	 * A (sub)proof: its lines and subproofs in order, and where its lines were in the proof
+	 */
+	private static final class Subproof {
+		final List<Object> items = new ArrayList<Object>();
+		final int level;
+		final int start;
+		int end = Integer.MAX_VALUE;
+		
+		Subproof(int level, int start){
+			this.level = level;
+			this.start = start;
+		}
+	}
+	
+	//line -> its index in the proof before hoisting
+	private final Map<ProofLine, Integer> positions = new IdentityHashMap<ProofLine, Integer>();
+	//removed line -> the line kept in its place
+	private final Map<ProofLine, ProofLine> replacements = new IdentityHashMap<ProofLine, ProofLine>();
+	//removed or hoisted line -> the innermost subproof it was taken out of
+	private final Map<ProofLine, Subproof> movedFrom = new IdentityHashMap<ProofLine, Subproof>();
+	
+	private ProofHoister(){
+	}
+	
+	/**
+	 * Hoist the lines shared by sibling subproofs, then renumber the lines. The proof's Fitch
+	 * indices must be set again before it is written.
+	 * @param proof formal F proof, changed in place
+	 * @return number of lines removed
+	 */
+	public static int hoist(FitchProof proof){
+		ProofHoister hoister = new ProofHoister();
+		Subproof root = new Subproof(0, 0);
+		List<Subproof> open = new ArrayList<Subproof>();
+		open.add(root);
+		Vector<ProofLine> proofLines = proof.getProof();
+		for(int i = 0; i < proofLines.size(); i++){
+			ProofLine line = proofLines.get(i);
+			hoister.positions.put(line, i);
+			if(line.isStartofSubproof()){
+				Subproof subproof = new Subproof(open.size(), i);
+				open.get(open.size() - 1).items.add(subproof);
+				open.add(subproof);
+			}
+			open.get(open.size() - 1).items.add(line);
+			if(line.isEndofSubproof()){
+				if(open.size() == 1){
+					LOG.debug("Not hoisting, line {} ends a subproof that was never started", line.getLineNumber());
+					return 0;
+				}
+				open.remove(open.size() - 1).end = i;
+			}
+		}
+		
+		hoister.hoistWithin(root);
+		int removed = hoister.replacements.size();
+		if(removed == 0){
+			return 0;
+		}
+		
+		Vector<ProofLine> lines = new Vector<ProofLine>(proof.getLength() - removed);
+		hoister.flatten(root, lines, new HashSet<Subproof>());
+		for(int i = 0; i < lines.size(); i++){
+			lines.get(i).setLineNumber(i + 1);
+		}
+		proof.setProof(lines);
+		LOG.debug("Hoisted shared lines, removing {} lines", removed);
+		return removed;
+	}
+	
+	/**
+	 * Hoist within the subproofs of a subproof, then out of each run of sibling subproofs in it
+	 */
+	private void hoistWithin(Subproof subproof){
+		List<Object> items = subproof.items;
+		for(Object item : items){
+			if(item instanceof Subproof){
+				hoistWithin((Subproof) item);
+			}
+		}
+		
+		int i = 0;
+		while(i < items.size()){
+			int end = i;
+			while(end < items.size() && items.get(end) instanceof Subproof){
+				end++;
+			}
+			if(end - i > 1){
+				List<Subproof> siblings = new ArrayList<Subproof>();
+				for(int j = i; j < end; j++){
+					siblings.add((Subproof) items.get(j));
+				}
+				List<ProofLine> hoisted = hoistOutOf(siblings, subproof.level);
+				items.addAll(i, hoisted);
+				end += hoisted.size();
+			}
+			i = Math.max(end, i + 1);
+		}
+	}
+	
+	/**
+	 * @param siblings subproofs that follow one another
+	 * @param level subproof level of the lines in front of them
+	 * @return the lines moved out of the first sibling, in order, to go in front of the siblings
+	 */
+	private List<ProofLine> hoistOutOf(List<Subproof> siblings, int level){
+		//the siblings held the lines from start to end before any were hoisted
+		int start = siblings.get(0).start;
+		int end = siblings.get(siblings.size() - 1).end;
+		
+		//the lines of every other sibling that could be hoisted, by statement
+		List<Map<Statement, List<ProofLine>>> candidates = new ArrayList<Map<Statement, List<ProofLine>>>();
+		for(int k = 1; k < siblings.size(); k++){
+			Map<Statement, List<ProofLine>> byStatement = new HashMap<Statement, List<ProofLine>>();
+			for(ProofLine line : hoistable(siblings.get(k))){
+				List<ProofLine> lines = byStatement.get(line.getStatement());
+				if(lines == null){
+					lines = new ArrayList<ProofLine>(1);
+					byStatement.put(line.getStatement(), lines);
+				}
+				lines.add(line);
+			}
+			candidates.add(byStatement);
+		}
+		
+		List<ProofLine> hoisted = new ArrayList<ProofLine>();
+		Set<ProofLine> taken = Collections.newSetFromMap(new IdentityHashMap<ProofLine, Boolean>());
+		Subproof first = siblings.get(0);
+		for(ProofLine line : hoistable(first)){
+			if(!citesFromAbove(line, start, end, taken)){
+				continue;
+			}
+			List<ProofLine> copies = new ArrayList<ProofLine>(candidates.size());
+			for(Map<Statement, List<ProofLine>> byStatement : candidates){
+				ProofLine copy = findCopy(line, byStatement.get(line.getStatement()));
+				if(copy == null){
+					break;
+				}
+				copies.add(copy);
+			}
+			if(copies.size() < candidates.size()){
+				continue;
+			}
+			
+			line.setSubproofLevel(level);
+			hoisted.add(line);
+			taken.add(line);
+			if(!movedFrom.containsKey(line)){
+				movedFrom.put(line, first);
+			}
+			for(int k = 0; k < copies.size(); k++){
+				ProofLine copy = copies.get(k);
+				taken.add(copy);
+				candidates.get(k).get(copy.getStatement()).remove(copy);
+				replacements.put(copy, line);
+				if(!movedFrom.containsKey(copy)){
+					movedFrom.put(copy, siblings.get(k + 1));
+				}
+			}
+		}
+		if(!taken.isEmpty()){
+			for(Subproof sibling : siblings){
+				sibling.items.removeAll(taken);
+			}
+		}
+		return hoisted;
+	}
+	
+	/**
+	 * @return the lines directly in the subproof that could be hoisted: neither its assumption nor
+	 *         its last line, and derived by a rule that cites single lines, or a lemma
+	 */
+	private static List<ProofLine> hoistable(Subproof subproof){
+		List<ProofLine> lines = new ArrayList<ProofLine>();
+		for(int i = 1; i < subproof.items.size() - 1; i++){
+			Object item = subproof.items.get(i);
+			if(!(item instanceof ProofLine)){
+				continue;
+			}
+			ProofLine line = (ProofLine) item;
+			String rule = line.getRule();
+			if(line.isStartofSubproof() || line.isEndofSubproof() || line.isPremise()){
+				continue;
+			}
+			if(rule.equals(FitchProof.RULE_CONJ_ELIM) || rule.equals(FitchProof.RULE_BICOND_ELIM)
+					|| rule.equals(FitchProof.RULE_NEG_ELIM) || line.isLemma()){
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+	
+	/**
+	 * @param start index of the siblings' first line before hoisting
+	 * @param end index of their last line
+	 * @param taken lines already taken out of the siblings
+	 * @return true if every line the line cites is above the siblings, or already taken out
+	 */
+	private boolean citesFromAbove(ProofLine line, int start, int end, Set<ProofLine> taken){
+		for(ProofLine ref : line.getReferencedLines()){
+			if(ref == null){
+				return false;
+			}
+			ref = resolve(ref);
+			Integer position = positions.get(ref);
+			if(position == null || (position >= start && position <= end && !taken.contains(ref))){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the line among the candidates with the same rule and citations as the line, or null
+	 */
+	private ProofLine findCopy(ProofLine line, List<ProofLine> candidates){
+		if(candidates == null){
+			return null;
+		}
+		Vector<ProofLine> refs = line.getReferencedLines();
+		for(ProofLine candidate : candidates){
+			Vector<ProofLine> candidateRefs = candidate.getReferencedLines();
+			if(!candidate.getRule().equals(line.getRule()) || candidateRefs.size() != refs.size()){
+				continue;
+			}
+			boolean same = true;
+			for(int i = 0; i < refs.size() && same; i++){
+				same = candidateRefs.get(i) != null && resolve(candidateRefs.get(i)) == resolve(refs.get(i));
+			}
+			if(same){
+				return candidate;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the line kept in place of a line, which is the line itself unless it was removed
+	 */
+	private ProofLine resolve(ProofLine line){
+		ProofLine kept;
+		while((kept = replacements.get(line)) != null){
+			line = kept;
+		}
+		return line;
+	}
+	
+	/**
+	 * Append the lines of a subproof in order, pointing their citations of moved lines at the lines
+	 * kept, or at the assumption of the subproof they were cited for
+	 * @param open subproofs enclosing the subproof, which is added while its lines are appended
+	 */
+	private void flatten(Subproof subproof, List<ProofLine> lines, Set<Subproof> open){
+		open.add(subproof);
+		for(Object item : subproof.items){
+			if(item instanceof Subproof){
+				flatten((Subproof) item, lines, open);
+				continue;
+			}
+			ProofLine line = (ProofLine) item;
+			lines.add(line);
+			
+			Vector<ProofLine> refs = line.getReferencedLines();
+			boolean citesMoved = false;
+			for(ProofLine ref : refs){
+				citesMoved |= ref != null && movedFrom.containsKey(ref);
+			}
+			if(!citesMoved){
+				continue;
+			}
+			boolean citesSubproofs = line.getRule().equals(FitchProof.RULE_DISJ_ELIM)
+					|| line.getRule().equals(FitchProof.RULE_NEG_INTRO);
+			Set<ProofLine> cited = Collections.newSetFromMap(new IdentityHashMap<ProofLine, Boolean>());
+			cited.addAll(refs);
+			Vector<ProofLine> newRefs = new Vector<ProofLine>(refs.size());
+			for(ProofLine ref : refs){
+				ProofLine newRef = ref == null ? null : resolve(ref, citesSubproofs, open);
+				if(newRef == ref || cited.add(newRef)){
+					newRefs.add(newRef);
+				}
+			}
+			line.setReferencedLines(newRefs);
+		}
+		open.remove(subproof);
+	}
+	
+	/**
+	 * @param citesSubproofs true if the line citing it cites whole subproofs (∨ Elim and ¬ Intro)
+	 * @param open subproofs open at the line citing it
+	 * @return the line to cite in place of a line
+	 */
+	private ProofLine resolve(ProofLine line, boolean citesSubproofs, Set<Subproof> open){
+		Subproof subproof = movedFrom.get(line);
+		if(citesSubproofs && subproof != null && !open.contains(subproof)){
+			//the line was cited for the subproof it was in, which is closed here
+			return (ProofLine) subproof.items.get(0);
+		}
+		return resolve(line);
+	}
+}
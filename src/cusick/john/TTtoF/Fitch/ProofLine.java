@@ -96,7 +96,7 @@ public class ProofLine {
 				rule.equals(FitchProof.LEMMA_BICOND) || rule.equals(FitchProof.LEMMA_NEG_BICOND)){
 			return true;
 		}
-		return false;
+		return LemmaLibrary.contains(rule); //lemmas registered at startup
 	}
 
 	public Statement getStatement() {
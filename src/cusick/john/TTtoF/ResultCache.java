@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+
+package cusick.john.TTtoF;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cusick.john.TTtoF.Fitch.FitchFileManager;
+import cusick.john.TTtoF.Fitch.LemmaLibrary;
+
+/**
+ * An on-disk cache of converted Fitch files, so that re-converting a truth tree file that has
+ * not changed only copies the earlier result. Entries are keyed by a SHA-256 digest of the input
+ * file's bytes together with everything else the output depends on: the converter version, the
+ * lemma library and the Fitch file header written on this platform. An entry is therefore never
+ * stale; changing any of these simply stops its old entries from being used.
+ * 
+ * Entries are written to a temporary file and renamed into place, so a reader (in this or
+ * another process sharing the directory) never sees a partial entry. The cache is kept under a
+ * size limit by deleting the least recently used entries, using file modification times to
+ * carry recency across runs. Failing to read or write the cache is never an error, the file is
+ * just converted.
+ */
+public class ResultCache {
+	
+	private static final String ENTRY_EXTENSION = "." + FitchFileManager.EXTENSION;
+	
+	private final Path dir;
+	private final long maxBytes;
+	
+	//key -> entry size, least recently used first
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long totalBytes;
+	
+	private long hits;
+	private long misses;
+	private long stores;
+	private long evictions;
+	
+	/**
+	 * Opens a cache directory, creating it if needed, and indexes the entries already in it
+	 * @param dir cache directory
+	 * @param maxBytes most bytes of entries to keep
+	 * @throws IOException if the directory could not be created or read
+	 */
+	public ResultCache(File dir, long maxBytes) throws IOException{
+		if(maxBytes < 1){
+			throw new IllegalArgumentException("Cache size must be at least 1 byte: " + maxBytes);
+		}
+		this.dir = dir.toPath();
+		this.maxBytes = maxBytes;
+		Files.createDirectories(this.dir);
+		
+		final Map<Path, BasicFileAttributes> found = new LinkedHashMap<Path, BasicFileAttributes>();
+		try (DirectoryStream<Path> shards = Files.newDirectoryStream(this.dir)) {
+			for(Path shard : shards){
+				if(!Files.isDirectory(shard)){
+					continue;
+				}
+				try (DirectoryStream<Path> stream = Files.newDirectoryStream(shard, "*" + ENTRY_EXTENSION)) {
+					for(Path entry : stream){
+						try {
+							found.put(entry, Files.readAttributes(entry, BasicFileAttributes.class));
+						} catch (IOException e) {
+							//evicted by another process meanwhile
+						}
+					}
+				}
+			}
+		}
+		List<Path> byAge = new ArrayList<Path>(found.keySet());
+		Collections.sort(byAge, new Comparator<Path>() {
+			@Override
+			public int compare(Path a, Path b){
+				return found.get(a).lastModifiedTime().compareTo(found.get(b).lastModifiedTime());
+			}
+		});
+		synchronized(this){
+			for(Path entry : byAge){
+				String name = entry.getFileName().toString();
+				long size = found.get(entry).size();
+				entries.put(name.substring(0, name.length() - ENTRY_EXTENSION.length()), size);
+				totalBytes += size;
+			}
+			evict();
+		}
+	}
+	
+	/**
+	 * Computes the key a truth tree file's result is cached under
+	 * @param input truth tree file (.tft or .tftb)
+	 * @return hex SHA-256 digest of the file and of everything else the result depends on
+	 * @throws IOException if the file could not be read
+	 */
+	public String key(File input) throws IOException{
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); //every Java platform has SHA-256
+		}
+		String name = input.getName();
+		String context = "TTtoF " + Converter.VERSION
+				+ "\n" + LemmaLibrary.getFingerprint()
+				+ "\n" + FitchFileManager.getFormatSignature()
+				+ "\n" + name.substring(name.lastIndexOf('.') + 1) + "\n";
+		digest.update(context.getBytes(StandardCharsets.UTF_8));
+		byte[] buffer = new byte[1 << 16];
+		try (InputStream in = Files.newInputStream(input.toPath())) {
+			int n;
+			while((n = in.read(buffer)) > 0){
+				digest.update(buffer, 0, n);
+			}
+		}
+		return String.format("%064x", new BigInteger(1, digest.digest()));
+	}
+	
+	/**
+	 * Copies a cached result to the output file, if there is one
+	 * @param key key of the input, from key(File)
+	 * @param output Fitch file to write
+	 * @return true if the result was cached and copied, false if the input must be converted
+	 */
+	public boolean fetch(String key, File output){
+		Path entry = entryPath(key);
+		synchronized(this){
+			if(entries.get(key) == null){ //get, to mark it as recently used
+				misses++;
+				return false;
+			}
+		}
+		try {
+			Files.copy(entry, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			//deleted by another process sharing the directory, or the output could not be written
+			synchronized(this){
+				Long size = entries.remove(key);
+				if(size != null){
+					totalBytes -= size;
+				}
+				misses++;
+			}
+			return false;
+		}
+		synchronized(this){
+			hits++;
+		}
+		return true;
+	}
+	
+	/**
+	 * Adds a converted Fitch file to the cache, evicting the least recently used entries if the
+	 * cache grows past its size
+	 * @param key key of the input, from key(File)
+	 * @param output Fitch file converted from the input
+	 * @return true if the file was cached
+	 */
+	public boolean store(String key, File output){
+		Path entry = entryPath(key);
+		Path temp = null;
+		long size;
+		try {
+			size = Files.size(output.toPath());
+			if(size > maxBytes){
+				return false;
+			}
+			Files.createDirectories(entry.getParent());
+			temp = Files.createTempFile(entry.getParent(), key, ".tmp");
+			Files.copy(output.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+			try {
+				Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			if(temp != null){
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException deleteException) {
+					//already failed to cache it
+				}
+			}
+			return false;
+		}
+		synchronized(this){
+			Long previous = entries.put(key, size);
+			totalBytes += size - (previous == null ? 0 : previous);
+			stores++;
+			evict();
+		}
+		return true;
+	}
+	
+	private Path entryPath(String key){
+		return dir.resolve(key.substring(0, 2)).resolve(key + ENTRY_EXTENSION);
+	}
+	
+	/**
+	 * Deletes the least recently used entries until the cache fits its size
+	 */
+	private void evict(){
+		Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+		while(totalBytes > maxBytes && it.hasNext()){
+			Map.Entry<String, Long> eldest = it.next();
+			try {
+				Files.deleteIfExists(entryPath(eldest.getKey()));
+			} catch (IOException e) {
+				//left for the next run to evict
+			}
+			totalBytes -= eldest.getValue();
+			it.remove();
+			evictions++;
+		}
+	}
+	
+	public long getMaxBytes(){
+		return maxBytes;
+	}
+	
+	public synchronized long getBytes(){
+		return totalBytes;
+	}
+	
+	public synchronized int size(){
+		return entries.size();
+	}
+	
+	public synchronized long getHits(){
+		return hits;
+	}
+	
+	public synchronized long getMisses(){
+		return misses;
+	}
+	
+	public synchronized long getStores(){
+		return stores;
+	}
+	
+	public synchronized long getEvictions(){
+		return evictions;
+	}
+	
+	/**
+	 * @return fraction of lookups that were hits, or 0 if there were none
+	 */
+	public synchronized double getHitRate(){
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+	
+	public synchronized String toString(){
+		return "Result cache: " + hits + " hits, " + misses + " misses ("
+				+ Math.round(getHitRate() * 100) + "% hit rate), " + stores + " stored, "
+				+ evictions + " evictions, " + entries.size() + " entries, "
+				+ totalBytes + "/" + maxBytes + " bytes";
+	}
+}
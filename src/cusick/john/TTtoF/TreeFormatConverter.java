@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+
+package cusick.john.TTtoF;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import perl.aaron.TruthTrees.BinaryTreeFile;
+import perl.aaron.TruthTrees.Branch;
+import perl.aaron.TruthTrees.TruthTreeFileManager;
+
+/**
+ * Command line tool that converts truth tree files between the XML (.tft) and binary (.tftb)
+ * formats. Nothing is lost either way: converting a tree to the other format and back gives the
+ * same file as saving it again in its own format.
+ * 
+ * Usage: java -cp TruthTreeFormalizer.jar cusick.john.TTtoF.TreeFormatConverter [-o outputDir]
+ *        [--compact] input...
+ * 
+ * Inputs are expanded as BatchConverter expands them. Each X.tft is written as X.tftb and each
+ * X.tftb as X.tft, in the output directory or next to the input. --compact writes the XML
+ * without indentation.
+ */
+public class TreeFormatConverter {
+	
+	private static final String TRUTH_TREE_EXTENSION = "." + TruthTreeFileManager.EXTENSION;
+	private static final String BINARY_TREE_EXTENSION = "." + BinaryTreeFile.EXTENSION;
+	
+	private static final String USAGE =
+			"Usage: TreeFormatConverter [-o outputDir] [--compact] <file.tft | file.tftb | directory | glob>...";
+
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+	
+	/**
+	 * Parses the command line and converts every input
+	 * @param args command line arguments
+	 * @return exit status, 0 if every file converted, 1 if any failed, 2 on bad usage
+	 */
+	public static int run(String[] args){
+		File outputDir = null;
+		boolean compact = false;
+		List<String> inputArgs = new ArrayList<String>();
+		
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-o") || args[i].equals("--output")){
+				if(i + 1 >= args.length){
+					System.err.println(USAGE);
+					return 2;
+				}
+				outputDir = new File(args[++i]);
+			} else if(args[i].equals("--compact")){
+				compact = true;
+			} else if(args[i].equals("-h") || args[i].equals("--help")){
+				System.out.println(USAGE);
+				return 0;
+			} else{
+				inputArgs.add(args[i]);
+			}
+		}
+		
+		if(inputArgs.isEmpty()){
+			System.err.println(USAGE);
+			return 2;
+		}
+		
+		if(outputDir != null && !outputDir.isDirectory() && !outputDir.mkdirs()){
+			System.err.println("Could not create output directory " + outputDir);
+			return 2;
+		}
+		
+		Set<File> inputs = new LinkedHashSet<File>();
+		for(String inputArg : inputArgs){
+			try {
+				inputs.addAll(BatchConverter.collectInputs(inputArg));
+			} catch (IOException e) {
+				System.err.println("Could not read " + inputArg + ": " + e.getMessage());
+			}
+		}
+		
+		if(inputs.isEmpty()){
+			System.err.println("No " + TRUTH_TREE_EXTENSION + " or " + BINARY_TREE_EXTENSION + " files found");
+			return 1;
+		}
+		
+		int failed = 0;
+		for(File input : inputs){
+			File output = getOutputFile(input, outputDir);
+			if(output == null){
+				System.err.println("Not a truth tree file: " + input);
+				failed++;
+				continue;
+			}
+			Branch root = TruthTreeFileManager.loadFromFile(input);
+			if(root == null){
+				System.err.println("Could not read " + input);
+				failed++;
+			} else if(!TruthTreeFileManager.saveToFile(root, output, !compact)){
+				System.err.println("Could not write " + output);
+				failed++;
+			} else{
+				System.out.println("Converted " + input + " -> " + output);
+			}
+		}
+		System.out.println((inputs.size() - failed) + " of " + inputs.size() + " files converted");
+		return failed == 0 ? 0 : 1;
+	}
+	
+	/**
+	 * Maps an input tree file to the file in the other format it is converted to
+	 * @param input truth tree file
+	 * @param outputDir output directory, or null to write next to the input
+	 * @return output file, or null if the input has neither tree extension
+	 */
+	static File getOutputFile(File input, File outputDir){
+		String name = input.getName();
+		File dir = outputDir != null ? outputDir : input.getAbsoluteFile().getParentFile();
+		if(name.endsWith(TRUTH_TREE_EXTENSION)){
+			return new File(dir, name.substring(0, name.length() - TRUTH_TREE_EXTENSION.length()) + BINARY_TREE_EXTENSION);
+		} else if(name.endsWith(BINARY_TREE_EXTENSION)){
+			return new File(dir, name.substring(0, name.length() - BINARY_TREE_EXTENSION.length()) + TRUTH_TREE_EXTENSION);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,748 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+
+package cusick.john.TTtoF;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import perl.aaron.TruthTrees.BinaryTreeFile;
+import perl.aaron.TruthTrees.Branch;
+import perl.aaron.TruthTrees.BranchLine;
+import perl.aaron.TruthTrees.BranchTerminator;
+import perl.aaron.TruthTrees.ModelTreeBuilder;
+import perl.aaron.TruthTrees.TreeBuilder;
+import perl.aaron.TruthTrees.TruthTreeFileManager;
+import perl.aaron.TruthTrees.logic.AtomicStatement;
+import perl.aaron.TruthTrees.logic.Biconditional;
+import perl.aaron.TruthTrees.logic.Conditional;
+import perl.aaron.TruthTrees.logic.Conjunction;
+import perl.aaron.TruthTrees.logic.Disjunction;
+import perl.aaron.TruthTrees.logic.Negation;
+import perl.aaron.TruthTrees.logic.Statement;
+import perl.aaron.TruthTrees.logic.StatementFactory;
+
+/**
+ * Generates random, correctly decomposed and fully closed truth trees for load and stress testing.
+ * The same seed and settings always give the same tree.
+ * 
+ * A random truth assignment is chosen first and every atom's literal under it is a premise.
+ * The remaining premises are random formulas that are true under the assignment, and the negated
+ * conclusion is a formula that is false under it. Each formula is decomposed in every open branch
+ * as soon as it is added, and a branch is closed once it holds a literal that the assignment makes
+ * false, against that atom's premise literal. Since the negated conclusion is false, every branch
+ * of its decomposition closes, so the finished tree is closed.
+ * 
+ * Usage: java -cp TruthTreeFormalizer.jar cusick.john.TTtoF.TreeGenerator [--seed n] [--lines n]
+ *        [--atoms n] [--depth n] [--branching p] [--max-open n] [--weight connective=n]...
+ *        [--count n] [--compact] output.tft
+ * 
+ * With --count greater than 1, output.tft names the first of several trees, written as
+ * output-0.tft, output-1.tft and so on with consecutive seeds. An output ending in .tftb is written
+ * in the binary tree format. --compact writes the XML without
+ * indentation, which matters for large trees since each nested branch indents its lines further.
+ */
+public class TreeGenerator {
+	
+	/**
+	 * The main connective of a generated formula. Everything but conjunctions, disjunctions and
+	 * double negations is converted with a lemma.
+	 */
+	public enum Connective {
+		CONJUNCTION, DISJUNCTION, CONDITIONAL, BICONDITIONAL,
+		NEGATED_CONJUNCTION, NEGATED_DISJUNCTION, NEGATED_CONDITIONAL, NEGATED_BICONDITIONAL,
+		DOUBLE_NEGATION
+	}
+	
+	private static final String USAGE =
+			"Usage: TreeGenerator [--seed n] [--lines n] [--atoms n] [--depth n] [--branching p]"
+			+ " [--max-open n] [--weight connective=n]... [--count n] [--compact] output.tft";
+	
+	private static final int MAX_RETRIES = 8;
+	private static final long COST_LIMIT = 1L << 40;
+	
+	private final long seed;
+	private int lines = 1000;
+	private int atoms = 6;
+	private int maxDepth = 3;
+	private double branchingFactor = 0.5;
+	private int maxOpenBranches = 64;
+	private final Map<Connective, Integer> weights = new EnumMap<Connective, Integer>(Connective.class);
+	
+	/**
+	 * Creates a generator with the default settings: about 1000 lines over 6 atoms, formulas up to
+	 * depth 3, branching factor 0.5, at most 64 open branches and every connective equally likely
+	 * @param seed seed of the random choices
+	 */
+	public TreeGenerator(long seed){
+		this.seed = seed;
+		for(Connective connective : Connective.values()){
+			weights.put(connective, 1);
+		}
+	}
+	
+	/**
+	 * Sets the number of lines to aim for. Premises are added while their decompositions still fit,
+	 * so the tree comes out somewhat under this size; a size below the minimum of a premise per
+	 * atom plus the negated conclusion and its decomposition gives that minimum instead.
+	 * @param lines approximate number of lines, including premises and terminators
+	 */
+	public void setLines(int lines){
+		if(lines < 1){
+			throw new IllegalArgumentException("lines must be positive");
+		}
+		this.lines = lines;
+	}
+	
+	/**
+	 * @param atoms number of distinct atomic statements, each a premise literal
+	 */
+	public void setAtoms(int atoms){
+		if(atoms < 1){
+			throw new IllegalArgumentException("atoms must be positive");
+		}
+		this.atoms = atoms;
+	}
+	
+	/**
+	 * @param maxDepth greatest nesting depth of a generated formula; each premise's depth is chosen
+	 * between 1 and this
+	 */
+	public void setMaxDepth(int maxDepth){
+		if(maxDepth < 1){
+			throw new IllegalArgumentException("depth must be positive");
+		}
+		this.maxDepth = maxDepth;
+	}
+	
+	/**
+	 * Sets how often a split leaves both of its branches open. At 0 one side of every split closes
+	 * straight away, so the tree is a long spine; at 1 the tree widens whenever it can, up to the
+	 * maximum number of open branches. Deep spines may need a larger thread stack (-Xss) to load.
+	 * @param branchingFactor probability between 0 and 1
+	 */
+	public void setBranchingFactor(double branchingFactor){
+		if(!(branchingFactor >= 0 && branchingFactor <= 1)){
+			throw new IllegalArgumentException("branching factor must be between 0 and 1");
+		}
+		this.branchingFactor = branchingFactor;
+	}
+	
+	/**
+	 * @param maxOpenBranches number of open branches past which splits stop widening the tree
+	 */
+	public void setMaxOpenBranches(int maxOpenBranches){
+		if(maxOpenBranches < 1){
+			throw new IllegalArgumentException("maximum open branches must be positive");
+		}
+		this.maxOpenBranches = maxOpenBranches;
+	}
+	
+	/**
+	 * Sets the relative likelihood of a connective being the main connective of a formula
+	 * @param connective the connective
+	 * @param weight relative weight, 0 to never use it
+	 */
+	public void setWeight(Connective connective, int weight){
+		if(weight < 0){
+			throw new IllegalArgumentException("weight must not be negative");
+		}
+		weights.put(connective, weight);
+		int total = 0;
+		for(int w : weights.values()){
+			total += w;
+		}
+		if(total == 0){
+			weights.put(connective, 0);
+			throw new IllegalArgumentException("at least one connective needs a positive weight");
+		}
+	}
+	
+	/**
+	 * @return a generator with the same settings and a different seed
+	 */
+	public TreeGenerator withSeed(long seed){
+		TreeGenerator copy = new TreeGenerator(seed);
+		copy.lines = lines;
+		copy.atoms = atoms;
+		copy.maxDepth = maxDepth;
+		copy.branchingFactor = branchingFactor;
+		copy.maxOpenBranches = maxOpenBranches;
+		copy.weights.putAll(weights);
+		return copy;
+	}
+	
+	/**
+	 * Generates a tree with the current settings
+	 * @return root branch (its root is the premise branch)
+	 */
+	public Branch generate(){
+		return new Generation().run();
+	}
+	
+	/**
+	 * The state of generating one tree
+	 */
+	private final class Generation {
+		private final Random random = new Random(seed);
+		private final TreeBuilder builder = new ModelTreeBuilder();
+		private final Map<Statement, Boolean> assignment = new HashMap<Statement, Boolean>();
+		private final Map<Statement, BranchLine> premiseLiterals = new HashMap<Statement, BranchLine>();
+		/** the first false literal in each open branch that has one */
+		private final Map<Branch, BranchLine> contradictions = new HashMap<Branch, BranchLine>();
+		private List<Branch> openBranches;
+		private boolean mayWiden;
+		private int lineCount;
+		
+		Branch run(){
+			Branch root = builder.createRoot();
+			Branch premises = root.getRoot();
+			for(int i = 0; i < atoms; i++){
+				Statement atom = StatementFactory.atomic(atomName(i));
+				boolean value = random.nextBoolean();
+				assignment.put(atom, value);
+				premiseLiterals.put(atom, addLine(premises, value ? atom : StatementFactory.negation(atom)));
+			}
+			
+			// the negated conclusion is chosen first so that room is kept for it in every branch
+			mayWiden = false;
+			Statement negatedConclusion = fittingFormula(false, 1, 0, lines - lineCount - 1);
+			long conclusionCost = cost(negatedConclusion);
+			
+			openBranches = new ArrayList<Branch>();
+			openBranches.add(root);
+			while(true){
+				mayWiden = openBranches.size() < maxOpenBranches;
+				Statement premise = fittingFormula(true, openBranches.size(), conclusionCost, lines - lineCount);
+				if(premise == null){
+					break;
+				}
+				openBranches = close(decompose(addLine(premises, premise), openBranches));
+			}
+			
+			openBranches = close(decompose(addLine(premises, negatedConclusion), openBranches));
+			if(!openBranches.isEmpty()){
+				throw new IllegalStateException("Generated tree did not close");
+			}
+			
+			builder.finish(root);
+			return root;
+		}
+		
+		/**
+		 * Tries a few random formulas for one whose decomposition in every open branch, followed by
+		 * that of the negated conclusion in every branch left, fits in the remaining lines
+		 * @param value the formula's value under the assignment
+		 * @param branches number of open branches it will be decomposed in
+		 * @param conclusionCost lines the negated conclusion adds to each branch
+		 * @param remaining lines left
+		 * @return the formula, or null if none fit (a premise) or the smallest tried (the conclusion)
+		 */
+		private Statement fittingFormula(boolean value, int branches, long conclusionCost, long remaining){
+			Statement smallest = null;
+			long smallestCost = Long.MAX_VALUE;
+			for(int retry = 0; retry < MAX_RETRIES; retry++){
+				Statement candidate = formula(1 + random.nextInt(maxDepth), value);
+				long[] expansion = expansion(candidate);
+				long candidateBranches = multiply(branches, expansion[1]);
+				long total = 1 + multiply(branches, expansion[0] + expansion[1])
+						+ multiply(candidateBranches, conclusionCost);
+				if(total <= remaining){
+					return candidate;
+				}
+				if(total < smallestCost){
+					smallest = candidate;
+					smallestCost = total;
+				}
+			}
+			return value ? null : smallest;
+		}
+		
+		/**
+		 * Builds a random formula with the given value under the assignment
+		 */
+		private Statement formula(int depth, boolean value){
+			if(depth == 0){
+				Statement atom = StatementFactory.atomic(atomName(random.nextInt(atoms)));
+				return assignment.get(atom) == value ? atom : StatementFactory.negation(atom);
+			}
+			
+			Connective connective = pickConnective();
+			if(connective == Connective.DOUBLE_NEGATION){
+				return StatementFactory.negation(StatementFactory.negation(formula(depth - 1, value)));
+			}
+			
+			boolean[] operandValues = pickOperandValues(connective, value);
+			// one operand carries the full depth, the other is anywhere up to it
+			int leftDepth = depth - 1;
+			int rightDepth = random.nextInt(depth);
+			if(random.nextBoolean()){
+				int swap = leftDepth;
+				leftDepth = rightDepth;
+				rightDepth = swap;
+			}
+			Statement a = formula(leftDepth, operandValues[0]);
+			Statement b = formula(rightDepth, operandValues[1]);
+			// the converter tells the branches of a split apart by their statements, so it can't
+			// convert a split like that of B ↔ B; with very few atoms this may be unavoidable
+			for(int retry = 0; retry < MAX_RETRIES && a.equals(b); retry++){
+				b = formula(rightDepth, operandValues[1]);
+			}
+			
+			switch(connective){
+			case CONJUNCTION:
+				return StatementFactory.conjunction(a, b);
+			case DISJUNCTION:
+				return StatementFactory.disjunction(a, b);
+			case CONDITIONAL:
+				return StatementFactory.conditional(a, b);
+			case BICONDITIONAL:
+				return StatementFactory.biconditional(a, b);
+			case NEGATED_CONJUNCTION:
+				return StatementFactory.negation(StatementFactory.conjunction(a, b));
+			case NEGATED_DISJUNCTION:
+				return StatementFactory.negation(StatementFactory.disjunction(a, b));
+			case NEGATED_CONDITIONAL:
+				return StatementFactory.negation(StatementFactory.conditional(a, b));
+			default:
+				return StatementFactory.negation(StatementFactory.biconditional(a, b));
+			}
+		}
+		
+		private Connective pickConnective(){
+			int total = 0;
+			for(int weight : weights.values()){
+				total += weight;
+			}
+			int pick = random.nextInt(total);
+			for(Map.Entry<Connective, Integer> entry : weights.entrySet()){
+				pick -= entry.getValue();
+				if(pick < 0){
+					return entry.getKey();
+				}
+			}
+			throw new IllegalStateException();
+		}
+		
+		/**
+		 * Picks operand values that give the connective the wanted value. Where a choice would leave
+		 * both branches of the split open, it is taken with the branching factor's probability.
+		 */
+		private boolean[] pickOperandValues(Connective connective, boolean value){
+			List<boolean[]> widening = new ArrayList<boolean[]>();
+			List<boolean[]> narrowing = new ArrayList<boolean[]>();
+			for(int i = 0; i < 4; i++){
+				boolean a = (i & 2) != 0;
+				boolean b = (i & 1) != 0;
+				if(evaluate(connective, a, b) != value){
+					continue;
+				}
+				if(widens(connective, a, b)){
+					widening.add(new boolean[]{a, b});
+				} else{
+					narrowing.add(new boolean[]{a, b});
+				}
+			}
+			boolean widen = !widening.isEmpty() && (narrowing.isEmpty()
+					|| (mayWiden && random.nextDouble() < branchingFactor));
+			List<boolean[]> choices = widen ? widening : narrowing;
+			return choices.get(random.nextInt(choices.size()));
+		}
+		
+		/**
+		 * Adds a line, noting it if it is the first false literal of its branch
+		 */
+		private BranchLine addLine(Branch branch, Statement statement){
+			BranchLine line = builder.addStatement(branch, statement);
+			lineCount++;
+			if(branch.getRoot() != null && !contradictions.containsKey(branch)){
+				Statement atom = statement instanceof Negation ? ((Negation) statement).getNegand() : statement;
+				if(atom instanceof AtomicStatement && assignment.get(atom) != (atom == statement)){
+					contradictions.put(branch, line);
+				}
+			}
+			return line;
+		}
+		
+		/**
+		 * Decomposes a line in each of the given open branches, then fully decomposes what that
+		 * added
+		 * @return the open branches below the given ones afterwards
+		 */
+		private List<Branch> decompose(BranchLine line, List<Branch> branches){
+			List<List<Statement>> parts = decomposition(line.getStatement());
+			if(parts == null){
+				return branches;
+			}
+			List<Branch> result = new ArrayList<Branch>();
+			for(Branch branch : branches){
+				if(parts.size() == 1){
+					result.addAll(extend(line, branch, parts.get(0)));
+				} else{
+					line.getSelectedBranches().add(branch);
+					BranchLine contradiction = contradictions.remove(branch);
+					for(List<Statement> part : parts){
+						Branch child = builder.addBranch(branch);
+						if(contradiction != null){
+							contradictions.put(child, contradiction);
+						}
+						result.addAll(extend(line, child, part));
+					}
+				}
+			}
+			return result;
+		}
+		
+		private List<Branch> extend(BranchLine from, Branch branch, List<Statement> statements){
+			List<BranchLine> added = new ArrayList<BranchLine>(statements.size());
+			for(Statement statement : statements){
+				BranchLine line = addLine(branch, statement);
+				from.getSelectedLines().add(line);
+				line.setDecomposedFrom(from);
+				added.add(line);
+			}
+			List<Branch> leaves = Collections.singletonList(branch);
+			for(BranchLine line : added){
+				leaves = decompose(line, leaves);
+			}
+			return leaves;
+		}
+		
+		/**
+		 * Terminates every branch holding a false literal
+		 * @return the branches left open
+		 */
+		private List<Branch> close(List<Branch> branches){
+			List<Branch> open = new ArrayList<Branch>();
+			for(Branch branch : branches){
+				BranchLine contradiction = contradictions.remove(branch);
+				if(contradiction == null){
+					open.add(branch);
+					continue;
+				}
+				Statement literal = contradiction.getStatement();
+				Statement atom = literal instanceof Negation ? ((Negation) literal).getNegand() : literal;
+				BranchTerminator terminator = builder.addTerminator(branch);
+				lineCount++;
+				terminator.getSelectedLines().add(contradiction);
+				terminator.getSelectedLines().add(premiseLiterals.get(atom));
+			}
+			return open;
+		}
+	}
+	
+	/**
+	 * Returns the lines that fully decomposing a statement adds to a branch, including a terminator
+	 * for every resulting branch, which bounds those actually added since some branches stay open
+	 */
+	private static long cost(Statement statement){
+		long[] expansion = expansion(statement);
+		return expansion[0] + expansion[1];
+	}
+	
+	/**
+	 * Returns the number of lines that fully decomposing a statement adds below it in a branch,
+	 * and the number of branches it ends up split into, both capped at COST_LIMIT
+	 */
+	private static long[] expansion(Statement statement){
+		List<List<Statement>> parts = decomposition(statement);
+		if(parts == null){
+			return new long[]{0, 1};
+		}
+		long lines = 0;
+		long leaves = 0;
+		for(List<Statement> part : parts){
+			// each statement of the part is decomposed in every branch the ones before it left
+			long partLeaves = 1;
+			lines += part.size();
+			for(Statement component : part){
+				long[] componentExpansion = expansion(component);
+				lines = Math.min(lines + multiply(partLeaves, componentExpansion[0]), COST_LIMIT);
+				partLeaves = multiply(partLeaves, componentExpansion[1]);
+			}
+			leaves = Math.min(leaves + partLeaves, COST_LIMIT);
+		}
+		return new long[]{lines, leaves};
+	}
+	
+	private static long multiply(long a, long b){
+		if(a != 0 && b > COST_LIMIT / a){
+			return COST_LIMIT;
+		}
+		return Math.min(a * b, COST_LIMIT);
+	}
+	
+	private static String atomName(int index){
+		String letter = String.valueOf((char) ('A' + index % 26));
+		return index < 26 ? letter : letter + (index / 26);
+	}
+	
+	private static boolean evaluate(Connective connective, boolean a, boolean b){
+		switch(connective){
+		case CONJUNCTION:
+			return a && b;
+		case DISJUNCTION:
+			return a || b;
+		case CONDITIONAL:
+			return !a || b;
+		case BICONDITIONAL:
+			return a == b;
+		case NEGATED_CONJUNCTION:
+			return !(a && b);
+		case NEGATED_DISJUNCTION:
+			return !(a || b);
+		case NEGATED_CONDITIONAL:
+			return a && !b;
+		case NEGATED_BICONDITIONAL:
+			return a != b;
+		default:
+			throw new IllegalArgumentException(connective.toString());
+		}
+	}
+	
+	/**
+	 * Whether decomposing the connective with these operand values splits into two branches that
+	 * both stay open, i.e. every statement on both sides is true
+	 */
+	private static boolean widens(Connective connective, boolean a, boolean b){
+		switch(connective){
+		case DISJUNCTION:
+			return a && b;
+		case CONDITIONAL:
+			return !a && b;
+		case NEGATED_CONJUNCTION:
+			return !a && !b;
+		default:
+			// biconditionals and their negations always close one side; the rest don't split
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns the statements each branch of a decomposition holds, or null for a literal
+	 */
+	private static List<List<Statement>> decomposition(Statement statement){
+		List<List<Statement>> parts = new ArrayList<List<Statement>>();
+		if(statement instanceof Conjunction){
+			parts.add(((Conjunction) statement).getOperands());
+		} else if(statement instanceof Disjunction){
+			for(Statement disjunct : ((Disjunction) statement).getOperands()){
+				parts.add(Collections.singletonList(disjunct));
+			}
+		} else if(statement instanceof Conditional){
+			List<Statement> operands = ((Conditional) statement).getOperands();
+			parts.add(Collections.singletonList(StatementFactory.negation(operands.get(0))));
+			parts.add(Collections.singletonList(operands.get(1)));
+		} else if(statement instanceof Biconditional){
+			List<Statement> operands = ((Biconditional) statement).getOperands();
+			parts.add(operands);
+			parts.add(negateAll(operands));
+		} else if(statement instanceof Negation){
+			Statement negand = ((Negation) statement).getNegand();
+			if(negand instanceof Conjunction){
+				for(Statement conjunct : ((Conjunction) negand).getOperands()){
+					parts.add(Collections.singletonList(StatementFactory.negation(conjunct)));
+				}
+			} else if(negand instanceof Disjunction){
+				parts.add(negateAll(((Disjunction) negand).getOperands()));
+			} else if(negand instanceof Conditional){
+				List<Statement> operands = ((Conditional) negand).getOperands();
+				parts.add(Arrays.asList(operands.get(0), StatementFactory.negation(operands.get(1))));
+			} else if(negand instanceof Biconditional){
+				List<Statement> operands = ((Biconditional) negand).getOperands();
+				parts.add(Arrays.asList(StatementFactory.negation(operands.get(0)), operands.get(1)));
+				parts.add(Arrays.asList(operands.get(0), StatementFactory.negation(operands.get(1))));
+			} else if(negand instanceof Negation){
+				parts.add(Collections.singletonList(((Negation) negand).getNegand()));
+			} else{
+				return null;
+			}
+		} else{
+			return null;
+		}
+		return parts;
+	}
+	
+	private static List<Statement> negateAll(List<Statement> statements){
+		List<Statement> negated = new ArrayList<Statement>(statements.size());
+		for(Statement statement : statements){
+			negated.add(StatementFactory.negation(statement));
+		}
+		return negated;
+	}
+	
+	/**
+	 * Counts the lines of a tree, premises and terminators included
+	 * @param root root branch (its root is the premise branch)
+	 * @return number of lines
+	 */
+	public static int countLines(Branch root){
+		int count = 0;
+		Deque<Branch> stack = new ArrayDeque<Branch>();
+		stack.push(root.getRoot());
+		while(!stack.isEmpty()){
+			Branch branch = stack.pop();
+			count += branch.numLines();
+			for(Branch child : branch.getBranches()){
+				stack.push(child);
+			}
+		}
+		return count;
+	}
+	
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+	
+	/**
+	 * Parses the command line and writes the trees
+	 * @param args command line arguments
+	 * @return exit status, 0 if every tree was written, 1 if any failed, 2 on bad usage
+	 */
+	public static int run(String[] args){
+		long seed = 0;
+		int count = 1;
+		boolean compact = false;
+		File output = null;
+		TreeGenerator generator;
+		List<String> settings = new ArrayList<String>();
+		
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-h") || args[i].equals("--help")){
+				System.out.println(USAGE);
+				return 0;
+			} else if(args[i].equals("--compact")){
+				compact = true;
+			} else if(args[i].startsWith("--")){
+				if(i + 1 >= args.length){
+					System.err.println(USAGE);
+					return 2;
+				}
+				settings.add(args[i]);
+				settings.add(args[++i]);
+			} else if(output == null){
+				output = new File(args[i]);
+			} else{
+				System.err.println(USAGE);
+				return 2;
+			}
+		}
+		if(output == null){
+			System.err.println(USAGE);
+			return 2;
+		}
+		
+		// the seed is needed before the generator can be created
+		for(int i = 0; i < settings.size(); i += 2){
+			if(settings.get(i).equals("--seed")){
+				try {
+					seed = Long.parseLong(settings.get(i + 1));
+				} catch (NumberFormatException e) {
+					System.err.println(USAGE);
+					return 2;
+				}
+			}
+		}
+		generator = new TreeGenerator(seed);
+		
+		for(int i = 0; i < settings.size(); i += 2){
+			String option = settings.get(i);
+			String value = settings.get(i + 1);
+			try {
+				if(option.equals("--seed")){
+					continue;
+				} else if(option.equals("--lines")){
+					generator.setLines(Integer.parseInt(value));
+				} else if(option.equals("--atoms")){
+					generator.setAtoms(Integer.parseInt(value));
+				} else if(option.equals("--depth")){
+					generator.setMaxDepth(Integer.parseInt(value));
+				} else if(option.equals("--branching")){
+					generator.setBranchingFactor(Double.parseDouble(value));
+				} else if(option.equals("--max-open")){
+					generator.setMaxOpenBranches(Integer.parseInt(value));
+				} else if(option.equals("--weight")){
+					int separator = value.indexOf('=');
+					if(separator < 0){
+						throw new IllegalArgumentException("expected connective=weight, not " + value);
+					}
+					Connective connective = Connective.valueOf(
+							value.substring(0, separator).trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+					generator.setWeight(connective, Integer.parseInt(value.substring(separator + 1).trim()));
+				} else if(option.equals("--count")){
+					count = Integer.parseInt(value);
+					if(count < 1){
+						throw new IllegalArgumentException("count must be positive");
+					}
+				} else{
+					System.err.println(USAGE);
+					return 2;
+				}
+			} catch (IllegalArgumentException e) {
+				// includes NumberFormatException and unknown connective names
+				System.err.println(option + ": " + e.getMessage());
+				System.err.println(USAGE);
+				return 2;
+			}
+		}
+		
+		int status = 0;
+		for(int k = 0; k < count; k++){
+			File file = output;
+			if(count > 1){
+				String name = output.getName();
+				String extension = BinaryTreeFile.isBinaryTreeFile(output) ? BinaryTreeFile.EXTENSION : TruthTreeFileManager.EXTENSION;
+				if(name.endsWith("." + extension)){
+					name = name.substring(0, name.lastIndexOf('.'));
+				}
+				file = new File(output.getAbsoluteFile().getParentFile(), name + "-" + k + "." + extension);
+			}
+			TreeGenerator current = generator;
+			if(k > 0){
+				current = generator.withSeed(seed + k);
+			}
+			Branch root = current.generate();
+			if(TruthTreeFileManager.saveToFile(root, file, !compact)){
+				System.out.println(file + ": " + countLines(root) + " lines");
+			} else{
+				System.err.println("Could not write " + file);
+				status = 1;
+			}
+		}
+		return status;
+	}
+}
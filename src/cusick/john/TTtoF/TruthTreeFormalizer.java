@@ -33,11 +33,17 @@ import javax.swing.UIManager;
 import cusick.john.TTtoF.graphics.ConverterPanel;
 
 /** 
- * Contains main that launches GUI
+ * Contains main that launches GUI, or converts from the command line
+ * (see BatchConverter) when arguments are given
  */
 public class TruthTreeFormalizer {
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            BatchConverter.main(args);
+            return;
+        }
+        
         //Schedule a job for the event dispatch thread:
         //creating and showing this application's GUI.
         SwingUtilities.invokeLater(new Runnable() {
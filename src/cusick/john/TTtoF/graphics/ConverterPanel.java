@@ -36,6 +36,15 @@ import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
@@ -45,15 +54,22 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingWorker;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
+import cusick.john.TTtoF.BatchConverter;
 import cusick.john.TTtoF.Converter;
+import perl.aaron.TruthTrees.BinaryTreeFile;
 
 /**
  * ConverterPanel.java uses these files:
  *   images/Open16.gif
  *   images/Save16.gif
  *   images/Convert.gif
+ * 
+ * Conversions run in the background, one SwingWorker per input file, on a pool with a thread per
+ * processor, so the window stays responsive and several queued files convert at once. Each phase
+ * is reported to the log as it starts, and Cancel stops every queued and running conversion.
  */
 public class ConverterPanel extends JPanel
                              implements ActionListener {
@@ -64,21 +80,28 @@ public class ConverterPanel extends JPanel
 	 */
 	private static final long serialVersionUID = 3470483766196649684L;
 	private File ttFile = null;
+	private File[] ttFiles = new File[0];
 	private File fitchFile = null;
 	
 	private static final String TRUTH_TREE_EXTENSION = "tft";
+	private static final String BINARY_TREE_EXTENSION = BinaryTreeFile.EXTENSION;
 	private static final String FITCH_EXTENSION = "prf";
     
 	private static final String OPEN_BUTTON_TEXT = "Select Input Truth Tree...";
 	private static final String SAVE_BUTTON_TEXT = "Select Output Fitch File...";
 	private static final String CONVERT_BUTTON_TEXT = "Convert";
+	private static final String CANCEL_BUTTON_TEXT = "Cancel";
 	
 	static private final String newline = "\n";
     
     
-    private JButton openButton, saveButton, convertButton;
+    private JButton openButton, saveButton, convertButton, cancelButton;
     private JTextArea log;
     private JFileChooser fc;
+    
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+    		Runtime.getRuntime().availableProcessors(), CONVERSION_THREADS);
+    private final Set<ConversionTask> tasks = new LinkedHashSet<ConversionTask>(); //queued or running
 
     /**
      * Panel for the Truth Tree Formalizer GUI, altered from a Oracle boiler plate, FileChooserDemo:
@@ -153,6 +176,10 @@ public class ConverterPanel extends JPanel
                                  createImageIcon("./images/Convert.gif"));
         convertButton.setEnabled(false); 
         convertButton.addActionListener(this);
+        
+        cancelButton = new JButton(CANCEL_BUTTON_TEXT);
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(this);
 
         //For layout purposes, put the buttons in a separate panel
         JPanel buttonPanel = new JPanel(); //use FlowLayout
@@ -161,6 +188,7 @@ public class ConverterPanel extends JPanel
         
         JPanel convertButtonPanel = new JPanel(); //use FlowLayout
         convertButtonPanel.add(convertButton);
+        convertButtonPanel.add(cancelButton);
         
         
         //Add the buttons and the log to this panel.
@@ -175,23 +203,35 @@ public class ConverterPanel extends JPanel
         if (e.getSource() == openButton) {
         	
         	FileNameExtensionFilter treeFilter = new FileNameExtensionFilter(
-        			  TRUTH_TREE_EXTENSION + " files(*." + TRUTH_TREE_EXTENSION + ")",
-        			  TRUTH_TREE_EXTENSION);
+        			  TRUTH_TREE_EXTENSION + " files(*." + TRUTH_TREE_EXTENSION + ", *." + BINARY_TREE_EXTENSION + ")",
+        			  TRUTH_TREE_EXTENSION, BINARY_TREE_EXTENSION);
         	
         	fc.addChoosableFileFilter(treeFilter);
     		fc.setFileFilter(treeFilter);
+    		fc.setMultiSelectionEnabled(true);
         	
             int returnVal = fc.showOpenDialog(ConverterPanel.this);
+            fc.setMultiSelectionEnabled(false);
 
             if (returnVal == JFileChooser.APPROVE_OPTION) {
-                ttFile = fc.getSelectedFile();
+                ttFiles = fc.getSelectedFiles();
+                if (ttFiles.length == 0) {
+                	ttFiles = new File[] { fc.getSelectedFile() };
+                }
+                ttFile = ttFiles[0];
                 //This is where a real application would open the file.
                 
                 //TODO can overwrite log to keep track of input and output file (just keep 2 active lines)
                 
-                log.append("Opening: " + ttFile.getName() + newline);
+                for (File file : ttFiles) {
+                	log.append("Opening: " + file.getName() + newline);
+                }
+                if (ttFiles.length > 1) {
+                	log.append("Each Fitch file is written next to its truth tree, or in the folder of the selected output file." + newline);
+                }
             } else {
                 ttFile = null;
+                ttFiles = new File[0];
                 
                 log.append("Open command cancelled by user." + newline);
             }
@@ -227,25 +267,111 @@ public class ConverterPanel extends JPanel
             log.setCaretPosition(log.getDocument().getLength());
         } else if (e.getSource() == convertButton) {
             
-            //This is where a real application would convert.
-            Converter converter= new Converter();
-        	converter.truthTreeToFitch(ttFile, fitchFile);
-              
-        	log.append("Convert command executed by user." + newline);
+            for (File input : ttFiles) {
+            	File output = ttFiles.length == 1 ? fitchFile
+            			: BatchConverter.getOutputFile(input, fitchFile == null ? null : fitchFile.getAbsoluteFile().getParentFile());
+            	ConversionTask task = new ConversionTask(input, output);
+            	tasks.add(task);
+            	log.append("Queued: " + input.getName() + " -> " + output.getName() + newline);
+            	executor.execute(task);
+            }
+            cancelButton.setEnabled(true);
             log.setCaretPosition(log.getDocument().getLength());
+        } else if (e.getSource() == cancelButton) {
+        	
+        	for (ConversionTask task : new ArrayList<ConversionTask>(tasks)) {
+        		task.cancel(true);
+        	}
         }
         
     }
     
     
     private void updateConvertButton(){
-    	if(ttFile != null && fitchFile != null){
+    	if(ttFiles.length > 1 || (ttFile != null && fitchFile != null)){
         	convertButton.setEnabled(true); 
         } else{
         	convertButton.setEnabled(false); 
         }
     }
     
+    /**
+     * Converts one file in the background, publishing each phase to the log
+     */
+    private final class ConversionTask extends SwingWorker<Long, String> {
+    	private final File input;
+    	private final File output;
+    	
+    	ConversionTask(File input, File output){
+    		this.input = input;
+    		this.output = output;
+    	}
+    	
+    	@Override
+    	protected Long doInBackground(){
+    		long start = System.nanoTime();
+    		new Converter().truthTreeToFitch(input, output, new Converter.ProgressListener() {
+    			@Override
+    			public void phaseStarted(Converter.Phase phase){
+    				publish(input.getName() + ": " + phaseText(phase));
+    			}
+    		});
+    		return (System.nanoTime() - start) / 1000000;
+    	}
+    	
+    	@Override
+    	protected void process(List<String> messages){
+    		for (String message : messages) {
+    			log.append(message + newline);
+    		}
+    		log.setCaretPosition(log.getDocument().getLength());
+    	}
+    	
+    	@Override
+    	protected void done(){
+    		tasks.remove(this);
+    		cancelButton.setEnabled(!tasks.isEmpty());
+    		try {
+    			log.append("Converted " + input.getName() + " -> " + output.getName() + " in " + get() + " ms" + newline);
+    		} catch (CancellationException ex) {
+    			log.append("Cancelled: " + input.getName() + newline);
+    		} catch (ExecutionException ex) {
+    			Throwable cause = ex.getCause();
+    			if (cause instanceof CancellationException) {
+    				log.append("Cancelled: " + input.getName() + newline);
+    			} else {
+    				String message = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+    				log.append("Conversion of " + input.getName() + " failed: " + message + newline);
+    			}
+    		} catch (InterruptedException ex) {
+    			Thread.currentThread().interrupt(); //done runs after the work finished, so get does not wait
+    		}
+    		log.setCaretPosition(log.getDocument().getLength());
+    	}
+    }
+    
+    private static String phaseText(Converter.Phase phase){
+    	switch (phase) {
+    	case LOAD:
+    		return "loading";
+    	case CONVERT:
+    		return "converting";
+    	case INDEX:
+    		return "indexing";
+    	default:
+    		return "writing";
+    	}
+    }
+    
+    private static final ThreadFactory CONVERSION_THREADS = new ThreadFactory() {
+    	@Override
+    	public Thread newThread(Runnable r){
+    		Thread thread = new Thread(r, "conversion");
+    		thread.setDaemon(true);
+    		return thread;
+    	}
+    };
+    
     
 
     /** Returns an ImageIcon, or null if the path was invalid. */
@@ -286,6 +412,7 @@ public class ConverterPanel extends JPanel
 
 	public void setTtFile(File ttFile) {
 		this.ttFile = ttFile;
+		this.ttFiles = ttFile == null ? new File[0] : new File[] { ttFile };
 	}
 
 	public File getFitchFile() {
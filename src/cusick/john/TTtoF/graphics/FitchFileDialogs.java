@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016, John Cusick. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+
+package cusick.john.TTtoF.graphics;
+
+import java.io.File;
+
+import javax.swing.JFileChooser;
+import javax.swing.JPanel;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import cusick.john.TTtoF.Fitch.FitchFileManager;
+import cusick.john.TTtoF.Fitch.FitchProof;
+
+/**
+ * File dialog for saving a formal F proof from the GUI
+ */
+public class FitchFileDialogs {
+	private static final String EXTENSION = FitchFileManager.EXTENSION;
+	
+	private FitchFileDialogs() {}
+	
+	/** 
+	 * GUI call to save file
+	 * @param parent panel (GUI)
+	 * @param fileManager file manager to output the proof with
+	 * @param proof F proof in memory
+	 */
+	public static void saveFile(JPanel parent, FitchFileManager fileManager, FitchProof proof)
+	{
+		final JFileChooser fileChooser = new JFileChooser();
+		FileNameExtensionFilter tftFilter = new FileNameExtensionFilter(
+		  EXTENSION + " files(*." + EXTENSION + ")",
+		  EXTENSION);
+		
+		fileChooser.addChoosableFileFilter(tftFilter);
+		fileChooser.setFileFilter(tftFilter);
+		
+		if (fileChooser.showSaveDialog(parent) == JFileChooser.APPROVE_OPTION)
+		{
+			File file = fileChooser.getSelectedFile();
+			if (fileChooser.getFileFilter() == tftFilter && !file.getName().endsWith("." + EXTENSION))
+				file = new File(file.getAbsolutePath() + "." + EXTENSION);
+			System.out.println(file.getName());
+			fileManager.outputFitchFile(file, proof);
+		}
+	}
+}
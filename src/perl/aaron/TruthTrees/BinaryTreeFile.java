@@ -0,0 +1,481 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package perl.aaron.TruthTrees;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import perl.aaron.TruthTrees.logic.Statement;
+
+/**
+ * Reads and writes trees in a compact binary form, which holds exactly what a tft file holds:
+ * the content of every line, the branch structure and the decomposition references. Files are
+ * read through a memory mapped buffer.
+ * 
+ * Every integer is an unsigned varint (seven bits per byte, low bits first, high bit set on all
+ * but the last byte) unless noted otherwise. A file is
+ * <ul>
+ * <li>the magic bytes "TFTB" and the format version, one byte</li>
+ * <li>the number of strings, lines and branches (not counting the premise branch)</li>
+ * <li>the string table: each distinct line content once, as its length in UTF-8 bytes and
+ * the bytes</li>
+ * <li>the branches in the order a tft file holds them (depth first, each branch's lines
+ * before its children), starting with the premise branch. Each is its number of lines, each
+ * line, then its number of children; the premise branch always has one, the root branch.
+ * A line is 0 for a terminator or 1 + the index of its content in the string table, then its
+ * line references and its branch references, each as a count followed by the zigzag encoded
+ * difference of each target from the line's own index (for lines) or its branch's index (for
+ * branches, where the premise branch is -1 and the root branch 0).</li>
+ * <li>the CRC-32 of everything before it, four bytes, big-endian</li>
+ * </ul>
+ * Lines and branches are numbered in file order, as the index attributes of a tft file are,
+ * so converting between the two keeps every reference.
+ * @author Aaron Perl
+ *
+ */
+public class BinaryTreeFile {
+	public static final String EXTENSION = "tftb";
+	
+	public static final int VERSION = 1;
+	
+	private static final byte[] MAGIC = {'T', 'F', 'T', 'B'};
+	
+	private static final class InvalidTreeException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+		
+		InvalidTreeException(String message)
+		{
+			super(message);
+		}
+	}
+	
+	private final ByteBuffer in;
+	private final TreeBuilder treeBuilder;
+	private String[] strings;
+	private Statement[] statements;
+	private boolean[] parsed;
+	private final ArrayList<BranchLine> lines = new ArrayList<BranchLine>();
+	private final ArrayList<Branch> branches = new ArrayList<Branch>();
+	
+	// owner line index -> target index references, in file order
+	private int[] lineRefOwners = new int[16];
+	private int[] lineRefTargets = new int[16];
+	private int numLineRefs;
+	private int[] branchRefOwners = new int[16];
+	private int[] branchRefTargets = new int[16];
+	private int numBranchRefs;
+	
+	private BinaryTreeFile(ByteBuffer in, TreeBuilder treeBuilder)
+	{
+		this.in = in;
+		this.treeBuilder = treeBuilder;
+	}
+	
+	/**
+	 * @param file A file name
+	 * @return True if the file name has the binary tree extension
+	 */
+	public static boolean isBinaryTreeFile(File file)
+	{
+		return file.getName().endsWith("." + EXTENSION);
+	}
+	
+	/**
+	 * Loads a tree from a binary tree file, which is memory mapped rather than read
+	 * @param file The file to load
+	 * @param treeBuilder The builder to build the tree with
+	 * @return The root Branch of the decomposition (its root is the premise Branch),
+	 * or null if the file could not be read or does not hold a valid tree
+	 */
+	public static Branch loadFromFile(File file, TreeBuilder treeBuilder)
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return load(buffer, treeBuilder);
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Loads a tree from a buffer holding a whole binary tree file, from its position to its limit
+	 * @param buffer The buffer to read (its position is not changed)
+	 * @param treeBuilder The builder to build the tree with
+	 * @return The root Branch of the decomposition (its root is the premise Branch),
+	 * or null if the buffer does not hold a valid tree
+	 */
+	public static Branch load(ByteBuffer buffer, TreeBuilder treeBuilder)
+	{
+		ByteBuffer in = buffer.slice();
+		if (in.remaining() < MAGIC.length + 1 + 4)
+			return null;
+		int checksumAt = in.limit() - 4;
+		if (checksum(in, checksumAt) != in.getInt(checksumAt))
+			return null;
+		in.limit(checksumAt);
+		try {
+			return new BinaryTreeFile(in, treeBuilder).read();
+		}
+		catch (InvalidTreeException | BufferUnderflowException e)
+		{
+			return null;
+		}
+	}
+	
+	private static int checksum(ByteBuffer in, int length)
+	{
+		CRC32 crc = new CRC32();
+		ByteBuffer data = in.duplicate();
+		data.position(0).limit(length);
+		byte[] chunk = new byte[Math.min(length, 1 << 16)];
+		while (data.hasRemaining())
+		{
+			int n = Math.min(chunk.length, data.remaining());
+			data.get(chunk, 0, n);
+			crc.update(chunk, 0, n);
+		}
+		return (int) crc.getValue();
+	}
+	
+	private Branch read() throws InvalidTreeException
+	{
+		for (byte b : MAGIC)
+			if (in.get() != b)
+				throw new InvalidTreeException("not a binary tree file");
+		int version = in.get() & 0xFF;
+		if (version != VERSION)
+			throw new InvalidTreeException("unsupported version " + version);
+		
+		// every string, line and branch takes at least a byte, which bounds the counts
+		int numStrings = readCount();
+		int numLines = readCount();
+		int numBranches = readCount();
+		strings = new String[numStrings];
+		statements = new Statement[numStrings];
+		parsed = new boolean[numStrings];
+		lines.ensureCapacity(numLines);
+		branches.ensureCapacity(numBranches);
+		for (int i = 0; i < numStrings; i++)
+		{
+			byte[] bytes = new byte[readCount()];
+			in.get(bytes);
+			strings[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		
+		Branch rootBranch = treeBuilder.createRoot();
+		Branch premiseBranch = rootBranch.getRoot();
+		readLines(premiseBranch, -1);
+		if (readVarint() != 1)
+			throw new InvalidTreeException("the premises must have exactly one branch");
+		
+		// (branch, children still to read) pairs of the branches being read
+		Deque<Branch> branchStack = new ArrayDeque<Branch>();
+		Deque<int[]> remainingStack = new ArrayDeque<int[]>();
+		branchStack.push(premiseBranch);
+		remainingStack.push(new int[] {1});
+		while (!branchStack.isEmpty())
+		{
+			int[] remaining = remainingStack.peek();
+			if (remaining[0] == 0)
+			{
+				branchStack.pop();
+				remainingStack.pop();
+				continue;
+			}
+			remaining[0]--;
+			Branch parent = branchStack.peek();
+			Branch curBranch = parent == premiseBranch ? rootBranch : treeBuilder.addBranch(parent);
+			int branchIndex = branches.size();
+			branches.add(curBranch);
+			readLines(curBranch, branchIndex);
+			branchStack.push(curBranch);
+			remainingStack.push(new int[] {readCount()});
+		}
+		
+		if (in.hasRemaining() || lines.size() != numLines || branches.size() != numBranches)
+			throw new InvalidTreeException("the counts do not match the tree");
+		resolveReferences();
+		treeBuilder.finish(rootBranch);
+		return rootBranch;
+	}
+	
+	private void readLines(Branch curBranch, int branchIndex) throws InvalidTreeException
+	{
+		int numLines = readCount();
+		for (int i = 0; i < numLines; i++)
+		{
+			int owner = lines.size();
+			int content = readVarint();
+			if (content == 0)
+			{
+				if (branchIndex < 0)
+					throw new InvalidTreeException("premises can't be terminated");
+				lines.add(treeBuilder.addTerminator(curBranch));
+			}
+			else
+			{
+				if (content > strings.length)
+					throw new InvalidTreeException("no string " + (content - 1));
+				lines.add(treeBuilder.addStatement(curBranch, statement(content - 1)));
+			}
+			for (int n = readCount(); n > 0; n--)
+				addLineRef(owner, owner + readZigzag());
+			for (int n = readCount(); n > 0; n--)
+				addBranchRef(owner, branchIndex + readZigzag());
+		}
+	}
+	
+	/**
+	 * Each distinct content is parsed once, and the Statement shared by every line holding it
+	 * (as the ParseCache shares them)
+	 */
+	private Statement statement(int index)
+	{
+		if (!parsed[index])
+		{
+			statements[index] = ExpressionParser.parseExpression(strings[index]);
+			parsed[index] = true;
+		}
+		return statements[index];
+	}
+	
+	private void addLineRef(int owner, int target)
+	{
+		if (numLineRefs == lineRefOwners.length)
+		{
+			lineRefOwners = Arrays.copyOf(lineRefOwners, numLineRefs * 2);
+			lineRefTargets = Arrays.copyOf(lineRefTargets, numLineRefs * 2);
+		}
+		lineRefOwners[numLineRefs] = owner;
+		lineRefTargets[numLineRefs] = target;
+		numLineRefs++;
+	}
+	
+	private void addBranchRef(int owner, int target)
+	{
+		if (numBranchRefs == branchRefOwners.length)
+		{
+			branchRefOwners = Arrays.copyOf(branchRefOwners, numBranchRefs * 2);
+			branchRefTargets = Arrays.copyOf(branchRefTargets, numBranchRefs * 2);
+		}
+		branchRefOwners[numBranchRefs] = owner;
+		branchRefTargets[numBranchRefs] = target;
+		numBranchRefs++;
+	}
+	
+	/**
+	 * Adds every decomposition reference to the lines that made it, as TreeStreamLoader does
+	 */
+	private void resolveReferences() throws InvalidTreeException
+	{
+		for (int i = 0; i < numLineRefs; i++)
+		{
+			int target = lineRefTargets[i];
+			if (target < 0 || target >= lines.size())
+				throw new InvalidTreeException("no line " + target);
+			BranchLine curLine = lines.get(lineRefOwners[i]);
+			BranchLine curDecomp = lines.get(target);
+			curLine.getSelectedLines().add(curDecomp);
+			if (!(curLine instanceof BranchTerminator))
+				curDecomp.setDecomposedFrom(curLine);
+		}
+		for (int i = 0; i < numBranchRefs; i++)
+		{
+			int target = branchRefTargets[i];
+			if (target < 0 || target >= branches.size())
+				throw new InvalidTreeException("no branch " + target);
+			lines.get(branchRefOwners[i]).getSelectedBranches().add(branches.get(target));
+		}
+	}
+	
+	private int readVarint() throws InvalidTreeException
+	{
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7)
+		{
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+		throw new InvalidTreeException("varint too long");
+	}
+	
+	private int readCount() throws InvalidTreeException
+	{
+		int count = readVarint();
+		if (count < 0 || count > in.remaining())
+			throw new InvalidTreeException("count " + count + " past the end of the file");
+		return count;
+	}
+	
+	private int readZigzag() throws InvalidTreeException
+	{
+		int value = readVarint();
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	/**
+	 * Saves a tree to a binary tree file
+	 * @param root The root Branch of the decomposition (its root is the premise Branch)
+	 * @param file The file to write
+	 * @return True if the file was written, false otherwise
+	 */
+	public static boolean saveToFile(Branch root, File file)
+	{
+		try (OutputStream out = new FileOutputStream(file)) {
+			save(root, out);
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+	
+	/**
+	 * Writes a tree in the binary tree format
+	 * @param root The root Branch of the decomposition (its root is the premise Branch)
+	 * @param out The stream to write to (not closed)
+	 * @throws IOException If the stream could not be written
+	 */
+	public static void save(Branch root, OutputStream out) throws IOException
+	{
+		Branch premiseBranch = root.getRoot();
+		List<Branch> order = branchOrder(premiseBranch);
+		
+		// number the lines and branches as a tft file does, and collect the distinct contents
+		Map<BranchLine, Integer> lineIndexMap = new HashMap<BranchLine, Integer>();
+		Map<Branch, Integer> branchIndexMap = new HashMap<Branch, Integer>();
+		Map<String, Integer> stringIndexMap = new LinkedHashMap<String, Integer>();
+		for (int b = 0; b < order.size(); b++)
+		{
+			Branch curBranch = order.get(b);
+			branchIndexMap.put(curBranch, b - 1);
+			for (int i = 0; i < curBranch.numLines(); i++)
+			{
+				BranchLine curLine = curBranch.getLine(i);
+				lineIndexMap.put(curLine, lineIndexMap.size());
+				if (!(curLine instanceof BranchTerminator) && !stringIndexMap.containsKey(curLine.toString()))
+					stringIndexMap.put(curLine.toString(), stringIndexMap.size());
+			}
+		}
+		
+		CRC32 crc = new CRC32();
+		DataOutputStream data = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(out), crc));
+		data.write(MAGIC);
+		data.write(VERSION);
+		writeVarint(data, stringIndexMap.size());
+		writeVarint(data, lineIndexMap.size());
+		writeVarint(data, order.size() - 1);
+		for (String s : stringIndexMap.keySet())
+		{
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			writeVarint(data, bytes.length);
+			data.write(bytes);
+		}
+		for (int b = 0; b < order.size(); b++)
+		{
+			Branch curBranch = order.get(b);
+			writeVarint(data, curBranch.numLines());
+			for (int i = 0; i < curBranch.numLines(); i++)
+			{
+				BranchLine curLine = curBranch.getLine(i);
+				int owner = lineIndexMap.get(curLine);
+				if (curLine instanceof BranchTerminator)
+					writeVarint(data, 0);
+				else
+					writeVarint(data, stringIndexMap.get(curLine.toString()) + 1);
+				writeVarint(data, curLine.getSelectedLines().size());
+				for (BranchLine curDecomp : curLine.getSelectedLines())
+					writeZigzag(data, lineIndexMap.get(curDecomp) - owner);
+				writeVarint(data, curLine.getSelectedBranches().size());
+				for (Branch curDecomp : curLine.getSelectedBranches())
+					writeZigzag(data, branchIndexMap.get(curDecomp) - (b - 1));
+			}
+			writeVarint(data, curBranch.getBranches().size());
+		}
+		data.writeInt((int) crc.getValue());
+		data.flush();
+	}
+	
+	/**
+	 * @return The premise branch and every branch below it, depth first with each branch
+	 * before its children, without recursing (trees can be very deep)
+	 */
+	private static List<Branch> branchOrder(Branch premiseBranch)
+	{
+		List<Branch> order = new ArrayList<Branch>();
+		Deque<Branch> stack = new ArrayDeque<Branch>();
+		stack.push(premiseBranch);
+		while (!stack.isEmpty())
+		{
+			Branch curBranch = stack.pop();
+			order.add(curBranch);
+			Branch[] children = curBranch.getBranches().toArray(new Branch[0]);
+			for (int i = children.length - 1; i >= 0; i--)
+				stack.push(children[i]);
+		}
+		return order;
+	}
+	
+	private static void writeVarint(DataOutputStream out, int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+	
+	private static void writeZigzag(DataOutputStream out, int value) throws IOException
+	{
+		writeVarint(out, (value << 1) ^ (value >> 31));
+	}
+}
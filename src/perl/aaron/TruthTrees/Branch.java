@@ -26,7 +26,9 @@
 package perl.aaron.TruthTrees;
 
 import java.awt.FontMetrics;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -48,9 +50,16 @@ public class Branch {
 	private Set<Branch> branches;
 	private Branch root;
 	protected BranchLine decomposedFrom;
+	VerificationCache cache; // set while a VerificationCache is attached to this branch's tree
+	BranchIndex index; // set once a BranchIndex has numbered this branch's tree
+	EditHistory history; // set while an EditHistory is attached to this branch's tree
 	
 	private FontMetrics fm;	
 	private BranchLine widestLine;
+	// cached layout measurements, -1 until measured; an edit clears them on the path to the top
+	private int widestLineWidth = -1;
+	private int widestChildWidth = -1;
+	private int width = -1;
 	
 	/**
 	 * Constructs a branch stemming from the given root Branch
@@ -123,13 +132,33 @@ public class Branch {
 	 */
 	public boolean removeBranch(Branch b)
 	{
+		int position = history == null ? -1 : positionOf(b);
 		if (branches.remove(b))
 		{
+			invalidateLayout();
+			if (index != null)
+				index.invalidate();
+			if (cache != null)
+				cache.branchRemoved(this, b);
+			if (history != null)
+				history.branchRemoved(this, position, b);
 			return true;
 		}
 		return false;
 	}
 	
+	private int positionOf(Branch b)
+	{
+		int position = 0;
+		for (Branch curBranch : branches)
+		{
+			if (curBranch == b)
+				return position;
+			position++;
+		}
+		return -1;
+	}
+	
 	/**
 	 * Removes a BranchLine by index
 	 * @param index The index of the BranchLine to remove
@@ -139,11 +168,19 @@ public class Branch {
 		boolean widest = false;
 		if (lines.get(index) == widestLine)
 			widest = true;
-		lines.remove(index);
+		BranchLine removed = lines.remove(index);
+		if (removed instanceof BranchTerminator && this.index != null)
+			this.index.invalidate();
+		if (cache != null)
+			cache.lineRemoved(removed);
+		if (history != null)
+			history.lineRemoved(this, index, removed);
 		if (widest)
 		{
 			calculateWidestLine();
 		}
+		else
+			invalidateLayout();
 	}
 	
 	/**
@@ -174,6 +211,7 @@ public class Branch {
 		BranchLine newLine = new BranchLine(this);
 		newLine.setStatement(s);
 		lines.add(index, newLine);
+		lineAdded(newLine);
 		if (newLine.getWidth(fm) > widestLine.getWidth(fm))
 		{
 			widestLine = newLine;
@@ -190,6 +228,7 @@ public class Branch {
 		BranchLine newLine = new BranchLine(this);
 		newLine.setStatement(s);
 		lines.add(newLine);
+		lineAdded(newLine);
 		if (fm != null && (widestLine == null || newLine.getWidth(fm) > widestLine.getWidth(fm)))
 		{
 			widestLine = newLine;
@@ -204,7 +243,34 @@ public class Branch {
 	public void addTerminator(BranchTerminator terminator)
 	{
 		if (!isTerminated())
+		{
 			lines.add(terminator);
+			lineAdded(terminator);
+		}
+	}
+	
+	/**
+	 * Puts back a line removed from this branch, for undoing its removal
+	 * @param index The index the line was removed from
+	 * @param line The removed line
+	 */
+	void insertLine(int index, BranchLine line)
+	{
+		lines.add(Math.min(index, lines.size()), line);
+		lineAdded(line);
+		if (fm != null && (widestLine == null || line.getWidth(fm) > widestLine.getWidth(fm)))
+			widestLine = line;
+	}
+	
+	private void lineAdded(BranchLine line)
+	{
+		invalidateLayout();
+		if (line instanceof BranchTerminator && index != null)
+			index.invalidate();
+		if (cache != null)
+			cache.lineAdded(line);
+		if (history != null)
+			history.lineAdded(this, line);
 	}
 	
 	/**
@@ -214,7 +280,35 @@ public class Branch {
 	 */
 	public void addBranch(Branch b)
 	{
-		branches.add(b);
+		if (branches.add(b))
+			branchAdded(b);
+	}
+	
+	/**
+	 * Puts back a branch removed from this branch, for undoing its removal
+	 * @param position The position among this branch's children the branch was removed from
+	 * @param b The removed branch
+	 */
+	void insertBranch(int position, Branch b)
+	{
+		if (branches.contains(b))
+			return;
+		List<Branch> children = new ArrayList<Branch>(branches);
+		children.add(Math.max(0, Math.min(position, children.size())), b);
+		branches.clear();
+		branches.addAll(children);
+		branchAdded(b);
+	}
+	
+	private void branchAdded(Branch b)
+	{
+		invalidateLayout();
+		if (index != null)
+			index.invalidate();
+		if (cache != null)
+			cache.branchAdded(this, b);
+		if (history != null)
+			history.branchAdded(this, b);
 	}
 	
 	/**
@@ -242,14 +336,9 @@ public class Branch {
 	 */
 	public int getWidestChild()
 	{
-		int maxWidth = 0;
-		for (Branch curBranch : branches)
-		{
-			int curWidth = curBranch.getWidth();
-			if (curWidth > maxWidth)
-				maxWidth = curWidth;
-		}
-		return maxWidth;
+		if (widestChildWidth < 0)
+			measure();
+		return widestChildWidth;
 	}
 
 	/**
@@ -257,23 +346,73 @@ public class Branch {
 	 * @return The previously calculated width of this branch
 	 */
 	public int getWidth()
+	{
+		if (width < 0)
+			measure();
+		return width;
+	}
+	
+	/**
+	 * Measures this branch and every branch below it whose measurements were cleared by an edit.
+	 * Works without recursion, so it can measure trees of any depth, and only reads the tree, so a
+	 * tree that is not yet shown can be measured on another thread.
+	 */
+	public void measure()
+	{
+		Deque<Branch> stack = new ArrayDeque<Branch>();
+		Deque<Branch> measured = new ArrayDeque<Branch>(); // parents after their children
+		stack.push(this);
+		while (!stack.isEmpty())
+		{
+			Branch curBranch = stack.pop();
+			if (curBranch.width >= 0 && curBranch.widestChildWidth >= 0 && curBranch != this)
+				continue;
+			measured.push(curBranch);
+			for (Branch curChild : curBranch.branches)
+				stack.push(curChild);
+		}
+		while (!measured.isEmpty())
+			measured.pop().measureSelf();
+	}
+	
+	/**
+	 * Measures this branch, whose children have already been measured
+	 */
+	private void measureSelf()
 	{
 		if (widestLine == null)
+			findWidestLine();
+		int maxWidth = 0;
+		for (Branch curBranch : branches)
 		{
-			calculateWidestLine();
+			if (curBranch.width > maxWidth)
+				maxWidth = curBranch.width;
 		}
+		widestChildWidth = maxWidth;
 		if (branches.size() == 0)
 		{
-			if (widestLine == null)
-				calculateWidestLine();
 			if (widestLine != null)
-				return Math.max(widestLine.getWidth(fm) + 2 * Branch.LABEL_BORDER, MIN_WIDTH);
-			return MIN_WIDTH;
+				width = Math.max(widestLine.getWidth(fm) + 2 * Branch.LABEL_BORDER, MIN_WIDTH);
+			else
+				width = MIN_WIDTH;
 		}
 		else
+			width = (maxWidth + Branch.BRANCH_SEPARATION) * branches.size() - Branch.BRANCH_SEPARATION;
+	}
+	
+	/**
+	 * Clears the cached measurements of this branch and of the branches above it
+	 */
+	void invalidateLayout()
+	{
+		widestLineWidth = -1;
+		widestChildWidth = -1;
+		width = -1;
+		// a branch whose width is not measured has no measured parent, so the walk can stop there
+		for (Branch b = root; b != null && (b.width >= 0 || b.widestChildWidth >= 0); b = b.root)
 		{
-			int maxWidth = getWidestChild();
-			return (maxWidth + Branch.BRANCH_SEPARATION) * branches.size() - Branch.BRANCH_SEPARATION;
+			b.widestChildWidth = -1;
+			b.width = -1;
 		}
 	}
 	
@@ -311,10 +450,18 @@ public class Branch {
 	 */
 	public void setFontMetrics(FontMetrics fm)
 	{
-		this.fm = fm;
-		for (Branch curBranch : branches)
+		Deque<Branch> stack = new ArrayDeque<Branch>();
+		stack.push(this);
+		while (!stack.isEmpty())
 		{
-			curBranch.setFontMetrics(fm);
+			Branch curBranch = stack.pop();
+			if (curBranch.fm != fm)
+			{
+				curBranch.fm = fm;
+				curBranch.invalidateLayout();
+			}
+			for (Branch curChild : curBranch.branches)
+				stack.push(curChild);
 		}
 	}
 	
@@ -324,21 +471,30 @@ public class Branch {
 	 */
 	public int getWidestLine()
 	{
-		if (widestLine == null)
-			if (lines.size() > 0)
-				calculateWidestLine();
+		if (widestLineWidth < 0)
+		{
+			if (widestLine == null && lines.size() > 0)
+				findWidestLine();
+			if (lines.size() == 0 && widestLine == null)
+				widestLineWidth = MIN_WIDTH;
+			else if (widestLine != null)
+				widestLineWidth = Math.max(widestLine.getWidth(fm) + 2 * Branch.LABEL_BORDER, MIN_WIDTH);
 			else
-				return MIN_WIDTH;
-		if (widestLine != null)
-			return Math.max(widestLine.getWidth(fm) + 2 * Branch.LABEL_BORDER, MIN_WIDTH);
-		else
-			return 0;
+				widestLineWidth = 0;
+		}
+		return widestLineWidth;
 	}
 	
 	/**
 	 * Calculates and sets the widest line in this branch
 	 */
 	public void calculateWidestLine()
+	{
+		findWidestLine();
+		invalidateLayout();
+	}
+	
+	private void findWidestLine()
 	{
 		if (fm == null)
 			throw new IllegalStateException("resetWidestLine() called without a FontMetrics");
@@ -0,0 +1,222 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package perl.aaron.TruthTrees;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index over the branches of a tree that answers BranchLine.satisfiesAllBranches without
+ * walking the branches below the line.
+ * 
+ * Branches are numbered in the order they are visited (enter) and by the last number in their
+ * subtree (exit), so a branch is below another exactly when its enter number falls in the other's
+ * range, and the leaves below a branch form a contiguous run of the leaves in visiting order. Each
+ * leaf keeps the enter number of the deepest terminated branch on its path, and a sparse table
+ * gives the minimum of those over any run of leaves in constant time. Every open path below a
+ * branch is then covered by a set of branches exactly when, in each run of leaves between the
+ * covering branches' subtrees, the deepest terminated branch of every leaf is at or below it.
+ * 
+ * The index belongs to one tree. Adding or removing a branch or a terminator marks it stale, and
+ * the next query renumbers the tree, which takes time in proportion to its number of branches
+ * rather than its lines. Queries may run concurrently once the index is up to date.
+ */
+public class BranchIndex {
+	
+	private static final class Node
+	{
+		final int enter;
+		int exit;
+		int firstLeaf;
+		int lastLeaf;
+		
+		Node(int enter)
+		{
+			this.enter = enter;
+		}
+	}
+	
+	private final Branch top;
+	private volatile boolean stale = true;
+	private Map<Branch, Node> nodes;
+	/** minimum over runs of 2^j leaves of the enter number of their deepest terminated branch */
+	private int[][] minTerminated;
+	
+	private BranchIndex(Branch top)
+	{
+		this.top = top;
+	}
+	
+	/**
+	 * Returns the index of the tree a branch belongs to, creating it if the tree has none
+	 * @param branch Any branch of the tree
+	 * @return The tree's index
+	 */
+	public static BranchIndex of(Branch branch)
+	{
+		Branch top = branch;
+		while (top.getRoot() != null)
+			top = top.getRoot();
+		synchronized (top)
+		{
+			if (top.index == null)
+				top.index = new BranchIndex(top);
+			return top.index;
+		}
+	}
+	
+	/**
+	 * Marks the index out of date after the tree's branches or terminators changed
+	 */
+	void invalidate()
+	{
+		stale = true;
+	}
+	
+	/**
+	 * Renumbers the tree if it changed since the index was last built
+	 */
+	public void update()
+	{
+		if (!stale)
+			return;
+		synchronized (this)
+		{
+			if (stale)
+			{
+				build();
+				stale = false;
+			}
+		}
+	}
+	
+	private void build()
+	{
+		Map<Branch, Node> newNodes = new HashMap<Branch, Node>();
+		List<Integer> leafTerminated = new ArrayList<Integer>();
+		int counter = 0;
+		// each frame is a branch, the enter number of the deepest terminated branch above it, and
+		// whether its children have been pushed yet
+		Deque<Object[]> stack = new ArrayDeque<Object[]>();
+		stack.push(new Object[] {top, -1, false});
+		while (!stack.isEmpty())
+		{
+			Object[] frame = stack.peek();
+			Branch branch = (Branch) frame[0];
+			if ((Boolean) frame[2])
+			{
+				stack.pop();
+				Node node = newNodes.get(branch);
+				node.exit = counter - 1;
+				node.lastLeaf = leafTerminated.size() - 1;
+				continue;
+			}
+			frame[2] = true;
+			branch.index = this;
+			Node node = new Node(counter++);
+			newNodes.put(branch, node);
+			node.firstLeaf = leafTerminated.size();
+			int terminated = branch.isTerminated() ? node.enter : (Integer) frame[1];
+			if (branch.getBranches().isEmpty())
+				leafTerminated.add(terminated);
+			else
+			{
+				List<Branch> children = new ArrayList<Branch>(branch.getBranches());
+				for (int i = children.size() - 1; i >= 0; i--)
+					stack.push(new Object[] {children.get(i), terminated, false});
+			}
+		}
+		
+		int leaves = leafTerminated.size();
+		int levels = 32 - Integer.numberOfLeadingZeros(Math.max(leaves, 1));
+		int[][] table = new int[levels][];
+		table[0] = new int[leaves];
+		for (int i = 0; i < leaves; i++)
+			table[0][i] = leafTerminated.get(i);
+		for (int j = 1; j < levels; j++)
+		{
+			int half = 1 << (j - 1);
+			table[j] = new int[leaves - (1 << j) + 1];
+			for (int i = 0; i < table[j].length; i++)
+				table[j][i] = Math.min(table[j - 1][i], table[j - 1][i + half]);
+		}
+		nodes = newNodes;
+		minTerminated = table;
+	}
+	
+	/**
+	 * Returns whether every path from a branch down to a leaf passes through one of the given
+	 * branches or a terminated branch, the same as BranchLine.satisfiesAllBranches
+	 * @param root The branch to start from
+	 * @param descendents The covering branches; those not below root are ignored
+	 * @return True if every open path below root is covered
+	 */
+	public boolean satisfiesAllBranches(Branch root, Set<Branch> descendents)
+	{
+		if (descendents.contains(root) || root.isTerminated())
+			return true;
+		update();
+		Node rootNode = nodes.get(root);
+		if (rootNode == null) // not part of this tree
+			return BranchLine.walkAllBranches(root, descendents);
+		
+		Node[] covering = new Node[descendents.size()];
+		int numCovering = 0;
+		for (Branch descendent : descendents)
+		{
+			Node node = nodes.get(descendent);
+			if (node != null && node.enter > rootNode.enter && node.enter <= rootNode.exit)
+				covering[numCovering++] = node;
+		}
+		Arrays.sort(covering, 0, numCovering, new java.util.Comparator<Node>() {
+			public int compare(Node a, Node b)
+			{
+				return Integer.compare(a.enter, b.enter);
+			}
+		});
+		
+		int nextLeaf = rootNode.firstLeaf;
+		for (int i = 0; i < numCovering; i++)
+		{
+			if (covering[i].firstLeaf > nextLeaf &&
+					minTerminated(nextLeaf, covering[i].firstLeaf - 1) < rootNode.enter)
+				return false;
+			nextLeaf = Math.max(nextLeaf, covering[i].lastLeaf + 1);
+		}
+		return nextLeaf > rootNode.lastLeaf || minTerminated(nextLeaf, rootNode.lastLeaf) >= rootNode.enter;
+	}
+	
+	private int minTerminated(int from, int to)
+	{
+		int level = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+		return Math.min(minTerminated[level][from], minTerminated[level][to - (1 << level) + 1]);
+	}
+}
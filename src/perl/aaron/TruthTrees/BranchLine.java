@@ -25,7 +25,6 @@
 
 package perl.aaron.TruthTrees;
 
-import java.awt.Color;
 import java.awt.FontMetrics;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
@@ -52,17 +51,16 @@ public class BranchLine {
 	protected Set<BranchLine> selectedLines;
 	protected BranchLine decomposedFrom;
 	protected boolean isPremise;
-	public static final Color SELECTED_COLOR = new Color(0.3f,0.9f,0.9f);
-	public static final Color DEFAULT_COLOR = Color.LIGHT_GRAY;
-	public static final Color EDIT_COLOR = Color.GREEN;
+	private FontMetrics widthMetrics; // the FontMetrics width was measured with, or null
+	private int width;
 
 	public BranchLine(Branch branch)
 	{
 		parent = branch;
 		statement = null;
 //		decomposition = new LinkedHashSet<Set<BranchLine>>();
-		selectedBranches = new LinkedHashSet<Branch>();
-		selectedLines = new LinkedHashSet<BranchLine>();
+		selectedBranches = new SelectionSet<Branch>(this);
+		selectedLines = new SelectionSet<BranchLine>(this);
 		isPremise = false;
 	}
 	
@@ -75,7 +73,12 @@ public class BranchLine {
 	
 	public void setIsPremise(boolean isPremise)
 	{
+		boolean old = this.isPremise;
 		this.isPremise = isPremise;
+		if (parent != null && parent.cache != null)
+			parent.cache.lineChanged(this);
+		if (old != isPremise && history() != null)
+			history().premiseChanged(this, old);
 	}
 	
 	public boolean isPremise()
@@ -85,7 +88,15 @@ public class BranchLine {
 	
 	public void setStatement(Statement statement)
 	{
+		Statement old = this.statement;
 		this.statement = statement;
+		widthMetrics = null;
+		if (parent != null)
+			parent.invalidateLayout();
+		if (parent != null && parent.cache != null)
+			parent.cache.statementChanged(this);
+		if (old != statement && history() != null)
+			history().statementChanged(this, old);
 	}
 	
 	public Statement getStatement()
@@ -95,7 +106,12 @@ public class BranchLine {
 	
 	public int getWidth(FontMetrics f)
 	{
-		return f.stringWidth(toString());
+		if (f == null || f != widthMetrics)
+		{
+			width = f.stringWidth(toString());
+			widthMetrics = f;
+		}
+		return width;
 	}
 	
 	public Set<BranchLine> getSelectedLines()
@@ -110,7 +126,12 @@ public class BranchLine {
 	
 	public void setDecomposedFrom(BranchLine decomposedFrom)
 	{
+		BranchLine old = this.decomposedFrom;
 		this.decomposedFrom = decomposedFrom;
+		if (parent != null && parent.cache != null)
+			parent.cache.lineChanged(this);
+		if (old != decomposedFrom && history() != null)
+			history().decomposedFromChanged(this, old);
 	}
 	
 	public BranchLine getDecomposedFrom()
@@ -123,6 +144,23 @@ public class BranchLine {
 		return parent;
 	}
 	
+	/**
+	 * Returns the EditHistory attached to this line's tree, or null
+	 */
+	EditHistory history()
+	{
+		return parent == null ? null : parent.history;
+	}
+	
+	/**
+	 * Called when the selected lines or branches change
+	 */
+	void selectionChanged()
+	{
+		if (parent != null && parent.cache != null)
+			parent.cache.lineChanged(this);
+	}
+	
 	public String verifyDecomposition()
 	{
 		// Check if the statement is decomposable and it is not the negation of an atomic statement
@@ -198,6 +236,16 @@ public class BranchLine {
 	}
 	
 	public static boolean satisfiesAllBranches(Branch root, Set<Branch> descendents)
+	{
+		if (root.index != null)
+			return root.index.satisfiesAllBranches(root, descendents);
+		return walkAllBranches(root, descendents);
+	}
+	
+	/**
+	 * Answers satisfiesAllBranches by walking every branch below root, for trees without a BranchIndex
+	 */
+	static boolean walkAllBranches(Branch root, Set<Branch> descendents)
 	{
 		if (descendents.contains(root) || root.isTerminated())
 			return true;
@@ -207,7 +255,7 @@ public class BranchLine {
 			{
 				for (Branch curBranch : root.getBranches())
 				{
-					if (!satisfiesAllBranches(curBranch, descendents))
+					if (!walkAllBranches(curBranch, descendents))
 						return false;
 				}
 				return true;
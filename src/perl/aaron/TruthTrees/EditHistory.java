@@ -0,0 +1,387 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package perl.aaron.TruthTrees;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import perl.aaron.TruthTrees.logic.Statement;
+
+/**
+ * The undo and redo history of a tree, kept as the changes each edit made rather than as copies
+ * of the tree. Once attached to a tree, the tree reports every change to it (the same changes a
+ * VerificationCache sees), and the history keeps how to revert each one. Undoing an edit reverts
+ * its changes through the same methods, which records the changes that redo it, so undo and redo
+ * take time in proportion to the size of the edit and give back the original lines and branches.
+ * 
+ * The history keeps at most a given number of edits to undo and an estimate of the memory its
+ * changes hold on to, forgetting the oldest edits first.
+ * 
+ * Not thread safe; the tree should only be edited on one thread (the event thread for a TreePanel).
+ */
+public class EditHistory {
+	
+	/** estimated size of a recorded change */
+	private static final int CHANGE_BYTES = 40;
+	/** estimated size of a removed line (with its selection sets) kept only by the history */
+	private static final int LINE_BYTES = 200;
+	/** estimated size of a removed branch kept only by the history */
+	private static final int BRANCH_BYTES = 160;
+	
+	/**
+	 * The lines and branches an undo or redo changed
+	 */
+	public static final class Changes
+	{
+		private final Set<BranchLine> lines = new LinkedHashSet<BranchLine>();
+		private final Set<Branch> branches = new LinkedHashSet<Branch>();
+		
+		/**
+		 * Returns the lines that were added, removed or changed
+		 * @return The changed lines
+		 */
+		public Set<BranchLine> getLines()
+		{
+			return Collections.unmodifiableSet(lines);
+		}
+		
+		/**
+		 * Returns the branches that were added to or removed from their parent
+		 * @return The added or removed branches
+		 */
+		public Set<Branch> getBranches()
+		{
+			return Collections.unmodifiableSet(branches);
+		}
+	}
+	
+	/**
+	 * One change to the tree, which knows how to revert itself
+	 */
+	private static abstract class Change
+	{
+		final BranchLine line;
+		final Branch branch;
+		final int bytes;
+		
+		Change(BranchLine line, Branch branch, int bytes)
+		{
+			this.line = line;
+			this.branch = branch;
+			this.bytes = bytes;
+		}
+		
+		abstract void revert();
+	}
+	
+	/**
+	 * The changes made by one edit, in the order they were made
+	 */
+	private static final class Edit
+	{
+		final List<Change> changes = new ArrayList<Change>();
+		long bytes;
+	}
+	
+	private final int maxEdits;
+	private final long maxBytes;
+	private final Deque<Edit> undoStack = new ArrayDeque<Edit>();
+	private final Deque<Edit> redoStack = new ArrayDeque<Edit>();
+	private long bytes;
+	private Branch premises;
+	/** whether changes go into the edit on top of the undo stack rather than a new one */
+	private boolean open;
+	/** the edit recording the changes made by an undo or redo, or null */
+	private Edit replaying;
+	
+	/**
+	 * Creates an empty history
+	 * @param maxEdits The number of edits that can be undone
+	 * @param maxBytes The estimated memory the history may hold on to
+	 */
+	public EditHistory(int maxEdits, long maxBytes)
+	{
+		if (maxEdits < 1)
+			throw new IllegalArgumentException("maxEdits must be at least 1");
+		if (maxBytes < 0)
+			throw new IllegalArgumentException("maxBytes must not be negative");
+		this.maxEdits = maxEdits;
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * Attaches the history to a tree, detaching it from the tree it was attached to before and
+	 * forgetting every edit
+	 * @param premises The premise branch of the tree
+	 */
+	public void attach(Branch premises)
+	{
+		if (this.premises != null)
+			setHistory(this.premises, null);
+		undoStack.clear();
+		redoStack.clear();
+		bytes = 0;
+		open = false;
+		this.premises = premises;
+		if (premises != null)
+			setHistory(premises, this);
+	}
+	
+	/**
+	 * Starts a new edit; changes made from now on are undone together, apart from the ones before
+	 */
+	public void checkpoint()
+	{
+		open = false;
+	}
+	
+	public boolean canUndo()
+	{
+		return !undoStack.isEmpty();
+	}
+	
+	public boolean canRedo()
+	{
+		return !redoStack.isEmpty();
+	}
+	
+	/**
+	 * Returns the estimated memory held by the history
+	 * @return The estimate in bytes
+	 */
+	public long getBytes()
+	{
+		return bytes;
+	}
+	
+	/**
+	 * Reverts the most recent edit
+	 * @return The lines and branches that changed, or null if there is nothing to undo
+	 */
+	public Changes undo()
+	{
+		if (undoStack.isEmpty())
+			return null;
+		Edit edit = undoStack.pop();
+		bytes -= edit.bytes;
+		Edit inverse = replay(edit);
+		redoStack.push(inverse);
+		bytes += inverse.bytes;
+		return changesOf(inverse);
+	}
+	
+	/**
+	 * Makes the most recently undone edit again
+	 * @return The lines and branches that changed, or null if there is nothing to redo
+	 */
+	public Changes redo()
+	{
+		if (redoStack.isEmpty())
+			return null;
+		Edit edit = redoStack.pop();
+		bytes -= edit.bytes;
+		Edit inverse = replay(edit);
+		undoStack.push(inverse);
+		bytes += inverse.bytes;
+		trim();
+		return changesOf(inverse);
+	}
+	
+	private Edit replay(Edit edit)
+	{
+		open = false;
+		replaying = new Edit();
+		try {
+			for (int i = edit.changes.size() - 1; i >= 0; i--)
+				edit.changes.get(i).revert();
+			return replaying;
+		} finally {
+			replaying = null;
+		}
+	}
+	
+	private static Changes changesOf(Edit edit)
+	{
+		Changes changes = new Changes();
+		for (Change change : edit.changes)
+		{
+			if (change.line != null)
+				changes.lines.add(change.line);
+			if (change.branch != null)
+				changes.branches.add(change.branch);
+		}
+		return changes;
+	}
+	
+	private void record(Change change)
+	{
+		if (replaying != null)
+		{
+			replaying.changes.add(change);
+			replaying.bytes += change.bytes;
+			return;
+		}
+		// the changes to redo assume the tree as it was left by the undo
+		for (Edit edit : redoStack)
+			bytes -= edit.bytes;
+		redoStack.clear();
+		if (!open || undoStack.isEmpty())
+		{
+			undoStack.push(new Edit());
+			open = true;
+		}
+		Edit edit = undoStack.peek();
+		edit.changes.add(change);
+		edit.bytes += change.bytes;
+		bytes += change.bytes;
+		trim();
+	}
+	
+	/**
+	 * Forgets the oldest edits until the history is within its limits, always keeping the newest
+	 */
+	private void trim()
+	{
+		while (undoStack.size() > 1 && (undoStack.size() > maxEdits || bytes > maxBytes))
+			bytes -= undoStack.removeLast().bytes;
+	}
+	
+	void lineAdded(final Branch parent, final BranchLine line)
+	{
+		record(new Change(line, null, CHANGE_BYTES) {
+			void revert()
+			{
+				for (int i = parent.numLines() - 1; i >= 0; i--)
+				{
+					if (parent.getLine(i) == line)
+					{
+						parent.removeLine(i);
+						return;
+					}
+				}
+			}
+		});
+	}
+	
+	void lineRemoved(final Branch parent, final int index, final BranchLine line)
+	{
+		record(new Change(line, null, CHANGE_BYTES + LINE_BYTES) {
+			void revert()
+			{
+				parent.insertLine(index, line);
+			}
+		});
+	}
+	
+	void branchAdded(final Branch parent, final Branch child)
+	{
+		if (child.history != this)
+			setHistory(child, this);
+		record(new Change(null, child, CHANGE_BYTES) {
+			void revert()
+			{
+				parent.removeBranch(child);
+			}
+		});
+	}
+	
+	void branchRemoved(final Branch parent, final int index, final Branch child)
+	{
+		record(new Change(null, child, CHANGE_BYTES + BRANCH_BYTES) {
+			void revert()
+			{
+				parent.insertBranch(index, child);
+			}
+		});
+	}
+	
+	void statementChanged(final BranchLine line, final Statement old)
+	{
+		record(new Change(line, null, CHANGE_BYTES) {
+			void revert()
+			{
+				line.setStatement(old);
+			}
+		});
+	}
+	
+	void premiseChanged(final BranchLine line, final boolean old)
+	{
+		record(new Change(line, null, CHANGE_BYTES) {
+			void revert()
+			{
+				line.setIsPremise(old);
+			}
+		});
+	}
+	
+	void decomposedFromChanged(final BranchLine line, final BranchLine old)
+	{
+		record(new Change(line, null, CHANGE_BYTES) {
+			void revert()
+			{
+				line.setDecomposedFrom(old);
+			}
+		});
+	}
+	
+	<E> void selectionAdded(BranchLine owner, final SelectionSet<E> set, final E e)
+	{
+		record(new Change(owner, null, CHANGE_BYTES) {
+			void revert()
+			{
+				set.remove(e);
+			}
+		});
+	}
+	
+	<E> void selectionRemoved(BranchLine owner, final SelectionSet<E> set, final int position, final E e)
+	{
+		record(new Change(owner, null, CHANGE_BYTES) {
+			void revert()
+			{
+				set.insert(position, e);
+			}
+		});
+	}
+	
+	private static void setHistory(Branch branch, EditHistory history)
+	{
+		Deque<Branch> stack = new ArrayDeque<Branch>();
+		stack.push(branch);
+		while (!stack.isEmpty())
+		{
+			Branch curBranch = stack.pop();
+			curBranch.history = history;
+			for (Branch curChild : curBranch.getBranches())
+				stack.push(curChild);
+		}
+	}
+}
@@ -22,191 +22,289 @@
  * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
-
 package perl.aaron.TruthTrees;
 
+import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.LinkedHashSet;
-import java.util.Set;
-import java.util.Vector;
+import java.util.List;
 
-import perl.aaron.TruthTrees.logic.AtomicStatement;
-import perl.aaron.TruthTrees.logic.Biconditional;
-import perl.aaron.TruthTrees.logic.Conditional;
-import perl.aaron.TruthTrees.logic.Conjunction;
-import perl.aaron.TruthTrees.logic.Disjunction;
-import perl.aaron.TruthTrees.logic.Negation;
 import perl.aaron.TruthTrees.logic.Statement;
+import perl.aaron.TruthTrees.logic.StatementFactory;
 
-
+/**
+ * Parses logical statements in a single left-to-right pass.
+ * All binary connectives share one precedence level and cannot be mixed without
+ * parentheses; conjunctions and disjunctions may have any number of operands while
+ * conditionals and biconditionals take exactly two. Negation applies to the statement
+ * immediately following it. Whitespace is ignored everywhere.
+ */
 public class ExpressionParser {
 	
-	private static final ArrayList<Set<Character>> operators;
-	private static final String negationPattern;
-//	private static final Pattern operatorPattern;
+	private static final int END = 0;
+	private static final int ATOM = 1;
+	private static final int NEGATION = 2;
+	private static final int LEFT_PAREN = 3;
+	private static final int RIGHT_PAREN = 4;
+	private static final int CONDITIONAL = 5;
+	private static final int BICONDITIONAL = 6;
+	private static final int CONJUNCTION = 7;
+	private static final int DISJUNCTION = 8;
 	
-	static
-	{
-		operators = new ArrayList<Set<Character>>();
-		
-		Set<Character> conditionals = new LinkedHashSet<Character>();
-		conditionals.add('\u2192');
-		conditionals.add('$');
-		operators.add(conditionals);
-		
-		Set<Character> biconditionals = new LinkedHashSet<Character>();
-		biconditionals.add('\u2194');
-		biconditionals.add('%');
-		operators.add(biconditionals);
-		
-		Set<Character> conjunctions = new LinkedHashSet<Character>();
-		conjunctions.add('\u2227');		// conjunction unicode
-		conjunctions.add('&');			// conjunction (junction, what's your function?)
-		operators.add(conjunctions);
-		
-		Set<Character> disjunctions = new LinkedHashSet<Character>();
-		disjunctions.add('\u2228');		// disjunction unicode
-		disjunctions.add('|');			// disjunction
-		operators.add(disjunctions);
-		
-		negationPattern = "[\u00AC~!]";
-		
-//		operatorString = "";
-//		for (char curOperator : operators)
-//			operatorString += curOperator;
-//		
-//		operatorPattern = Pattern.compile("[\\s]*[" + operatorString + "][\\s]*");
-	}
+	private static final String[] TOKEN_NAMES = {"end of statement", "symbol", "\u00AC", "(", ")",
+		"\u2192", "\u2194", "\u2227", "\u2228"};
+	
+	private static volatile ParseCache parseCache;
 	
 	private ExpressionParser() {}
 	
-	private static int findZeroDepth(String searchString, Set<Character> searchChars)
+	/**
+	 * Sets the cache consulted by parseExpression
+	 * @param cache The cache, or null to parse every expression from scratch (the default)
+	 */
+	public static void setParseCache(ParseCache cache)
 	{
-		int depth = 0;
-		for (int i = 0; i < searchString.length(); i++)
-		{
-			char curChar = searchString.charAt(i);
-			if (curChar == '(')
-				depth++;
-			else if (curChar == ')')
-			{
-				if (depth == 0)
-					return -1;
-				depth--;
-			}
-			else if (searchChars.contains(curChar) && depth == 0)
-				return i;
-		}
-		return -1;
+		parseCache = cache;
 	}
 	
-	private static int findZeroDepth(String searchString, char searchChar)
+	/**
+	 * Returns the cache consulted by parseExpression
+	 * @return The cache, or null if there is none
+	 */
+	public static ParseCache getParseCache()
 	{
-		Set<Character> tmpSet = new LinkedHashSet<Character>();
-		tmpSet.add(searchChar);
-		return findZeroDepth(searchString, tmpSet);
+		return parseCache;
 	}
 	
-	private static Vector<String> splitZeroDepth(String searchString, Set<Character> splitChars)
+	/**
+	 * Splits a statement string into tokens, reading one token ahead of the parser
+	 */
+	private static final class Tokenizer
 	{
-		Vector<String> retVal = new Vector<String>();
-		String curString = searchString;
-		int findIndex;
+		private final String expression;
+		private int position;
 		
-		while ((findIndex = findZeroDepth(curString, splitChars)) > -1)
+		int type;
+		int offset;
+		String symbol;
+		
+		Tokenizer(String expression)
 		{
-			retVal.add(curString.substring(0, findIndex));
-			curString = curString.substring(findIndex + 1);
+			this.expression = expression;
 		}
 		
-		retVal.add(curString);
-		
-		return retVal;
-	}
-	
-	private static Statement recurseStatement(String subExpression)
-	{	
-		int operatorSet = -1;
-		
-		for (int i = 0; i < operators.size(); i++)
+		void next() throws ParseException
 		{
-			Set<Character> curOperatorSet = operators.get(i);
-			for (char curOperator : curOperatorSet)
+			skipWhitespace();
+			offset = position;
+			symbol = null;
+			if (position == expression.length())
 			{
-				int curOperatorIndex = findZeroDepth(subExpression, curOperator);
-				if (curOperatorIndex > -1)
-				{
-					if (operatorSet > -1)
-						return null;
-					operatorSet = i;
-					break;
-				}
+				type = END;
+				return;
 			}
-		}
-		
-//		System.out.println("Operator set = " + operatorSet);
-		
-		if (operatorSet == -1)
-		{
-			if (subExpression.matches("\\w+") || subExpression.matches("(\\w+)"))
+			char curChar = expression.charAt(position);
+			if (isSymbolChar(curChar))
 			{
-//				System.out.println("Atomic Statement : " + subExpression);
-				return new AtomicStatement(subExpression);
+				readSymbol();
+				return;
 			}
-			else if (subExpression.startsWith("(") && subExpression.endsWith(")"))
+			position++;
+			switch (curChar)
 			{
-//				System.out.println("Parenthesis around " + subExpression.substring(1,subExpression.length() -1));
-				return recurseStatement(
-						subExpression.substring(1, subExpression.length() - 1));
+			case '(':
+				type = LEFT_PAREN;
+				break;
+			case ')':
+				type = RIGHT_PAREN;
+				break;
+			case '\u00AC':
+			case '~':
+			case '!':
+				type = NEGATION;
+				break;
+			case '\u2192':
+			case '$':
+				type = CONDITIONAL;
+				break;
+			case '\u2194':
+			case '%':
+				type = BICONDITIONAL;
+				break;
+			case '\u2227':
+			case '&':
+				type = CONJUNCTION;
+				break;
+			case '\u2228':
+			case '|':
+				type = DISJUNCTION;
+				break;
+			default:
+				throw new ParseException("Unexpected character '" + curChar + "'", offset);
 			}
-			else if (subExpression.matches(negationPattern + ".+"))
+		}
+		
+		private void readSymbol()
+		{
+			StringBuilder joined = null;
+			int runStart = position;
+			while (true)
 			{
-//				System.out.println("Negation of " + subExpression.substring(1));
-				return new Negation(recurseStatement(subExpression.substring(1)));
+				while (position < expression.length() && isSymbolChar(expression.charAt(position)))
+					position++;
+				int runEnd = position;
+				skipWhitespace();
+				if (position < expression.length() && isSymbolChar(expression.charAt(position)))
+				{
+					// whitespace is ignored inside symbols too, so "A B" reads as AB
+					if (joined == null)
+						joined = new StringBuilder();
+					joined.append(expression, runStart, runEnd);
+					runStart = position;
+				}
+				else
+				{
+					if (joined == null)
+						symbol = expression.substring(runStart, runEnd);
+					else
+						symbol = joined.append(expression, runStart, runEnd).toString();
+					type = ATOM;
+					return;
+				}
 			}
-			return null;
 		}
 		
-		Vector<String> operandStrings = splitZeroDepth(subExpression, operators.get(operatorSet));
+		private void skipWhitespace()
+		{
+			while (position < expression.length() && isWhitespace(expression.charAt(position)))
+				position++;
+		}
+	}
+	
+	private static boolean isSymbolChar(char c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+	
+	private static boolean isWhitespace(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+	
+	private static boolean isBinaryOperator(int type)
+	{
+		return type >= CONDITIONAL;
+	}
+	
+	private static Statement parseOperands(Tokenizer tokens) throws ParseException
+	{
+		Statement first = parseUnary(tokens);
+		if (!isBinaryOperator(tokens.type))
+			return first;
 		
-		Vector<Statement> operands = new Vector<Statement>();
+		int operator = tokens.type;
+		List<Statement> operands = new ArrayList<Statement>();
+		operands.add(first);
+		while (isBinaryOperator(tokens.type))
+		{
+			if (tokens.type != operator)
+				throw new ParseException("Cannot combine " + TOKEN_NAMES[operator] + " and " +
+						TOKEN_NAMES[tokens.type] + " without parentheses", tokens.offset);
+			if (operands.size() == 2 && (operator == CONDITIONAL || operator == BICONDITIONAL))
+				throw new ParseException(TOKEN_NAMES[operator] + " takes exactly two operands", tokens.offset);
+			tokens.next();
+			operands.add(parseUnary(tokens));
+		}
 		
-		for (String curOperandString : operandStrings)
+		switch (operator)
+		{
+		case CONDITIONAL:
+			return StatementFactory.conditional(operands.get(0), operands.get(1));
+		case BICONDITIONAL:
+			return StatementFactory.biconditional(operands.get(0), operands.get(1));
+		case CONJUNCTION:
+			return StatementFactory.conjunction(operands);
+		default:
+			return StatementFactory.disjunction(operands);
+		}
+	}
+	
+	private static Statement parseUnary(Tokenizer tokens) throws ParseException
+	{
+		int negations = 0;
+		while (tokens.type == NEGATION)
 		{
-			Statement curOperand = recurseStatement(curOperandString);
-			if (curOperand == null)
-				return null;
-			operands.add(curOperand);
+			negations++;
+			tokens.next();
 		}
 		
-		switch (operatorSet)
+		Statement statement;
+		if (tokens.type == ATOM)
 		{
-		case 0: // conditional
-			if (operands.size() != 2)
-				return null; // conditional has exactly 2 operands
-			return new Conditional(operands.get(0),operands.get(1));
-		case 1: // biconditional
-			if (operands.size() != 2)
-				return null; // biconditional ---
-			return new Biconditional(operands.get(0),operands.get(1));
-		case 2: // conjunction
-			if (operands.size() < 2)
-				return null; // conjunction has at least two operands (how did you even manage this?)
-			return new Conjunction(operands);
-		case 3: // disjunction
-			if (operands.size() < 2)
-				return null; // disjunction ---
-			return new Disjunction(operands);
+			statement = StatementFactory.atomic(tokens.symbol);
+			tokens.next();
 		}
+		else if (tokens.type == LEFT_PAREN)
+		{
+			int openOffset = tokens.offset;
+			tokens.next();
+			statement = parseOperands(tokens);
+			if (tokens.type == END)
+				throw new ParseException("Unmatched (", openOffset);
+			if (tokens.type != RIGHT_PAREN)
+				throw new ParseException("Expected a connective or ) but found " + TOKEN_NAMES[tokens.type],
+						tokens.offset);
+			tokens.next();
+		}
+		else
+			throw new ParseException("Expected a statement but found " + TOKEN_NAMES[tokens.type], tokens.offset);
 		
-		return null;
+		while (negations-- > 0)
+			statement = StatementFactory.negation(statement);
+		return statement;
+	}
+	
+	/**
+	 * Parses a statement string
+	 * @param expression The statement string
+	 * @return The parsed statement
+	 * @throws ParseException If the string is not a valid statement; the error offset is the
+	 * index in expression of the offending character
+	 */
+	public static Statement parse(String expression) throws ParseException
+	{
+		Tokenizer tokens = new Tokenizer(expression);
+		tokens.next();
+		Statement statement = parseOperands(tokens);
+		if (tokens.type == RIGHT_PAREN)
+			throw new ParseException("Unmatched )", tokens.offset);
+		if (tokens.type != END)
+			throw new ParseException("Expected a connective but found " + TOKEN_NAMES[tokens.type], tokens.offset);
+		return statement;
 	}
 	
+	/**
+	 * Parses a statement string, using the parse cache if one has been set
+	 * @param expression The statement string
+	 * @return The parsed statement, or null if the string is not a valid statement
+	 */
 	public static Statement parseExpression(String expression)
 	{
-//		if (checkForMismatchedParenthesis(expression))
-//			throw new ...
-		return recurseStatement(expression.replaceAll("\\s", ""));
+		ParseCache cache = parseCache;
+		if (cache != null)
+			return cache.parse(expression);
+		return parseUncached(expression);
+	}
+	
+	static Statement parseUncached(String expression)
+	{
+		try
+		{
+			return parse(expression);
+		}
+		catch (ParseException e)
+		{
+			return null;
+		}
 	}
 
 }
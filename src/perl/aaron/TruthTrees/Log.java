@@ -0,0 +1,203 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package perl.aaron.TruthTrees;
+
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.StreamHandler;
+
+/**
+ * Debug logging for the tree and conversion code, on top of java.util.logging.
+ * 
+ * Logging is off unless the truthtrees.log system property names a level (error, warn, info,
+ * debug or trace), e.g. -Dtruthtrees.log=trace, in which case messages at that level and above
+ * are written to standard error. Without the property the "truthtrees" logger can be configured
+ * like any other java.util.logging logger.
+ * 
+ * Messages are only built when their level is enabled: each {} in a message is replaced by the
+ * next argument's toString, so arguments cost nothing beyond the call when logging is off. Output
+ * that takes a loop to build should be guarded with isTraceEnabled or isDebugEnabled instead.
+ */
+public final class Log {
+	
+	public static final String PROPERTY = "truthtrees.log";
+	
+	private static final Logger ROOT = Logger.getLogger("truthtrees");
+	
+	static
+	{
+		String level = System.getProperty(PROPERTY);
+		if (level != null)
+		{
+			ROOT.setLevel(parseLevel(level));
+			StreamHandler handler = new StreamHandler(System.err, new LineFormatter())
+			{
+				@Override
+				public synchronized void publish(LogRecord record)
+				{
+					super.publish(record);
+					flush();
+				}
+			};
+			handler.setLevel(Level.ALL);
+			ROOT.addHandler(handler);
+			ROOT.setUseParentHandlers(false);
+		}
+		else if (ROOT.getLevel() == null)
+			ROOT.setLevel(Level.OFF);
+	}
+	
+	private final Logger logger;
+	
+	private Log(Logger logger)
+	{
+		this.logger = logger;
+	}
+	
+	/**
+	 * @param owner The class logging
+	 * @return A log named after the class, below the "truthtrees" logger
+	 */
+	public static Log get(Class<?> owner)
+	{
+		return new Log(Logger.getLogger(ROOT.getName() + "." + owner.getName()));
+	}
+	
+	private static Level parseLevel(String name)
+	{
+		name = name.trim().toLowerCase();
+		if (name.equals("trace"))
+			return Level.FINEST;
+		if (name.equals("debug"))
+			return Level.FINE;
+		if (name.equals("info"))
+			return Level.INFO;
+		if (name.equals("warn"))
+			return Level.WARNING;
+		if (name.equals("error"))
+			return Level.SEVERE;
+		if (name.equals("all"))
+			return Level.ALL;
+		return Level.OFF;
+	}
+	
+	public boolean isTraceEnabled()
+	{
+		return logger.isLoggable(Level.FINEST);
+	}
+	
+	public boolean isDebugEnabled()
+	{
+		return logger.isLoggable(Level.FINE);
+	}
+	
+	public void trace(String message)
+	{
+		if (logger.isLoggable(Level.FINEST))
+			publish(Level.FINEST, message);
+	}
+	
+	public void trace(String message, Object arg)
+	{
+		if (logger.isLoggable(Level.FINEST))
+			publish(Level.FINEST, format(message, 1, arg, null, null));
+	}
+	
+	public void trace(String message, Object arg1, Object arg2)
+	{
+		if (logger.isLoggable(Level.FINEST))
+			publish(Level.FINEST, format(message, 2, arg1, arg2, null));
+	}
+	
+	public void trace(String message, Object arg1, Object arg2, Object arg3)
+	{
+		if (logger.isLoggable(Level.FINEST))
+			publish(Level.FINEST, format(message, 3, arg1, arg2, arg3));
+	}
+	
+	public void debug(String message)
+	{
+		if (logger.isLoggable(Level.FINE))
+			publish(Level.FINE, message);
+	}
+	
+	public void debug(String message, Object arg)
+	{
+		if (logger.isLoggable(Level.FINE))
+			publish(Level.FINE, format(message, 1, arg, null, null));
+	}
+	
+	public void debug(String message, Object arg1, Object arg2)
+	{
+		if (logger.isLoggable(Level.FINE))
+			publish(Level.FINE, format(message, 2, arg1, arg2, null));
+	}
+	
+	public void debug(String message, Object arg1, Object arg2, Object arg3)
+	{
+		if (logger.isLoggable(Level.FINE))
+			publish(Level.FINE, format(message, 3, arg1, arg2, arg3));
+	}
+	
+	private void publish(Level level, String message)
+	{
+		LogRecord record = new LogRecord(level, message);
+		record.setLoggerName(logger.getName());
+		// skip the stack walk java.util.logging would do to find the caller
+		record.setSourceClassName(null);
+		record.setSourceMethodName(null);
+		logger.log(record);
+	}
+	
+	private static String format(String message, int count, Object arg1, Object arg2, Object arg3)
+	{
+		Object[] args = {arg1, arg2, arg3};
+		StringBuilder sb = new StringBuilder(message.length() + 32);
+		int next = 0;
+		int from = 0;
+		int at;
+		while (next < count && (at = message.indexOf("{}", from)) >= 0)
+		{
+			sb.append(message, from, at).append(args[next++]);
+			from = at + 2;
+		}
+		return sb.append(message, from, message.length()).toString();
+	}
+	
+	private static final class LineFormatter extends Formatter
+	{
+		@Override
+		public String format(LogRecord record)
+		{
+			String name = record.getLoggerName();
+			String level = record.getLevel() == Level.FINEST ? "TRACE"
+					: record.getLevel() == Level.FINE ? "DEBUG" : record.getLevel().getName();
+			return level + " " + name.substring(name.lastIndexOf('.') + 1) + ": "
+					+ record.getMessage() + System.getProperty("line.separator");
+		}
+	}
+}
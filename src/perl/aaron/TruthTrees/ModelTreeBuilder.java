@@ -0,0 +1,66 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package perl.aaron.TruthTrees;
+
+import perl.aaron.TruthTrees.logic.Statement;
+
+/**
+ * A TreeBuilder that builds the Branch/BranchLine model directly, without any
+ * undo history or components, so building a tree takes time linear in its size
+ * @author Aaron Perl
+ *
+ */
+public class ModelTreeBuilder implements TreeBuilder {
+
+	public Branch createRoot()
+	{
+		Branch premises = new Branch(null);
+		return new Branch(premises);
+	}
+
+	public Branch addBranch(Branch parent)
+	{
+		return new Branch(parent);
+	}
+
+	public BranchLine addStatement(Branch branch, Statement statement)
+	{
+		BranchLine newLine = branch.addStatement(statement);
+		if (branch.getRoot() == null)
+			newLine.setIsPremise(true);
+		return newLine;
+	}
+
+	public BranchTerminator addTerminator(Branch branch)
+	{
+		BranchTerminator terminator = new BranchTerminator(branch);
+		branch.addTerminator(terminator);
+		return terminator;
+	}
+
+	public void finish(Branch root) {}
+
+}
@@ -0,0 +1,139 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package perl.aaron.TruthTrees;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import perl.aaron.TruthTrees.logic.Statement;
+
+/**
+ * A size-bounded, least recently used cache of parsed statements keyed by the statement text.
+ * Install one with ExpressionParser.setParseCache so repeated premises are only parsed once.
+ * Statements are shared between every caller that parses the same text, so they must not be
+ * modified. Text that fails to parse is not cached.
+ */
+public class ParseCache {
+	
+	private final int maxEntries;
+	private final Map<String, Statement> entries;
+	
+	private long hits;
+	private long misses;
+	private long evictions;
+	
+	/**
+	 * Creates an empty cache
+	 * @param maxEntries The maximum number of statements kept, at least 1
+	 */
+	public ParseCache(int maxEntries)
+	{
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("Cache size must be at least 1: " + maxEntries);
+		this.maxEntries = maxEntries;
+		entries = new LinkedHashMap<String, Statement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest)
+			{
+				if (size() <= ParseCache.this.maxEntries)
+					return false;
+				evictions++;
+				return true;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the statement for some text, parsing it only if it is not already cached
+	 * @param expression The statement string
+	 * @return The parsed statement, or null if the string is not a valid statement
+	 */
+	public Statement parse(String expression)
+	{
+		synchronized (this)
+		{
+			Statement cached = entries.get(expression);
+			if (cached != null)
+			{
+				hits++;
+				return cached;
+			}
+			misses++;
+		}
+		Statement parsed = ExpressionParser.parseUncached(expression);
+		if (parsed != null)
+		{
+			synchronized (this)
+			{
+				entries.put(expression, parsed);
+			}
+		}
+		return parsed;
+	}
+	
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+	
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+	
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+	
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+	
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+	
+	/**
+	 * Removes every entry and resets the counters
+	 */
+	public synchronized void clear()
+	{
+		entries.clear();
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+	
+	public synchronized String toString()
+	{
+		return "Parse cache: " + hits + " hits, " + misses + " misses, " + evictions + " evictions, "
+				+ entries.size() + "/" + maxEntries + " entries";
+	}
+}
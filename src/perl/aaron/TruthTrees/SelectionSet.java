@@ -0,0 +1,153 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package perl.aaron.TruthTrees;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * The set of lines or branches a BranchLine selects, which tells the line whenever it changes
+ * so an attached VerificationCache knows to check the line again, and reports each element
+ * added or removed to an attached EditHistory
+ */
+class SelectionSet<E> extends LinkedHashSet<E> {
+	private static final long serialVersionUID = 1L;
+	
+	private final BranchLine owner;
+	
+	SelectionSet(BranchLine owner)
+	{
+		this.owner = owner;
+	}
+	
+	@Override
+	public boolean add(E e)
+	{
+		if (!super.add(e))
+			return false;
+		owner.selectionChanged();
+		EditHistory history = owner.history();
+		if (history != null)
+			history.selectionAdded(owner, this, e);
+		return true;
+	}
+	
+	/**
+	 * Adds an element at a position in the iteration order, to put back one removed by an undo
+	 */
+	void insert(int position, E e)
+	{
+		if (contains(e))
+			return;
+		List<E> elements = new ArrayList<E>(this);
+		elements.add(Math.max(0, Math.min(position, elements.size())), e);
+		super.clear();
+		for (E element : elements) // not addAll, which would report every element as added
+			super.add(element);
+		owner.selectionChanged();
+		EditHistory history = owner.history();
+		if (history != null)
+			history.selectionAdded(owner, this, e);
+	}
+	
+	@Override
+	public boolean remove(Object o)
+	{
+		EditHistory history = owner.history();
+		int position = history == null ? -1 : positionOf(o);
+		if (!super.remove(o))
+			return false;
+		owner.selectionChanged();
+		if (history != null)
+			removed(history, position, o);
+		return true;
+	}
+	
+	@Override
+	public void clear()
+	{
+		if (!isEmpty())
+		{
+			EditHistory history = owner.history();
+			List<E> elements = history == null ? null : new ArrayList<E>(this);
+			super.clear();
+			owner.selectionChanged();
+			if (history != null)
+				for (E e : elements) // as if removed one at a time from the front
+					history.selectionRemoved(owner, this, 0, e);
+		}
+	}
+	
+	private int positionOf(Object o)
+	{
+		int position = 0;
+		for (Iterator<E> it = super.iterator(); it.hasNext(); position++)
+		{
+			if (it.next().equals(o))
+				return position;
+		}
+		return -1;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void removed(EditHistory history, int position, Object o)
+	{
+		history.selectionRemoved(owner, this, position, (E) o);
+	}
+	
+	@Override
+	public Iterator<E> iterator()
+	{
+		final Iterator<E> iterator = super.iterator();
+		return new Iterator<E>() {
+			private E last;
+			private int position = -1;
+			
+			public boolean hasNext()
+			{
+				return iterator.hasNext();
+			}
+			
+			public E next()
+			{
+				last = iterator.next();
+				position++;
+				return last;
+			}
+			
+			public void remove()
+			{
+				iterator.remove();
+				owner.selectionChanged();
+				EditHistory history = owner.history();
+				if (history != null)
+					history.selectionRemoved(owner, SelectionSet.this, position, last);
+				position--;
+			}
+		};
+	}
+}
@@ -0,0 +1,71 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package perl.aaron.TruthTrees;
+
+import perl.aaron.TruthTrees.logic.Statement;
+
+/**
+ * Receives a tree one element at a time as it is loaded, in document order.
+ * ModelTreeBuilder builds the plain Branch/BranchLine model; other builders can wrap it
+ * to attach their own state (e.g. widgets) as the tree is built or once it is finished.
+ * @author Aaron Perl
+ *
+ */
+public interface TreeBuilder {
+	/**
+	 * Creates the premise Branch and the root Branch of the decomposition stemming from it
+	 * @return The root Branch of the decomposition
+	 */
+	public Branch createRoot();
+	
+	/**
+	 * Adds a Branch stemming from the given Branch
+	 * @param parent The Branch to stem from
+	 * @return The new Branch
+	 */
+	public Branch addBranch(Branch parent);
+	
+	/**
+	 * Adds a Statement to the end of a Branch
+	 * @param branch The Branch to add to
+	 * @param statement The Statement to add
+	 * @return The new BranchLine
+	 */
+	public BranchLine addStatement(Branch branch, Statement statement);
+	
+	/**
+	 * Adds a BranchTerminator to the end of a Branch
+	 * @param branch The Branch to terminate
+	 * @return The new BranchTerminator
+	 */
+	public BranchTerminator addTerminator(Branch branch);
+	
+	/**
+	 * Called once every line, branch and decomposition has been loaded
+	 * @param root The root Branch of the decomposition
+	 */
+	public void finish(Branch root);
+}
@@ -0,0 +1,269 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package perl.aaron.TruthTrees;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import perl.aaron.TruthTrees.logic.Statement;
+
+/**
+ * Loads a tft file with a StAX pull parser, passing each element straight to a TreeBuilder
+ * as it is read. Decomposition references may point forward in the file, so they are kept
+ * as pairs of line/branch indices in int arrays and resolved once the whole file is read.
+ * @author Aaron Perl
+ *
+ */
+class TreeStreamLoader {
+	private static final Log LOG = Log.get(TreeStreamLoader.class);
+	private static final XMLInputFactory inputFactory;
+	
+	static
+	{
+		inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+	}
+	
+	private final TreeBuilder treeBuilder;
+	private final ArrayList<BranchLine> lines;
+	private final ArrayList<Branch> branches;
+	
+	// line index -> line index references, in document order
+	private int[] lineRefOwners;
+	private int[] lineRefTargets;
+	private int numLineRefs;
+	
+	// line index -> branch index references, in document order
+	private int[] branchRefOwners;
+	private int[] branchRefTargets;
+	private int numBranchRefs;
+	
+	private TreeStreamLoader(TreeBuilder treeBuilder)
+	{
+		this.treeBuilder = treeBuilder;
+		lines = new ArrayList<BranchLine>();
+		branches = new ArrayList<Branch>();
+		lineRefOwners = new int[16];
+		lineRefTargets = new int[16];
+		branchRefOwners = new int[16];
+		branchRefTargets = new int[16];
+	}
+	
+	/**
+	 * Loads a tree from a stream
+	 * @param in The stream to read the tft XML from (not closed)
+	 * @param treeBuilder The builder to build the tree with
+	 * @return The root Branch of the decomposition, or null if the stream is not a valid tree
+	 * @throws XMLStreamException If the stream could not be parsed
+	 */
+	static Branch load(InputStream in, TreeBuilder treeBuilder) throws XMLStreamException
+	{
+		XMLStreamReader reader;
+		synchronized (inputFactory) // factories are not guaranteed to be thread safe
+		{
+			reader = inputFactory.createXMLStreamReader(in);
+		}
+		try {
+			return new TreeStreamLoader(treeBuilder).read(reader);
+		}
+		finally {
+			reader.close();
+		}
+	}
+	
+	private Branch read(XMLStreamReader reader) throws XMLStreamException
+	{
+		Branch rootBranch = treeBuilder.createRoot();
+		Branch premiseBranch = rootBranch.getRoot();
+		branches.add(rootBranch);
+		
+		ArrayList<Branch> branchStack = new ArrayList<Branch>();
+		boolean foundDocument = false;
+		boolean foundRoot = false;
+		int curLine = -1; // index of the line whose element is open, if any
+		
+		while (reader.hasNext())
+		{
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+			{
+				String name = reader.getLocalName();
+				if (!foundDocument)
+				{
+					foundDocument = true; // the Tree element itself
+				}
+				else if (curLine != -1)
+				{
+					// only Decomposition children of a line matter
+					if (name.equals("Decomposition"))
+						readDecomposition(reader, curLine);
+					skipElement(reader);
+				}
+				else if (name.equals("Branch"))
+				{
+					if (branchStack.isEmpty())
+					{
+						if (foundRoot)
+							return null; // two root nodes
+						foundRoot = true;
+						branchStack.add(rootBranch);
+					}
+					else
+					{
+						Branch newBranch = treeBuilder.addBranch(branchStack.get(branchStack.size() - 1));
+						branches.add(newBranch);
+						branchStack.add(newBranch);
+					}
+				}
+				else if (name.equals("BranchLine") ||
+						(name.equals("Terminator") && !branchStack.isEmpty())) // premises can't be terminated
+				{
+					Branch curBranch = branchStack.isEmpty() ? premiseBranch : branchStack.get(branchStack.size() - 1);
+					curLine = lines.size();
+					lines.add(readLine(reader, curBranch, name.equals("Terminator")));
+				}
+				else
+					skipElement(reader);
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT)
+			{
+				// skipped elements are consumed whole, so this is a line, a Branch or the Tree
+				if (curLine != -1)
+					curLine = -1;
+				else if (!branchStack.isEmpty())
+					branchStack.remove(branchStack.size() - 1);
+			}
+		}
+		
+		if (!resolveReferences())
+			return null;
+		treeBuilder.finish(rootBranch);
+		return rootBranch;
+	}
+	
+	private BranchLine readLine(XMLStreamReader reader, Branch curBranch, boolean isTerminator)
+	{
+		int lineIndex = Integer.parseInt(attribute(reader, "index"));
+		if (isTerminator)
+		{
+			LOG.trace("Term: {}", lineIndex);
+			return treeBuilder.addTerminator(curBranch);
+		}
+		String content = attribute(reader, "content");
+		LOG.trace("{} -- {}", content, lineIndex);
+		
+		Statement newStatement = ExpressionParser.parseExpression(content);
+		return treeBuilder.addStatement(curBranch, newStatement);
+	}
+	
+	private void readDecomposition(XMLStreamReader reader, int owner)
+	{
+		String branchIndexString = attribute(reader, "branchIndex");
+		if (!branchIndexString.equals(""))
+		{
+			if (numBranchRefs == branchRefOwners.length)
+			{
+				branchRefOwners = Arrays.copyOf(branchRefOwners, numBranchRefs * 2);
+				branchRefTargets = Arrays.copyOf(branchRefTargets, numBranchRefs * 2);
+			}
+			branchRefOwners[numBranchRefs] = owner;
+			branchRefTargets[numBranchRefs] = Integer.parseInt(branchIndexString);
+			numBranchRefs++;
+		}
+		String lineIndexString = attribute(reader, "lineIndex");
+		if (!lineIndexString.equals(""))
+		{
+			if (numLineRefs == lineRefOwners.length)
+			{
+				lineRefOwners = Arrays.copyOf(lineRefOwners, numLineRefs * 2);
+				lineRefTargets = Arrays.copyOf(lineRefTargets, numLineRefs * 2);
+			}
+			lineRefOwners[numLineRefs] = owner;
+			lineRefTargets[numLineRefs] = Integer.parseInt(lineIndexString);
+			numLineRefs++;
+		}
+	}
+	
+	/**
+	 * Adds every decomposition reference to the lines that made it
+	 * @return False if a reference points outside of the tree
+	 */
+	private boolean resolveReferences()
+	{
+		for (int i = 0; i < numLineRefs; i++)
+		{
+			int target = lineRefTargets[i];
+			if (target < 0 || target >= lines.size())
+				return false;
+			BranchLine curLine = lines.get(lineRefOwners[i]);
+			BranchLine curDecomp = lines.get(target);
+			curLine.getSelectedLines().add(curDecomp);
+			if (!(curLine instanceof BranchTerminator))
+				curDecomp.setDecomposedFrom(curLine);
+		}
+		for (int i = 0; i < numBranchRefs; i++)
+		{
+			int target = branchRefTargets[i];
+			if (target < 0 || target >= branches.size())
+				return false;
+			lines.get(branchRefOwners[i]).getSelectedBranches().add(branches.get(target));
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the value of an attribute of the current element
+	 * @return The value, or "" if the attribute is missing (as with DOM)
+	 */
+	private static String attribute(XMLStreamReader reader, String name)
+	{
+		String value = reader.getAttributeValue(null, name);
+		return value == null ? "" : value;
+	}
+	
+	/**
+	 * Consumes the rest of the current element, including all of its children
+	 */
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException
+	{
+		int depth = 1;
+		while (depth > 0)
+		{
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package perl.aaron.TruthTrees;
+
+/**
+ * Checks that every line of a truth tree is correctly decomposed. This is the check behind the
+ * editor's "Check Tree" button, usable without a TreePanel.
+ */
+public class TreeVerifier {
+	
+	private TreeVerifier() {}
+	
+	/**
+	 * Checks the premises and then the rest of the tree
+	 * @param premises The premise branch
+	 * @param root The root branch (the branch after the premises)
+	 * @return The first error found, or null if the tree is correct
+	 */
+	public static String check(Branch premises, Branch root)
+	{
+		BranchIndex.of(premises).update();
+		String checkRet = checkBranch(premises);
+		if (checkRet != null)
+			return checkRet;
+		return checkBranch(root);
+	}
+	
+	/**
+	 * Checks the lines of a branch and then each of its child branches
+	 * @param b The branch to check
+	 * @return The first error found, or null if every line is correctly decomposed
+	 */
+	public static String checkBranch(Branch b)
+	{
+		for (int i = 0; i < b.numLines(); i++)
+		{
+			String ret = b.getLine(i).verifyDecomposition();
+			if (ret != null)
+				return ret;
+		}
+		for (Branch curBranch : b.getBranches())
+		{
+			String ret = checkBranch(curBranch);
+			if (ret != null)
+				return ret;
+		}
+		return null;
+	}
+}
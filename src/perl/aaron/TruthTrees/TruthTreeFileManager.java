@@ -25,21 +25,19 @@
 
 package perl.aaron.TruthTrees;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.InputStream;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.Set;
 
-import javax.swing.JFileChooser;
-import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -48,187 +46,80 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.w3c.dom.Element;
-import org.xml.sax.SAXException;
 
+import perl.aaron.TruthTrees.graphics.TreeFileDialogs;
 import perl.aaron.TruthTrees.graphics.TreePanel;
-import perl.aaron.TruthTrees.logic.Statement;
 
 public class TruthTreeFileManager {
-	private static final JFileChooser fileChooser = new JFileChooser();
+	public static final String EXTENSION = "tft";
 	
-	private static final String EXTENSION = "tft";
+	/**
+	 * Shows an open dialog and loads the chosen tree (see TreeFileDialogs, which keeps
+	 * Swing out of this class so that command line loading never touches it)
+	 * @param parent The panel to show the dialog over
+	 * @return The root Branch of the loaded tree, or null if nothing was loaded
+	 */
 	public static Branch loadFile(JPanel parent)
 	{
-		
-		if (fileChooser.showOpenDialog(parent) == JFileChooser.APPROVE_OPTION)
-		{
-			File file = fileChooser.getSelectedFile();
-			System.out.println(file.getName());
-			return loadFromFile(file);
-		}
-		return null;
+		return TreeFileDialogs.loadFile(parent);
 	}
 	
+	/**
+	 * Shows a save dialog and saves the panel's tree to the chosen file
+	 * @param parent The panel holding the tree to save
+	 */
 	public static void saveFile(TreePanel parent)
 	{
-		//final JFileChooser fileChooser = new JFileChooser();
-		FileNameExtensionFilter tftFilter = new FileNameExtensionFilter(
-		  EXTENSION + " files(*." + EXTENSION + ")",
-		  EXTENSION);
-		
-		fileChooser.addChoosableFileFilter(tftFilter);
-		fileChooser.setFileFilter(tftFilter);
-		
-		
-		
-		if (fileChooser.showSaveDialog(parent) == JFileChooser.APPROVE_OPTION)
-		{
-			File file = fileChooser.getSelectedFile();
-			if (fileChooser.getFileFilter() == tftFilter && !file.getName().endsWith("." + EXTENSION))
-				file = new File(file.getAbsolutePath() + "." + EXTENSION);
-			System.out.println(file.getName());
-			saveToFile(parent.getRootBranch(), file, parent);
-		}
+		TreeFileDialogs.saveFile(parent);
 	}
 	
-	private static void processBranchLine(Branch curBranch, Node node, TreePanel panel,
-			ArrayList<Set<Integer>> lineDecompositions, ArrayList<Set<Integer>> branchDecompositions,
-			ArrayList<BranchLine> lines, ArrayList<Branch> branches)
+	/**
+	 * Loads a tree from a file, building the Branch/BranchLine model directly
+	 * (no TreePanel or other Swing components are created)
+	 * @param file The tft file to load
+	 * @return The root Branch of the decomposition (its root is the premise Branch),
+	 * or null if the file could not be read
+	 */
+	public static Branch loadFromFile(File file)
 	{
-		LinkedHashSet<Integer> curLineDecompositions = new LinkedHashSet<Integer>();
-		LinkedHashSet<Integer> curBranchDecompositions = new LinkedHashSet<Integer>();
-		Element curElement = (Element) node;
-		BranchLine newLine;
-		int lineIndex;
-		String lineIndexString;
-		if (node.getNodeName().equals("Terminator")){
-			lineIndexString = curElement.getAttribute("index");
-			lineIndex = Integer.parseInt(lineIndexString);
-			
-			System.out.println("Term: "+lineIndex);
-			newLine = panel.addTerminator(curBranch);
-		}
-		else
-		{
-			lineIndexString = curElement.getAttribute("index");
-			lineIndex = Integer.parseInt(lineIndexString);
-			String content = curElement.getAttribute("content");
-			System.out.println(content + " -- " + lineIndex);
-			
-			
-			Statement newStatement = ExpressionParser.parseExpression(content);
-			newLine = panel.addStatement(curBranch, newStatement);
-		}
-		lines.add(newLine);
-		NodeList decompositions = node.getChildNodes();
-		for (int j = 0; j < decompositions.getLength(); j++)
-		{
-			Node curDecomp = decompositions.item(j);
-			if (curDecomp.getNodeName().equals("Decomposition"))
-			{
-				Element decompElement = (Element) curDecomp;
-				String branchIndexString = decompElement.getAttribute("branchIndex");
-				if (!branchIndexString.equals(""))
-				{
-					//System.out.println("Branch index:" + branchIndexString);
-					int branchIndex = Integer.parseInt(branchIndexString);
-					curBranchDecompositions.add(branchIndex);
-				}
-				lineIndexString = decompElement.getAttribute("lineIndex");
-				if (!lineIndexString.equals(""))
-				{
-					//System.out.println("Line index:" + lineIndexString);
-					lineIndex = Integer.parseInt(lineIndexString);
-					curLineDecompositions.add(lineIndex);
-				}
-			}
-		}
-		lineDecompositions.add(curLineDecompositions);
-		branchDecompositions.add(curBranchDecompositions);
+		return loadFromFile(file, new ModelTreeBuilder());
 	}
 	
-	private static void processNode(Branch curBranch, Node curNode, TreePanel panel,
-			ArrayList<Set<Integer>> lineDecompositions, ArrayList<Set<Integer>> branchDecompositions,
-			ArrayList<BranchLine> lines, ArrayList<Branch> branches)
+	/**
+	 * Loads a tree from a file, passing each element to a TreeBuilder
+	 * @param file The tft file to load, or a binary tree file (see BinaryTreeFile)
+	 * @param treeBuilder The builder to build the tree with
+	 * @return The root Branch of the decomposition (its root is the premise Branch),
+	 * or null if the file could not be read
+	 */
+	public static Branch loadFromFile(File file, TreeBuilder treeBuilder)
 	{
-		NodeList children = curNode.getChildNodes();
-		for (int i = 0; i < children.getLength(); i++)
+		if (BinaryTreeFile.isBinaryTreeFile(file))
+			return BinaryTreeFile.loadFromFile(file, treeBuilder);
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+			return loadFromStream(in, treeBuilder);
+		}
+		catch (IOException e)
 		{
-			Node curChild = children.item(i);
-			if (curChild.getNodeName().equals("Branch"))
-			{
-				Branch newBranch = panel.addBranch(curBranch, false);
-				branches.add(newBranch);
-				processNode(newBranch, curChild, panel, lineDecompositions, branchDecompositions, lines, branches);
-			}
-			else if (curChild.getNodeName().equals("BranchLine") || curChild.getNodeName().equals("Terminator"))
-			{
-				processBranchLine(curBranch, curChild, panel, lineDecompositions, branchDecompositions, lines, branches);
-			}
+			return null; // error reading xml file
 		}
 	}
 	
-	public static Branch loadFromFile(File file)
+	/**
+	 * Loads a tree from a stream of tft XML, which is parsed as it is read
+	 * (see TreeStreamLoader) so no document is held in memory
+	 * @param in The stream to read (not closed)
+	 * @param treeBuilder The builder to build the tree with
+	 * @return The root Branch of the decomposition (its root is the premise Branch),
+	 * or null if the stream does not hold a valid tree
+	 */
+	public static Branch loadFromStream(InputStream in, TreeBuilder treeBuilder)
 	{
 		try {
-			TreePanel newPanel = new TreePanel(false);
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			Document doc = builder.parse(file);
-			doc.getDocumentElement().normalize();
-			Branch rootBranch = newPanel.getRootBranch();
-			Branch premiseBranch = rootBranch.getRoot();
-			Node rootElement = doc.getDocumentElement();
-			NodeList rootList = rootElement.getChildNodes();
-			ArrayList<Set<Integer>> lineDecompositions = new ArrayList<Set<Integer>>();
-			ArrayList<Set<Integer>> branchDecompositions = new ArrayList<Set<Integer>>();
-			ArrayList<BranchLine> lines = new ArrayList<BranchLine>();
-			ArrayList<Branch> branches = new ArrayList<Branch>();
-			branches.add(rootBranch);
-			boolean foundRoot = false;
-			for (int i = 0; i < rootList.getLength(); i++)
-			{
-				Node curNode = rootList.item(i);
-				if (curNode.getNodeName().equals("BranchLine"))
-				{
-					processBranchLine(premiseBranch, curNode, newPanel, lineDecompositions, branchDecompositions, lines, branches);
-				}
-				else if(curNode.getNodeName().equals("Branch"))
-				{
-					if (foundRoot)
-						return null; // two root nodes
-					foundRoot = true;
-					processNode(rootBranch,curNode,newPanel,
-							lineDecompositions, branchDecompositions,
-							lines, branches);
-				}
-			}
-			for (int i = 0; i < lines.size(); i++)
-			{
-				Set<Integer> curLineIndices = lineDecompositions.get(i);
-				Set<Integer> curBranchIndices = branchDecompositions.get(i);
-				BranchLine curLine = lines.get(i);
-				Set<BranchLine> selectedLines = curLine.getSelectedLines();
-				Set<Branch> selectedBranches = curLine.getSelectedBranches();
-				for (int lineIndex : curLineIndices)
-				{
-					BranchLine curDecomp = lines.get(lineIndex);
-					selectedLines.add(curDecomp);
-					if (!(curLine instanceof BranchTerminator))
-						curDecomp.setDecomposedFrom(curLine);
-				}
-				for (int branchIndex : curBranchIndices)
-				{
-					Branch curDecomp = branches.get(branchIndex);
-					selectedBranches.add(curDecomp);
-				}
-			}
-			return rootBranch;
+			return TreeStreamLoader.load(in, treeBuilder);
 		}
-		catch (ParserConfigurationException | SAXException | IOException e)
+		catch (XMLStreamException | NumberFormatException e)
 		{
 			return null; // error reading xml file
 		}
@@ -286,8 +177,29 @@ public class TruthTreeFileManager {
 		}
 	}
 	
-	private static void saveToFile(Branch root, File file, TreePanel parent)
+	/**
+	 * Saves a tree to a file
+	 * @param root The root Branch of the decomposition (its root is the premise Branch)
+	 * @param file The file to write
+	 * @return True if the file was written, false otherwise
+	 */
+	public static boolean saveToFile(Branch root, File file)
 	{
+		return saveToFile(root, file, true);
+	}
+	
+	/**
+	 * Saves a tree to a file, as tft XML or, if the file has the binary tree extension, in the
+	 * binary tree format (see BinaryTreeFile)
+	 * @param root The root Branch of the decomposition (its root is the premise Branch)
+	 * @param file The file to write
+	 * @param indent Whether to indent each element by its depth; deep trees are much smaller without
+	 * @return True if the file was written, false otherwise
+	 */
+	public static boolean saveToFile(Branch root, File file, boolean indent)
+	{
+		if (BinaryTreeFile.isBinaryTreeFile(file))
+			return BinaryTreeFile.saveToFile(root, file);
 		try {
 			LinkedHashMap<Branch, Integer> branchIndexMap = new LinkedHashMap<Branch, Integer>();
 			LinkedHashMap<BranchLine, Integer> lineIndexMap = new LinkedHashMap<BranchLine, Integer>();
@@ -309,13 +221,16 @@ public class TruthTreeFileManager {
 			Transformer transformer = tfactory.newTransformer();
 			DOMSource source = new DOMSource(doc);
 			StreamResult result = new StreamResult(file);
-			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-			transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+			if (indent)
+			{
+				transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+				transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+			}
 			transformer.transform(source, result);
-			
+			return true;
 			
 		} catch (ParserConfigurationException | TransformerException e) {
-			JOptionPane.showMessageDialog(parent, "Error: Could not save file!");
+			return false;
 		}
 		
 	}
@@ -0,0 +1,322 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package perl.aaron.TruthTrees;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the result of checking each line of a tree, so that after an edit only the lines it can
+ * affect are checked again. Once attached to a tree, the tree reports every change to it: a
+ * line's statement, premise flag or decomposedFrom, its selected lines or branches, and lines
+ * or branches being added or removed. A changed line is checked again, as is every line that
+ * selected it. Since a line's check walks the branches below it (BranchLine.satisfiesAllBranches),
+ * adding or removing a branch or a terminator also checks again every line of that branch and of
+ * the branches above it.
+ * 
+ * Not thread safe; the tree should only be edited and checked on one thread (the event thread
+ * for a TreePanel).
+ */
+public class VerificationCache {
+	
+	private Branch premises;
+	/** every line of the attached tree */
+	private final Set<BranchLine> lines = new HashSet<BranchLine>();
+	private final Set<BranchLine> dirty = new LinkedHashSet<BranchLine>();
+	private final Map<BranchLine, String> errors = new HashMap<BranchLine, String>();
+	/** the lines whose last check read each line (through their selected lines) */
+	private final Map<BranchLine, Set<BranchLine>> lineReaders = new HashMap<BranchLine, Set<BranchLine>>();
+	/** the lines whose last check read each branch's children (through their selected branches) */
+	private final Map<Branch, Set<BranchLine>> branchReaders = new HashMap<Branch, Set<BranchLine>>();
+	/** what each line's last check read, to unregister it as a reader when it is checked again */
+	private final Map<BranchLine, List<Object>> reads = new HashMap<BranchLine, List<Object>>();
+	private int rechecked;
+	
+	/**
+	 * Attaches the cache to a tree, detaching it from the tree it was attached to before.
+	 * Every line of the new tree is checked by the next call to check.
+	 * @param premises The premise branch of the tree
+	 */
+	public void attach(Branch premises)
+	{
+		if (this.premises != null)
+			setCache(this.premises, null);
+		lines.clear();
+		dirty.clear();
+		errors.clear();
+		lineReaders.clear();
+		branchReaders.clear();
+		reads.clear();
+		this.premises = premises;
+		if (premises != null)
+		{
+			attachBranch(premises);
+			BranchIndex.of(premises);
+		}
+	}
+	
+	/**
+	 * Checks every line changed since the last check
+	 * @return The first error in the tree (in the order TreeVerifier checks it), or null if the tree is correct
+	 */
+	public String check()
+	{
+		rechecked = dirty.size();
+		for (BranchLine line : dirty)
+		{
+			unregisterReads(line);
+			String result = line.verifyDecomposition();
+			if (result == null)
+				errors.remove(line);
+			else
+				errors.put(line, result);
+			List<Object> lineReads = new ArrayList<Object>(line.getSelectedLines().size() + line.getSelectedBranches().size());
+			for (BranchLine selected : line.getSelectedLines())
+			{
+				readersOf(lineReaders, selected).add(line);
+				lineReads.add(selected);
+			}
+			for (Branch selected : line.getSelectedBranches())
+			{
+				readersOf(branchReaders, selected).add(line);
+				lineReads.add(selected);
+			}
+			reads.put(line, lineReads);
+		}
+		dirty.clear();
+		
+		BranchLine first = null;
+		List<Integer> firstPosition = null;
+		for (BranchLine line : errors.keySet())
+		{
+			List<Integer> position = position(line);
+			if (first == null || compare(position, firstPosition) < 0)
+			{
+				first = line;
+				firstPosition = position;
+			}
+		}
+		return first == null ? null : errors.get(first);
+	}
+	
+	/**
+	 * @return The number of lines the last call to check verified
+	 */
+	public int getRecheckedCount()
+	{
+		return rechecked;
+	}
+	
+	void statementChanged(BranchLine line)
+	{
+		markDirty(line);
+		markReaders(line);
+	}
+	
+	void lineChanged(BranchLine line)
+	{
+		markDirty(line);
+	}
+	
+	void lineAdded(BranchLine line)
+	{
+		lines.add(line);
+		dirty.add(line);
+		if (line instanceof BranchTerminator)
+			structureChanged(line.getParent());
+	}
+	
+	void lineRemoved(BranchLine line)
+	{
+		forget(line);
+		if (line instanceof BranchTerminator)
+			structureChanged(line.getParent());
+	}
+	
+	void branchAdded(Branch parent, Branch child)
+	{
+		attachBranch(child);
+		structureChanged(parent);
+	}
+	
+	void branchRemoved(Branch parent, Branch child)
+	{
+		Deque<Branch> stack = new ArrayDeque<Branch>();
+		stack.push(child);
+		while (!stack.isEmpty())
+		{
+			Branch curBranch = stack.pop();
+			curBranch.cache = null;
+			branchReaders.remove(curBranch);
+			for (int i = 0; i < curBranch.numLines(); i++)
+				forget(curBranch.getLine(i));
+			for (Branch curChild : curBranch.getBranches())
+				stack.push(curChild);
+		}
+		structureChanged(parent);
+	}
+	
+	/**
+	 * Marks every line of a branch and of the branches above it, whose checks walk the changed
+	 * branch, and every line that selected the branch
+	 */
+	private void structureChanged(Branch branch)
+	{
+		for (Branch curBranch = branch; curBranch != null; curBranch = curBranch.getRoot())
+		{
+			for (int i = 0; i < curBranch.numLines(); i++)
+				markDirty(curBranch.getLine(i));
+		}
+		Set<BranchLine> readers = branchReaders.get(branch);
+		if (readers != null)
+			for (BranchLine reader : readers)
+				markDirty(reader);
+	}
+	
+	private void markDirty(BranchLine line)
+	{
+		if (lines.contains(line))
+			dirty.add(line);
+	}
+	
+	private void markReaders(BranchLine line)
+	{
+		Set<BranchLine> readers = lineReaders.get(line);
+		if (readers != null)
+			for (BranchLine reader : readers)
+				markDirty(reader);
+	}
+	
+	private void forget(BranchLine line)
+	{
+		markReaders(line);
+		lines.remove(line);
+		dirty.remove(line);
+		errors.remove(line);
+		unregisterReads(line);
+		lineReaders.remove(line);
+	}
+	
+	private void unregisterReads(BranchLine line)
+	{
+		List<Object> lineReads = reads.remove(line);
+		if (lineReads == null)
+			return;
+		for (Object read : lineReads)
+		{
+			Set<BranchLine> readers = read instanceof Branch ? branchReaders.get(read) : lineReaders.get(read);
+			if (readers != null)
+				readers.remove(line);
+		}
+	}
+	
+	private void attachBranch(Branch branch)
+	{
+		Deque<Branch> stack = new ArrayDeque<Branch>();
+		stack.push(branch);
+		while (!stack.isEmpty())
+		{
+			Branch curBranch = stack.pop();
+			curBranch.cache = this;
+			for (int i = 0; i < curBranch.numLines(); i++)
+			{
+				lines.add(curBranch.getLine(i));
+				dirty.add(curBranch.getLine(i));
+			}
+			for (Branch curChild : curBranch.getBranches())
+				stack.push(curChild);
+		}
+	}
+	
+	private static void setCache(Branch branch, VerificationCache cache)
+	{
+		Deque<Branch> stack = new ArrayDeque<Branch>();
+		stack.push(branch);
+		while (!stack.isEmpty())
+		{
+			Branch curBranch = stack.pop();
+			curBranch.cache = cache;
+			for (Branch curChild : curBranch.getBranches())
+				stack.push(curChild);
+		}
+	}
+	
+	private static <K> Set<BranchLine> readersOf(Map<K, Set<BranchLine>> readerMap, K key)
+	{
+		Set<BranchLine> readers = readerMap.get(key);
+		if (readers == null)
+		{
+			readers = new HashSet<BranchLine>();
+			readerMap.put(key, readers);
+		}
+		return readers;
+	}
+	
+	/**
+	 * Returns where a line is in the tree: the index of each branch among its parent's children,
+	 * from the premises down, then -1 and the line's index in its branch. Comparing positions gives
+	 * the order lines are checked in, with a branch's lines before those of its children.
+	 */
+	private static List<Integer> position(BranchLine line)
+	{
+		List<Integer> position = new ArrayList<Integer>();
+		Branch branch = line.getParent();
+		int lineIndex = 0;
+		while (branch.getLine(lineIndex) != line)
+			lineIndex++;
+		position.add(lineIndex);
+		position.add(-1);
+		for (Branch curBranch = branch; curBranch.getRoot() != null; curBranch = curBranch.getRoot())
+		{
+			int childIndex = 0;
+			Iterator<Branch> siblings = curBranch.getRoot().getBranches().iterator();
+			while (siblings.next() != curBranch)
+				childIndex++;
+			position.add(childIndex);
+		}
+		Collections.reverse(position);
+		return position;
+	}
+	
+	private static int compare(List<Integer> a, List<Integer> b)
+	{
+		for (int i = 0; i < a.size() && i < b.size(); i++)
+		{
+			int cmp = Integer.compare(a.get(i), b.get(i));
+			if (cmp != 0)
+				return cmp;
+		}
+		return Integer.compare(a.size(), b.size());
+	}
+}
@@ -0,0 +1,285 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package perl.aaron.TruthTrees;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks every line of a truth tree in parallel. The tree is split across a ForkJoinPool by
+ * subtree, and long branches (such as the premises) by runs of lines, since each line's
+ * decomposition is checked independently of the others. Unlike TreeVerifier, which stops at the
+ * first error, this collects every error along with where it is in the tree.
+ * 
+ * Tasks never wait on each other, so even trees thousands of branches deep don't grow the
+ * worker threads' stacks beyond what checking a single line needs.
+ */
+public class VerificationEngine {
+	
+	/** lines checked by one task before the rest of a long branch is handed off */
+	private static final int LINES_PER_TASK = 64;
+	
+	/**
+	 * An incorrectly decomposed line
+	 */
+	public static final class LineError
+	{
+		private final BranchLine line;
+		private final int index;
+		private final String message;
+		
+		LineError(BranchLine line, int index, String message)
+		{
+			this.line = line;
+			this.index = index;
+			this.message = message;
+		}
+		
+		/**
+		 * @return The incorrect line
+		 */
+		public BranchLine getLine()
+		{
+			return line;
+		}
+		
+		/**
+		 * @return The index of the line in the tree, counting the premises and then each branch's lines
+		 * before its child branches, the same as the line's index in a saved tree file
+		 */
+		public int getIndex()
+		{
+			return index;
+		}
+		
+		/**
+		 * @return What is wrong with the line, as TreeVerifier would report it
+		 */
+		public String getMessage()
+		{
+			return message;
+		}
+		
+		public String toString()
+		{
+			return "Line " + index + ": " + message;
+		}
+	}
+	
+	private final int parallelism;
+	
+	/**
+	 * Creates an engine that checks on the given number of threads
+	 * @param parallelism The number of threads, at least 1
+	 */
+	public VerificationEngine(int parallelism)
+	{
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Checks every line of a tree
+	 * @param root The root Branch of the decomposition (its root is the premise Branch)
+	 * @return Every error, ordered by line index; empty if the tree is correct
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 */
+	public List<LineError> checkAll(Branch root) throws InterruptedException
+	{
+		return run(root, false);
+	}
+	
+	/**
+	 * Checks a tree until an error is found, then cancels the remaining work. The error is the first
+	 * one found by any thread, which is not necessarily the first in the tree.
+	 * @param root The root Branch of the decomposition (its root is the premise Branch)
+	 * @return An error, or null if the tree is correct
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 */
+	public LineError checkFirst(Branch root) throws InterruptedException
+	{
+		List<LineError> errors = run(root, true);
+		return errors.isEmpty() ? null : errors.get(0);
+	}
+	
+	private List<LineError> run(Branch root, boolean firstOnly) throws InterruptedException
+	{
+		Check check = new Check(firstOnly);
+		BranchIndex.of(root).update(); // number the tree before the tasks start querying it
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			check.start(pool, root.getRoot());
+			check.done.await();
+		} finally {
+			pool.shutdownNow();
+		}
+		if (check.failure.get() != null)
+			throw new IllegalStateException("Could not check tree", check.failure.get());
+		return index(root.getRoot(), check.errors);
+	}
+	
+	/**
+	 * The state shared by the tasks of one check. The latch opens once the last task finishes.
+	 */
+	private static final class Check
+	{
+		private final boolean firstOnly;
+		private final AtomicBoolean stopped = new AtomicBoolean();
+		private final AtomicInteger pending = new AtomicInteger();
+		private final CountDownLatch done = new CountDownLatch(1);
+		private final Map<BranchLine, String> errors = new ConcurrentHashMap<BranchLine, String>();
+		private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		
+		Check(boolean firstOnly)
+		{
+			this.firstOnly = firstOnly;
+		}
+		
+		void start(ForkJoinPool pool, Branch premises)
+		{
+			pending.incrementAndGet();
+			pool.execute(new Task(this, premises, 0));
+		}
+		
+		void fork(Branch branch, int firstLine)
+		{
+			pending.incrementAndGet();
+			new Task(this, branch, firstLine).fork();
+		}
+		
+		void finished()
+		{
+			if (pending.decrementAndGet() == 0)
+				done.countDown();
+		}
+		
+		void error(BranchLine line, String message)
+		{
+			if (!firstOnly || stopped.compareAndSet(false, true))
+				errors.put(line, message);
+		}
+	}
+	
+	/**
+	 * Checks the lines of a branch from the given line on, then walks down into its first child
+	 * branch, forking a task for the rest of any long branch and for every other child branch
+	 */
+	private static final class Task extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final Check check;
+		private final Branch branch;
+		private final int firstLine;
+		
+		Task(Check check, Branch branch, int firstLine)
+		{
+			this.check = check;
+			this.branch = branch;
+			this.firstLine = firstLine;
+		}
+		
+		protected void compute()
+		{
+			try {
+				Branch curBranch = branch;
+				int curLine = firstLine;
+				while (curBranch != null && !check.stopped.get())
+				{
+					int end = curBranch.numLines();
+					if (end - curLine > LINES_PER_TASK)
+					{
+						end = curLine + LINES_PER_TASK;
+						check.fork(curBranch, end);
+					}
+					for (int i = curLine; i < end && !check.stopped.get(); i++)
+					{
+						BranchLine line = curBranch.getLine(i);
+						String ret = line.verifyDecomposition();
+						if (ret != null)
+							check.error(line, ret);
+					}
+					if (end < curBranch.numLines())
+						break; // the forked task carries on with this branch and its children
+					Branch next = null;
+					for (Branch child : curBranch.getBranches())
+					{
+						if (next == null)
+							next = child;
+						else
+							check.fork(child, 0);
+					}
+					curBranch = next;
+					curLine = 0;
+				}
+			}
+			catch (RuntimeException | Error e) {
+				// record it so run throws rather than returning the errors found before it
+				check.failure.compareAndSet(null, e);
+				check.stopped.set(true);
+			}
+			finally {
+				check.finished();
+			}
+		}
+	}
+	
+	/**
+	 * Numbers the lines of the tree in file order to find the index of each error
+	 */
+	private static List<LineError> index(Branch premises, Map<BranchLine, String> messages)
+	{
+		List<LineError> errors = new ArrayList<LineError>();
+		int index = 0;
+		Deque<Branch> stack = new ArrayDeque<Branch>();
+		stack.push(premises);
+		while (!stack.isEmpty() && errors.size() < messages.size())
+		{
+			Branch curBranch = stack.pop();
+			for (int i = 0; i < curBranch.numLines(); i++, index++)
+			{
+				BranchLine line = curBranch.getLine(i);
+				String message = messages.get(line);
+				if (message != null)
+					errors.add(new LineError(line, index, message));
+			}
+			List<Branch> children = new ArrayList<Branch>(curBranch.getBranches());
+			for (int i = children.size() - 1; i >= 0; i--)
+				stack.push(children.get(i));
+		}
+		return errors;
+	}
+}
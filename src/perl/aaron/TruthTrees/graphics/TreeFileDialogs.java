@@ -0,0 +1,81 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package perl.aaron.TruthTrees.graphics;
+
+import java.io.File;
+
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import perl.aaron.TruthTrees.Branch;
+import perl.aaron.TruthTrees.TruthTreeFileManager;
+
+/**
+ * File dialogs for loading and saving trees from the GUI
+ * @author Aaron Perl
+ *
+ */
+public class TreeFileDialogs {
+	private static final JFileChooser fileChooser = new JFileChooser();
+	
+	private static final String EXTENSION = TruthTreeFileManager.EXTENSION;
+	
+	private TreeFileDialogs() {}
+	
+	public static Branch loadFile(JPanel parent)
+	{
+		
+		if (fileChooser.showOpenDialog(parent) == JFileChooser.APPROVE_OPTION)
+		{
+			File file = fileChooser.getSelectedFile();
+			System.out.println(file.getName());
+			return TruthTreeFileManager.loadFromFile(file);
+		}
+		return null;
+	}
+	
+	public static void saveFile(TreePanel parent)
+	{
+		FileNameExtensionFilter tftFilter = new FileNameExtensionFilter(
+		  EXTENSION + " files(*." + EXTENSION + ")",
+		  EXTENSION);
+		
+		fileChooser.addChoosableFileFilter(tftFilter);
+		fileChooser.setFileFilter(tftFilter);
+		
+		if (fileChooser.showSaveDialog(parent) == JFileChooser.APPROVE_OPTION)
+		{
+			File file = fileChooser.getSelectedFile();
+			if (fileChooser.getFileFilter() == tftFilter && !file.getName().endsWith("." + EXTENSION))
+				file = new File(file.getAbsolutePath() + "." + EXTENSION);
+			System.out.println(file.getName());
+			if (!TruthTreeFileManager.saveToFile(parent.getRootBranch(), file))
+				JOptionPane.showMessageDialog(parent, "Error: Could not save file!");
+		}
+	}
+}
@@ -42,10 +42,10 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.text.ParseException;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -64,7 +64,11 @@ import javax.swing.text.DocumentFilter;
 import perl.aaron.TruthTrees.Branch;
 import perl.aaron.TruthTrees.BranchLine;
 import perl.aaron.TruthTrees.BranchTerminator;
+import perl.aaron.TruthTrees.EditHistory;
 import perl.aaron.TruthTrees.ExpressionParser;
+import perl.aaron.TruthTrees.ModelTreeBuilder;
+import perl.aaron.TruthTrees.TreeBuilder;
+import perl.aaron.TruthTrees.VerificationCache;
 import perl.aaron.TruthTrees.logic.Statement;
 
 /**
@@ -76,7 +80,10 @@ public class TreePanel extends JPanel {
 	
 	private static final long serialVersionUID = 2267768929169530856L;
 	private static final int UNDO_STACK_SIZE = 32;
-	private static final int REDO_STACK_SIZE = 32;
+	private static final long UNDO_HISTORY_BYTES = 4L << 20;
+	public static final Color SELECTED_COLOR = new Color(0.3f,0.9f,0.9f);
+	public static final Color DEFAULT_COLOR = Color.LIGHT_GRAY;
+	public static final Color EDIT_COLOR = Color.GREEN;
 
 	private Branch root;
 	private Point center;
@@ -93,8 +100,8 @@ public class TreePanel extends JPanel {
 	private Set<BranchLine> selectedLines;
 	private Set<Branch> selectedBranches;
 	private Branch premises;
-	private Deque<Branch> undoStack;
-	private Deque<Branch> redoStack;
+	private final EditHistory history = new EditHistory(UNDO_STACK_SIZE, UNDO_HISTORY_BYTES);
+	private final VerificationCache verificationCache = new VerificationCache();
 	
 	public TreePanel()
 	{
@@ -120,10 +127,10 @@ public class TreePanel extends JPanel {
 		reverseLineMap = new HashMap<BranchLine, JTextField>();
 		this.setFont(this.getFont().deriveFont(size));
 		premises = addBranch(null, true);
-		undoStack = new ArrayDeque<Branch>(UNDO_STACK_SIZE);
-		redoStack = new ArrayDeque<Branch>(REDO_STACK_SIZE);
 		
 		root = addBranch(premises, false);
+		verificationCache.attach(premises);
+		history.attach(premises);
 		
 		setFocusable(true);
 		addMouseListener(new MouseListener() {
@@ -163,118 +170,138 @@ public class TreePanel extends JPanel {
 		moveComponents();
 	}
 	
+	/**
+	 * Starts a new undoable edit; everything changed until the next call is undone together
+	 */
 	private void recordState()
 	{
-		if (premises != null)
-		{
-			Branch treeCopy = premises.deepCopy();
-
-			Map<BranchLine, BranchLine> lineMap = new HashMap<BranchLine, BranchLine>();
-			Map<Branch, Branch> branchMap = new HashMap<Branch, Branch>();
-			
-			mapNewToOld(premises, treeCopy, lineMap, branchMap);
-			addLineReferences(lineMap, branchMap);
-			
-			undoStack.push(treeCopy);
-			redoStack = new ArrayDeque<>();
-		}
+		history.checkpoint();
 	}
 	
 	/**
-	 * Maps every item in a copy of a branch to the corresponding item in the original
-	 * @param oldBranch The original branch
-	 * @param newBranch The copy of the original branch
-	 * @param lineMap A map of old lines to new lines to be populated
-	 * @param branchMap A map of old branches to new branches to be populated
+	 * Undoes the previous state change.
 	 */
-	private void mapNewToOld(Branch oldBranch, Branch newBranch,
-	  Map<BranchLine, BranchLine> lineMap,
-	  Map<Branch, Branch> branchMap)
+	public void undoState()
 	{
-		branchMap.put(oldBranch, newBranch);
-		for (int i = 0; i < oldBranch.numLines(); i++)
-		{
-			lineMap.put(oldBranch.getLine(i), newBranch.getLine(i));
-		}
-		Iterator<Branch> oldIter = oldBranch.getBranches().iterator();
-		Iterator<Branch> newIter = newBranch.getBranches().iterator();
-		while (oldIter.hasNext())
-		{
-			mapNewToOld(oldIter.next(), newIter.next(), lineMap, branchMap);
-		}
+		EditHistory.Changes changes = history.undo();
+		if (changes != null)
+			showChanges(changes);
 	}
 	
 	/**
-	 * Adds all references (decompositions, etc.) from lines in a tree to a copy
-	 * of that tree, updating them to point to the components in the copy
-	 * @param lineMap The map of old lines to each corresponding lines in the copy
-	 * @param branchMap The map of branches to each corresponding branch in the copy
+	 * Performs the previously undone state change again
 	 */
-	private void addLineReferences(Map<BranchLine, BranchLine> lineMap,
-	  Map<Branch, Branch> branchMap)
+	public void redoState()
 	{
-		for (BranchLine oldLine : lineMap.keySet())
+		EditHistory.Changes changes = history.redo();
+		if (changes != null)
+			showChanges(changes);
+	}
+	
+	/**
+	 * Brings the components up to date with the lines and branches an undo or redo changed
+	 * @param changes The changed lines and branches
+	 */
+	private void showChanges(EditHistory.Changes changes)
+	{
+		deselectCurrentLine();
+		for (Branch b : changes.getBranches())
 		{
-			BranchLine newLine = lineMap.get(oldLine);
-			
-			BranchLine oldDecomposedFrom = oldLine.getDecomposedFrom();
-			BranchLine newDecomposedFrom = lineMap.get(oldDecomposedFrom);
-			newLine.setDecomposedFrom(newDecomposedFrom);
-			
-			Set<BranchLine> oldSelectedLineSet = oldLine.getSelectedLines();
-			Set<BranchLine> newSelectedLineSet = newLine.getSelectedLines();
-			for (BranchLine oldSelected : oldSelectedLineSet)
+			if (isInTree(b))
 			{
-				BranchLine newSelected = lineMap.get(oldSelected);
-				newSelectedLineSet.add(newSelected);
+				if (!addBranchMap.containsKey(b))
+					addComponentsRecursively(b);
 			}
-			
-			Set<Branch> oldSelectedBranchSet = oldLine.getSelectedBranches();
-			Set<Branch> newSelectedBranchSet = newLine.getSelectedBranches();
-			for (Branch oldSelected : oldSelectedBranchSet)
+			else
+				removeComponentsRecursively(b);
+		}
+		for (BranchLine line : changes.getLines())
+		{
+			JTextField field = reverseLineMap.get(line);
+			if (isInTree(line))
 			{
-				Branch newSelected = branchMap.get(oldSelected);
-				newSelectedBranchSet.add(newSelected);
+				if (field == null)
+					makeTextFieldForLine(line, line.getParent(), line instanceof BranchTerminator);
+				else if (!(line instanceof BranchTerminator))
+					field.setText(line.toString());
+				line.getParent().calculateWidestLine();
+			}
+			else if (field != null)
+			{
+				remove(field);
+				lineMap.remove(field);
+				reverseLineMap.remove(line);
 			}
-			
-			newLine.setIsPremise(oldLine.isPremise());			
 		}
+		moveComponents();
+		repaint();
 	}
 	
 	/**
-	 * Undoes the previous state change.
+	 * Returns whether a branch is part of the tree shown, rather than removed from it
 	 */
-	public void undoState()
+	private boolean isInTree(Branch b)
 	{
-		if (!undoStack.isEmpty())
+		while (b != premises)
 		{
-			redoStack.push(premises.deepCopy());
-			premises = undoStack.pop();
-			root = premises.getBranches().iterator().next();
-			editLine = null;
-			resetAllComponents();
-			moveComponents();
-			repaint();
+			Branch parent = b.getRoot();
+			if (parent == null || !parent.getBranches().contains(b))
+				return false;
+			b = parent;
 		}
+		return true;
 	}
 	
 	/**
-	 * Performs the previously undone state change again
+	 * Returns whether a line is part of the tree shown, rather than removed from it
 	 */
-	public void redoState()
+	private boolean isInTree(BranchLine line)
 	{
-		if (!redoStack.isEmpty())
+		Branch b = line.getParent();
+		for (int i = 0; i < b.numLines(); i++)
 		{
-			undoStack.push(premises.deepCopy());
-			premises = redoStack.pop();
-			root = premises.getBranches().iterator().next();
-			editLine = null;
-			resetAllComponents();
-			moveComponents();
-			repaint();
+			if (b.getLine(i) == line)
+				return isInTree(b);
+		}
+		return false;
+	}
+	
+	/**
+	 * Removes the components of a branch that is no longer part of the tree, and those of its
+	 * lines and children
+	 * @param b The removed branch
+	 */
+	private void removeComponentsRecursively(Branch b)
+	{
+		Deque<Branch> stack = new ArrayDeque<Branch>();
+		stack.push(b);
+		while (!stack.isEmpty())
+		{
+			Branch curBranch = stack.pop();
+			removeComponent(addBranchMap.remove(curBranch));
+			removeComponent(addLineMap.remove(curBranch));
+			removeComponent(branchMap.remove(curBranch));
+			removeComponent(terminateMap.remove(curBranch));
+			for (int i = 0; i < curBranch.numLines(); i++)
+			{
+				JTextField field = reverseLineMap.remove(curBranch.getLine(i));
+				if (field != null)
+				{
+					remove(field);
+					lineMap.remove(field);
+				}
+			}
+			for (Branch curChild : curBranch.getBranches())
+				stack.push(curChild);
 		}
 	}
 	
+	private void removeComponent(JComponent comp)
+	{
+		if (comp != null)
+			remove(comp);
+	}
+	
 	/**
 	 * Deletes all components saved and recreates them for the current tree.
 	 */
@@ -357,30 +384,13 @@ public class TreePanel extends JPanel {
 		return l.verifyDecomposition();
 	}
 
-	private String checkBranch(Branch b)
-	{
-		for (int i = 0; i < b.numLines(); i++)
-		{
-			BranchLine curLine = b.getLine(i);
-			String ret = checkLine(curLine);
-			if (ret != null)
-				return ret;
-		}
-		for (Branch curBranch : b.getBranches())
-		{
-			String ret = checkBranch(curBranch);
-			if (ret != null)
-				return ret;
-		}
-		return null;
-	}
-	
+	/**
+	 * Checks the tree, only checking again the lines affected by edits since the last check
+	 * @return The first error in the tree, or null if it is correct
+	 */
 	public String check()
 	{
-		String checkRet = checkBranch(premises);
-		if (checkRet != null)
-			return checkRet;
-		return checkBranch(root);
+		return verificationCache.check();
 	}
 	
 	public String checkSelectedLine()
@@ -496,14 +506,14 @@ public class TreePanel extends JPanel {
 		if (curSelected.contains(b))
 		{
 			curSelected.remove(b);
-			reverseLineMap.get(b).setBackground(BranchLine.DEFAULT_COLOR);
+			reverseLineMap.get(b).setBackground(DEFAULT_COLOR);
 			if (!(editLine instanceof BranchTerminator))
 				b.setDecomposedFrom(null);
 		}
 		else
 		{
 			curSelected.add(b);
-			reverseLineMap.get(b).setBackground(BranchLine.SELECTED_COLOR);
+			reverseLineMap.get(b).setBackground(SELECTED_COLOR);
 			if (!(editLine instanceof BranchTerminator))
 				b.setDecomposedFrom(editLine);
 		}
@@ -529,11 +539,11 @@ public class TreePanel extends JPanel {
 //				System.exit(-1);
 //			}
 			if (isSelected(curLine))
-				curField.setBackground(BranchLine.SELECTED_COLOR);
+				curField.setBackground(SELECTED_COLOR);
 			else if (curLine == editLine)
-				curField.setBackground(BranchLine.EDIT_COLOR);
+				curField.setBackground(EDIT_COLOR);
 			else
-				curField.setBackground(BranchLine.DEFAULT_COLOR);
+				curField.setBackground(DEFAULT_COLOR);
 			curField.setBounds(	origin.x - maxLineWidth/2, origin.y + verticalOffset,
 								maxLineWidth, b.getLineHeight());
 			curField.repaint();
@@ -767,7 +777,16 @@ public class TreePanel extends JPanel {
 			
 			@Override
 			public void focusLost(FocusEvent e) {
-				Statement newStatement = ExpressionParser.parseExpression(newField.getText());
+				Statement newStatement = null;
+				String parseError = null;
+				try
+				{
+					newStatement = ExpressionParser.parse(newField.getText());
+				}
+				catch (ParseException pe)
+				{
+					parseError = pe.getMessage() + " at character " + (pe.getErrorOffset() + 1);
+				}
 				if (newStatement != null)
 				{
 					if (newField.getParent() != null) // Ensures that the state isn't recorded twice when deleting a branch
@@ -784,7 +803,7 @@ public class TreePanel extends JPanel {
 							newField.setText(line.toString());
 						else
 							newField.setText("");
-						JOptionPane.showMessageDialog(	null, "Error: Invalid logical statement",
+						JOptionPane.showMessageDialog(	null, "Error: Invalid logical statement\n" + parseError,
 													"Error", JOptionPane.ERROR_MESSAGE);
 					}
 					else
@@ -829,9 +848,9 @@ public class TreePanel extends JPanel {
 	public void drawBranching(Branch b, Graphics2D g)
 	{
 		if (selectedBranches != null && selectedBranches.contains(b))
-			g.setColor(BranchLine.SELECTED_COLOR);
+			g.setColor(SELECTED_COLOR);
 		else
-			g.setColor(BranchLine.DEFAULT_COLOR);
+			g.setColor(DEFAULT_COLOR);
 		JButton addButton = addBranchMap.get(b);
 		if (addButton != null)
 		{
@@ -905,6 +924,54 @@ public class TreePanel extends JPanel {
 		return root;
 	}
 	
+	/**
+	 * Replaces the tree shown in this panel with one built elsewhere (e.g. loaded from a file),
+	 * creating the components for the whole tree in a single pass. The undo history starts over.
+	 * @param newRoot The root Branch of the decomposition (its root is the premise Branch)
+	 */
+	public void loadTree(Branch newRoot)
+	{
+		premises = newRoot.getRoot();
+		root = newRoot;
+		verificationCache.attach(premises);
+		history.attach(premises);
+		premises.setFontMetrics(getFontMetrics(getFont()));
+		deselectCurrentLine();
+		resetAllComponents();
+		moveComponents();
+		repaint();
+	}
+	
+	/**
+	 * Returns a TreeBuilder that builds a tree model and shows it in this panel once it is finished.
+	 * The tree is measured on the thread that loads it; if that is not the event thread, the tree
+	 * is shown later on the event thread.
+	 * @return A TreeBuilder for loading a tree into this panel
+	 */
+	public TreeBuilder getTreeBuilder()
+	{
+		return new ModelTreeBuilder() {
+			@Override
+			public void finish(final Branch root)
+			{
+				root.getRoot().setFontMetrics(getFontMetrics(getFont()));
+				root.getRoot().measure();
+				if (SwingUtilities.isEventDispatchThread())
+					loadTree(root);
+				else
+				{
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run()
+						{
+							loadTree(root);
+						}
+					});
+				}
+			}
+		};
+	}
+	
 	public void setRoot(Branch newRoot)
 	{
 		root = newRoot;
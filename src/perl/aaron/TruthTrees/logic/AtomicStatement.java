@@ -34,6 +34,7 @@ public class AtomicStatement extends Statement {
 	public AtomicStatement(String symbol)
 	{
 		_symbol = symbol;
+		setHashCode(symbol.hashCode());
 	}
 	/**
 	 * Returns the statement's symbol
@@ -51,15 +52,10 @@ public class AtomicStatement extends Statement {
 	{
 		return _symbol;
 	}
-	public boolean equals(Object other)
-	{
-		if (!(other instanceof AtomicStatement))
-			return false;
-		AtomicStatement otherAS = (AtomicStatement) other;
-		return (otherAS.getSymbol().equals(_symbol));
-	}
 	public boolean equals(Statement other) {
-		if (!(other instanceof AtomicStatement))
+		if (other == this)
+			return true;
+		if (!(other instanceof AtomicStatement) || !mayEqual(other))
 			return false;
 		return ((AtomicStatement)other).getSymbol().equals(_symbol);
 	}
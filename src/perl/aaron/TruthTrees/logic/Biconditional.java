@@ -30,15 +30,19 @@ import java.util.List;
 
 public class Biconditional extends BinaryOperator {
 
+	private static final int HASH_SEED = 0x2194;
+
 	public Biconditional(Statement a, Statement b) {
 		super(a, b);
+		setHashCode(hashOperands(HASH_SEED));
 	}
 
 	public boolean verifyDecomposition(List<List<Statement>> branches) {
 		if (branches.size() != 2)
 			return false;
-		Conjunction AandB = new Conjunction(statements.get(0),statements.get(1));
-		Conjunction NotAandNotB = new Conjunction(new Negation(statements.get(0)), new Negation(statements.get(1)));
+		Conjunction AandB = (Conjunction) StatementFactory.conjunction(statements.get(0),statements.get(1));
+		Conjunction NotAandNotB = (Conjunction) StatementFactory.conjunction(
+				StatementFactory.negation(statements.get(0)), StatementFactory.negation(statements.get(1)));
 		List<List<Statement>> branch1 = new ArrayList<List<Statement>>();
 		branch1.add(branches.get(0));
 		List<List<Statement>> branch2 = new ArrayList<List<Statement>>();
@@ -52,7 +56,9 @@ public class Biconditional extends BinaryOperator {
 	}
 
 	public boolean equals(Statement other) {
-		if (!(other instanceof Biconditional))
+		if (other == this)
+			return true;
+		if (!(other instanceof Biconditional) || !mayEqual(other))
 			return false;
 		Biconditional otherBiconditional = (Biconditional) other;
 		for (int i = 0; i < 2; i++)
@@ -29,9 +29,12 @@ import java.util.List;
 
 public class Conditional extends BinaryOperator {
 
+	private static final int HASH_SEED = 0x2192;
+
 	public Conditional(Statement a, Statement b)
 	{
 		super(a,b);
+		setHashCode(hashOperands(HASH_SEED));
 	}
 	public String toString() {
 		return  statements.get(0).toStringParen()+ " \u2192 " +statements.get(1).toStringParen();
@@ -41,7 +44,7 @@ public class Conditional extends BinaryOperator {
 			return false;
 		if (branches.get(0).size() != 1 || branches.get(1).size() != 1) // each branch should have 1 statement
 			return false;
-		Statement antecedentNeg = new Negation(statements.get(0)); // a -> b <=> ~a v b
+		Statement antecedentNeg = StatementFactory.negation(statements.get(0)); // a -> b <=> ~a v b
 		Statement consequent = statements.get(1);
 		Statement a = branches.get(0).get(0);
 		Statement b = branches.get(1).get(0);
@@ -49,7 +52,9 @@ public class Conditional extends BinaryOperator {
 				(antecedentNeg.equals(b) && consequent.equals(a)));
 	}
 	public boolean equals(Statement other) {
-		if (!(other instanceof Conditional))
+		if (other == this)
+			return true;
+		if (!(other instanceof Conditional) || !mayEqual(other))
 			return false;
 		List<Statement> otherStatements = ((Conditional) other).getOperands();
 		return (statements.get(0).equals(otherStatements.get(0))) && (statements.get(1).equals(otherStatements.get(1)));
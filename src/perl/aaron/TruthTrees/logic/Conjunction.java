@@ -30,6 +30,8 @@ import java.util.Collections;
 import java.util.List;
 
 public class Conjunction extends LogicalOperator {
+	private static final int HASH_SEED = 0x2227;
+	
 	/**
 	 * Creates a Conjunction of the provided statements
 	 * @param disjuncts The Statements being conjuncted
@@ -37,11 +39,13 @@ public class Conjunction extends LogicalOperator {
 	public Conjunction(Statement... conjuncts) {
 		statements = new ArrayList<Statement>();
 		Collections.addAll(statements, conjuncts);
+		setHashCode(hashOperands(HASH_SEED));
 	}
 	
 	public Conjunction(List<Statement> conjuncts) {
 		statements = new ArrayList<Statement>();
 		statements.addAll(conjuncts);
+		setHashCode(hashOperands(HASH_SEED));
 	}
 	
 	public String toString()
@@ -80,7 +84,9 @@ public class Conjunction extends LogicalOperator {
 	}
 
 	public boolean equals(Statement other) {
-		if (!(other instanceof Conjunction))
+		if (other == this)
+			return true;
+		if (!(other instanceof Conjunction) || !mayEqual(other))
 			return false;
 		List<Statement> otherStatements = ((Conjunction) other).getOperands();
 		if (statements.size() != otherStatements.size())
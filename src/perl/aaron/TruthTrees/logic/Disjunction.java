@@ -30,6 +30,8 @@ import java.util.Collections;
 import java.util.List;
 
 public class Disjunction extends LogicalOperator {
+	private static final int HASH_SEED = 0x2228;
+	
 	/**
 	 * Creates a Disjunction of the provided statements
 	 * @param disjuncts The Statements being disjuncted
@@ -37,11 +39,13 @@ public class Disjunction extends LogicalOperator {
 	public Disjunction(Statement... disjuncts) {
 		statements = new ArrayList<Statement>();
 		Collections.addAll(statements, disjuncts);
+		setHashCode(hashOperands(HASH_SEED));
 	}
 	
 	public Disjunction(List<Statement> disjuncts) {
 		statements = new ArrayList<Statement>();
 		statements.addAll(disjuncts);
+		setHashCode(hashOperands(HASH_SEED));
 	}
 	
 	public String toString()
@@ -82,7 +86,9 @@ public class Disjunction extends LogicalOperator {
 
 	public boolean equals(Statement other)
 	{
-		if (!(other instanceof Disjunction))
+		if (other == this)
+			return true;
+		if (!(other instanceof Disjunction) || !mayEqual(other))
 			return false;
 		List<Statement> otherStatements = ((Disjunction) other).getOperands();
 		if (statements.size() != otherStatements.size())
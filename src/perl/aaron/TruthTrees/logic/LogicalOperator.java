@@ -39,5 +39,17 @@ public abstract class LogicalOperator extends Statement implements Decomposable
 	public List<Statement> getOperands() {
 		return Collections.unmodifiableList(statements);
 	}
+	
+	/**
+	 * Combines the hash codes of the operands, for subclass constructors
+	 * @param seed A value unique to the operator
+	 * @return The combined hash code
+	 */
+	protected int hashOperands(int seed) {
+		int hash = seed;
+		for (Statement s : statements)
+			hash = 31 * hash + s.hashCode();
+		return hash;
+	}
 
 }
@@ -28,8 +28,13 @@ package perl.aaron.TruthTrees.logic;
 import java.util.ArrayList;
 import java.util.List;
 
+import perl.aaron.TruthTrees.Log;
+
 public class Negation extends LogicalOperator {
 
+	private static final int HASH_SEED = 0x00AC;
+	private static final Log LOG = Log.get(Negation.class);
+	
 	private Statement negand;
 	
 	/**
@@ -39,6 +44,7 @@ public class Negation extends LogicalOperator {
 	public Negation(Statement proposition)
 	{
 		negand = proposition;
+		setHashCode(31 * HASH_SEED + proposition.hashCode());
 	}
 	
 	/**
@@ -59,48 +65,52 @@ public class Negation extends LogicalOperator {
 	}
 
 	public boolean equals(Statement other) {
-		if (!(other instanceof Negation))
+		if (other == this)
+			return true;
+		if (!(other instanceof Negation) || !mayEqual(other))
 			return false;
-		System.out.println("other is a negation");
-		System.out.println("returning " + ((Negation)other).getNegand().equals(negand));
-		return ((Negation)other).getNegand().equals(negand);
+		boolean equal = ((Negation)other).getNegand().equals(negand);
+		LOG.trace("other is a negation, returning {}", equal);
+		return equal;
 	}
 
 	public boolean verifyDecomposition(List<List<Statement>> branches) {
 		if (negand instanceof Conjunction)
 		{
-			System.out.println("Negation of a conjunction");
+			LOG.trace("Negation of a conjunction");
 			Conjunction con = (Conjunction) negand;
 			ArrayList<Statement> negatedConjuncts = new ArrayList<Statement>(con.getOperands().size());
 			for (Statement s : con.getOperands())
-				negatedConjuncts.add(new Negation(s));
-			return new Disjunction(negatedConjuncts).verifyDecomposition(branches);
+				negatedConjuncts.add(StatementFactory.negation(s));
+			return ((Disjunction) StatementFactory.disjunction(negatedConjuncts)).verifyDecomposition(branches);
 		}
 		else if (negand instanceof Disjunction)
 		{
-			System.out.println("Negation of a disjunction");
+			LOG.trace("Negation of a disjunction");
 			Disjunction dis = (Disjunction) negand;
 			ArrayList<Statement> negatedDisjuncts = new ArrayList<Statement>(dis.getOperands().size());
 			for (Statement s : dis.getOperands())
-				negatedDisjuncts.add(new Negation(s));
-			return new Conjunction(negatedDisjuncts).verifyDecomposition(branches);
+				negatedDisjuncts.add(StatementFactory.negation(s));
+			return ((Conjunction) StatementFactory.conjunction(negatedDisjuncts)).verifyDecomposition(branches);
 		}
 		else if (negand instanceof Conditional)
 		{
-			System.out.println("Negation of a conditional");
+			LOG.trace("Negation of a conditional");
 			Conditional con = (Conditional) negand;
 			ArrayList<Statement> conjuncts = new ArrayList<Statement>(2);
 			conjuncts.add(con.getOperands().get(0));
-			conjuncts.add(new Negation(con.getOperands().get(1)));
-			return new Conjunction(conjuncts).verifyDecomposition(branches);
+			conjuncts.add(StatementFactory.negation(con.getOperands().get(1)));
+			return ((Conjunction) StatementFactory.conjunction(conjuncts)).verifyDecomposition(branches);
 		}
 		else if (negand instanceof Biconditional)
 		{
+			if (branches.size() != 2)
+				return false;
 			Biconditional bicon = (Biconditional) negand;
 			Statement a = bicon.getOperands().get(0);
 			Statement b = bicon.getOperands().get(1);
-			Conjunction con1 = new Conjunction(new Negation(a), b);
-			Conjunction con2 = new Conjunction(a, new Negation(b));
+			Conjunction con1 = (Conjunction) StatementFactory.conjunction(StatementFactory.negation(a), b);
+			Conjunction con2 = (Conjunction) StatementFactory.conjunction(a, StatementFactory.negation(b));
 			List<List<Statement>> branch1 = new ArrayList<List<Statement>>();
 			branch1.add(branches.get(0));
 			List<List<Statement>> branch2 = new ArrayList<List<Statement>>();
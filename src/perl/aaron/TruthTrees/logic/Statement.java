@@ -26,6 +26,11 @@
 package perl.aaron.TruthTrees.logic;
 
 public abstract class Statement {
+	private int hash;
+	
+	/** Set by StatementFactory on the one canonical instance of each formula */
+	boolean interned;
+	
 	/**
 	 * Returns the statement as a string
 	 * @return The statement string
@@ -39,6 +44,40 @@ public abstract class Statement {
 	 */
 	public abstract boolean equals(Statement other);
 	
+	public final boolean equals(Object other)
+	{
+		return (other instanceof Statement) && equals((Statement) other);
+	}
+	
+	/**
+	 * Returns the hash code computed from the structure of this statement when it was created
+	 * @return The hash code
+	 */
+	public final int hashCode()
+	{
+		return hash;
+	}
+	
+	/**
+	 * Sets the hash code, called once by each constructor after its operands are set
+	 * @param hash The hash code, computed from the operands' hash codes
+	 */
+	protected final void setHashCode(int hash)
+	{
+		this.hash = hash;
+	}
+	
+	/**
+	 * Cheap check made before comparing operands: statements with different hash codes
+	 * can't be equal, and neither can two different canonical instances from StatementFactory
+	 * @param other Statement to be checked for equality
+	 * @return False if the statements are certainly different, true if they may be equal
+	 */
+	protected final boolean mayEqual(Statement other)
+	{
+		return other.hash == hash && !(interned && other.interned);
+	}
+	
 	/**
 	 * Returns the statement as a string with parenthesis surrounding it
 	 * @return The statement string w/ parenthesis
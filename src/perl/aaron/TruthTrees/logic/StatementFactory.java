@@ -0,0 +1,153 @@
+/* 
+ * Copyright (c) 2016, Aaron Perl
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package perl.aaron.TruthTrees.logic;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Creates statements through a shared table so that structurally equal formulas are
+ * represented by a single instance. Every operand of a statement returned from here is
+ * itself canonical, so comparing two canonical statements never has to walk their operands.
+ * Entries are weakly held and disappear once no tree or proof refers to them.
+ */
+public final class StatementFactory {
+	
+	private static final Map<Statement, WeakReference<Statement>> table =
+			new WeakHashMap<Statement, WeakReference<Statement>>();
+	
+	private StatementFactory() {}
+	
+	public static Statement atomic(String symbol)
+	{
+		return canonical(new AtomicStatement(symbol));
+	}
+	
+	public static Statement negation(Statement negand)
+	{
+		return canonical(new Negation(intern(negand)));
+	}
+	
+	public static Statement conjunction(Statement... conjuncts)
+	{
+		return canonical(new Conjunction(internAll(conjuncts)));
+	}
+	
+	public static Statement conjunction(List<Statement> conjuncts)
+	{
+		return canonical(new Conjunction(internAll(conjuncts)));
+	}
+	
+	public static Statement disjunction(Statement... disjuncts)
+	{
+		return canonical(new Disjunction(internAll(disjuncts)));
+	}
+	
+	public static Statement disjunction(List<Statement> disjuncts)
+	{
+		return canonical(new Disjunction(internAll(disjuncts)));
+	}
+	
+	public static Statement conditional(Statement antecedent, Statement consequent)
+	{
+		return canonical(new Conditional(intern(antecedent), intern(consequent)));
+	}
+	
+	public static Statement biconditional(Statement a, Statement b)
+	{
+		return canonical(new Biconditional(intern(a), intern(b)));
+	}
+	
+	/**
+	 * Returns the canonical instance of a statement, rebuilding it through the factory
+	 * if it was constructed directly
+	 * @param s The statement, or null
+	 * @return The canonical statement equal to s, or null if s is null
+	 */
+	public static Statement intern(Statement s)
+	{
+		if (s == null || s.interned)
+			return s;
+		if (s instanceof AtomicStatement)
+			return atomic(((AtomicStatement) s).getSymbol());
+		if (s instanceof Negation)
+			return negation(((Negation) s).getNegand());
+		List<Statement> operands = ((LogicalOperator) s).getOperands();
+		if (s instanceof Conjunction)
+			return conjunction(operands);
+		if (s instanceof Disjunction)
+			return disjunction(operands);
+		if (s instanceof Conditional)
+			return conditional(operands.get(0), operands.get(1));
+		if (s instanceof Biconditional)
+			return biconditional(operands.get(0), operands.get(1));
+		return s;
+	}
+	
+	/**
+	 * Returns the number of distinct statements currently held by the factory
+	 * @return The table size
+	 */
+	public static int size()
+	{
+		synchronized (table)
+		{
+			return table.size();
+		}
+	}
+	
+	private static List<Statement> internAll(Statement[] statements)
+	{
+		List<Statement> interned = new ArrayList<Statement>(statements.length);
+		for (Statement s : statements)
+			interned.add(intern(s));
+		return interned;
+	}
+	
+	private static List<Statement> internAll(List<Statement> statements)
+	{
+		List<Statement> interned = new ArrayList<Statement>(statements.size());
+		for (Statement s : statements)
+			interned.add(intern(s));
+		return interned;
+	}
+	
+	private static Statement canonical(Statement candidate)
+	{
+		synchronized (table)
+		{
+			WeakReference<Statement> ref = table.get(candidate);
+			Statement existing = (ref == null) ? null : ref.get();
+			if (existing != null)
+				return existing;
+			candidate.interned = true;
+			table.put(candidate, new WeakReference<Statement>(candidate));
+			return candidate;
+		}
+	}
+}